@@ -43,6 +43,8 @@
 #include <unistd.h>
 #include <termios.h>
 #include <signal.h>
+#include <poll.h>
+#include <string.h>
 
 #include "termExec.h"
 
@@ -319,6 +321,130 @@ static void android_os_Exec_hangupProcessGroup(JNIEnv *env, jobject clazz,
     kill(-procId, SIGHUP);
 }
 
+/* Event bits used by Exec.poll(); must match the constants in Exec.java */
+#define EXEC_POLL_IN 1
+#define EXEC_POLL_OUT 2
+#define EXEC_POLL_HUP 4
+
+/* Largest chunk moved by one Exec.read() or Exec.write() call */
+#define EXEC_IO_CHUNK 4096
+
+static jint android_os_Exec_getFd(JNIEnv *env, jobject clazz,
+    jobject fileDescriptor)
+{
+    return env->GetIntField(fileDescriptor, field_fileDescriptor_descriptor);
+}
+
+static void android_os_Exec_setNonBlocking(JNIEnv *env, jobject clazz,
+    jint fd)
+{
+    int flags = fcntl(fd, F_GETFL);
+    if (flags == -1 || fcntl(fd, F_SETFL, flags | O_NONBLOCK) == -1) {
+        LOGE("Cannot make fd %d non-blocking: %s", fd, strerror(errno));
+    }
+}
+
+static jboolean android_os_Exec_createPipe(JNIEnv *env, jobject clazz,
+    jintArray fdArray)
+{
+    int fds[2];
+    if (pipe(fds) != 0) {
+        LOGE("Cannot create pipe: %s", strerror(errno));
+        return JNI_FALSE;
+    }
+    jint result[2] = { fds[0], fds[1] };
+    env->SetIntArrayRegion(fdArray, 0, 2, result);
+    return JNI_TRUE;
+}
+
+static jint android_os_Exec_poll(JNIEnv *env, jobject clazz,
+    jintArray fdArray, jintArray eventArray, jint count, jint timeoutMillis)
+{
+    struct pollfd *pfds = (struct pollfd *) malloc(count * sizeof(struct pollfd));
+    jint *values = (jint *) malloc(count * sizeof(jint));
+    if (!pfds || !values) {
+        free(pfds);
+        free(values);
+        throwOutOfMemoryError(env, "Couldn't allocate poll arrays");
+        return -1;
+    }
+
+    env->GetIntArrayRegion(fdArray, 0, count, values);
+    for (int i = 0; i < count; ++i) {
+        pfds[i].fd = values[i];
+    }
+    env->GetIntArrayRegion(eventArray, 0, count, values);
+    for (int i = 0; i < count; ++i) {
+        pfds[i].events = ((values[i] & EXEC_POLL_IN) ? POLLIN : 0)
+            | ((values[i] & EXEC_POLL_OUT) ? POLLOUT : 0);
+        pfds[i].revents = 0;
+    }
+
+    int ready = poll(pfds, count, timeoutMillis);
+    if (ready < 0) {
+        ready = (errno == EINTR) ? 0 : -1;
+    }
+
+    for (int i = 0; i < count; ++i) {
+        short revents = pfds[i].revents;
+        values[i] = ((revents & POLLIN) ? EXEC_POLL_IN : 0)
+            | ((revents & POLLOUT) ? EXEC_POLL_OUT : 0)
+            | ((revents & (POLLHUP | POLLERR | POLLNVAL)) ? EXEC_POLL_HUP : 0);
+    }
+    env->SetIntArrayRegion(eventArray, 0, count, values);
+
+    free(pfds);
+    free(values);
+    return ready;
+}
+
+static jint android_os_Exec_read(JNIEnv *env, jobject clazz, jint fd,
+    jbyteArray buffer, jint offset, jint length)
+{
+    jbyte chunk[EXEC_IO_CHUNK];
+    if (length > EXEC_IO_CHUNK) {
+        length = EXEC_IO_CHUNK;
+    }
+
+    ssize_t result;
+    do {
+        result = read(fd, chunk, length);
+    } while (result < 0 && errno == EINTR);
+
+    if (result < 0) {
+        // A pty master reads EIO once the slave side has been closed
+        return (errno == EAGAIN || errno == EWOULDBLOCK) ? 0 : -1;
+    }
+    if (result == 0) {
+        return -1;
+    }
+    env->SetByteArrayRegion(buffer, offset, result, chunk);
+    return result;
+}
+
+static jint android_os_Exec_write(JNIEnv *env, jobject clazz, jint fd,
+    jbyteArray buffer, jint offset, jint length)
+{
+    jbyte chunk[EXEC_IO_CHUNK];
+    if (length > EXEC_IO_CHUNK) {
+        length = EXEC_IO_CHUNK;
+    }
+    env->GetByteArrayRegion(buffer, offset, length, chunk);
+    if (env->ExceptionOccurred() != NULL) {
+        return -1;
+    }
+
+    ssize_t result;
+    do {
+        result = write(fd, chunk, length);
+    } while (result < 0 && errno == EINTR);
+
+    if (result < 0) {
+        return (errno == EAGAIN || errno == EWOULDBLOCK) ? 0 : -1;
+    }
+    return result;
+}
+
 
 static int register_FileDescriptor(JNIEnv *env)
 {
@@ -366,7 +492,19 @@ static JNINativeMethod method_table[] = {
     { "close", "(Ljava/io/FileDescriptor;)V",
         (void*) android_os_Exec_close},
     { "hangupProcessGroup", "(I)V",
-        (void*) android_os_Exec_hangupProcessGroup}
+        (void*) android_os_Exec_hangupProcessGroup},
+    { "getFd", "(Ljava/io/FileDescriptor;)I",
+        (void*) android_os_Exec_getFd},
+    { "setNonBlocking", "(I)V",
+        (void*) android_os_Exec_setNonBlocking},
+    { "createPipe", "([I)Z",
+        (void*) android_os_Exec_createPipe},
+    { "poll", "([I[III)I",
+        (void*) android_os_Exec_poll},
+    { "read", "(I[BII)I",
+        (void*) android_os_Exec_read},
+    { "write", "(I[BII)I",
+        (void*) android_os_Exec_write}
 };
 
 int init_Exec(JNIEnv *env) {
@@ -22,30 +22,30 @@
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
 import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 
 
 class Bitmap4x8FontRenderer extends BaseTextRenderer {
     private final static int kCharacterWidth = 4;
     private final static int kCharacterHeight = 8;
-    private Bitmap mFont;
-    private int mCurrentForeColor;
-    private int mCurrentBackColor;
-    private float[] mColorMatrix;
+    private Bitmap mGlyphs;
     private Paint mPaint;
-    private static final float BYTE_SCALE = 1.0f / 255.0f;
+    private Paint mBackPaint;
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDestRect = new Rect();
 
     public Bitmap4x8FontRenderer(Resources resources, ColorScheme scheme) {
         super(scheme);
         int fontResource = AndroidCompat.SDK <= 3 ? R.drawable.atari_small
                 : R.drawable.atari_small_nodpi;
-        mFont = BitmapFactory.decodeResource(resources,fontResource);
+        Bitmap font = BitmapFactory.decodeResource(resources,fontResource);
+        mGlyphs = createGlyphMask(font);
+        font.recycle();
         mPaint = new Paint();
-        mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
+        mBackPaint = new Paint();
     }
 
     public float getCharacterWidth() {
@@ -108,18 +108,24 @@ public void drawTextRun(Canvas canvas, float x, float y,
 
     private void drawTextRunHelper(Canvas canvas, float x, float y, int lineOffset, char[] text,
             int index, int count, int foreColor, int backColor) {
-        setColorMatrix(mPalette[foreColor], mPalette[backColor]);
         int destX = (int) x + kCharacterWidth * lineOffset;
         int destY = (int) y;
-        Rect srcRect = new Rect();
-        Rect destRect = new Rect();
+        Rect srcRect = mSrcRect;
+        Rect destRect = mDestRect;
         destRect.top = (destY - kCharacterHeight);
         destRect.bottom = destY;
-        boolean drawSpaces = mPalette[backColor] != mPalette[TextStyle.ciBackground];
+        if (mPalette[backColor] != mPalette[TextStyle.ciBackground]) {
+            // One rect for the whole run instead of a cell per character
+            mBackPaint.setColor(mPalette[backColor]);
+            destRect.left = destX;
+            destRect.right = destX + kCharacterWidth * count;
+            canvas.drawRect(destRect, mBackPaint);
+        }
+        mPaint.setColor(mPalette[foreColor]);
         for (int i = 0; i < count; i++) {
             // XXX No Unicode support in bitmap font
             char c = text[i + index];
-            if ((c < 128) && ((c != 32) || drawSpaces)) {
+            if ((c < 128) && (c != 32)) {
                 int cellX = c & 31;
                 int cellY = (c >> 5) & 3;
                 int srcX = cellX * kCharacterWidth;
@@ -128,31 +134,29 @@ private void drawTextRunHelper(Canvas canvas, float x, float y, int lineOffset,
                         srcX + kCharacterWidth, srcY + kCharacterHeight);
                 destRect.left = destX;
                 destRect.right = destX + kCharacterWidth;
-                canvas.drawBitmap(mFont, srcRect, destRect, mPaint);
+                canvas.drawBitmap(mGlyphs, srcRect, destRect, mPaint);
             }
             destX += kCharacterWidth;
         }
     }
 
-    private void setColorMatrix(int foreColor, int backColor) {
-        if ((foreColor != mCurrentForeColor)
-                || (backColor != mCurrentBackColor)
-                || (mColorMatrix == null)) {
-            mCurrentForeColor = foreColor;
-            mCurrentBackColor = backColor;
-            if (mColorMatrix == null) {
-                mColorMatrix = new float[20];
-                mColorMatrix[18] = 1.0f; // Just copy Alpha
-            }
-            for (int component = 0; component < 3; component++) {
-                int rightShift = (2 - component) << 3;
-                int fore = 0xff & (foreColor >> rightShift);
-                int back = 0xff & (backColor >> rightShift);
-                int delta = back - fore;
-                mColorMatrix[component * 6] = delta * BYTE_SCALE;
-                mColorMatrix[component * 5 + 4] = fore;
-            }
-            mPaint.setColorFilter(new ColorMatrixColorFilter(mColorMatrix));
-        }
+    /**
+     * Turn the font, which has black characters on a white background, into
+     * an ALPHA_8 coverage mask which can be drawn in any color with a plain
+     * Paint.
+     */
+    private static Bitmap createGlyphMask(Bitmap font) {
+        Bitmap mask = Bitmap.createBitmap(font.getWidth(), font.getHeight(),
+                Bitmap.Config.ALPHA_8);
+        Paint paint = new Paint();
+        ColorMatrix cm = new ColorMatrix();
+        cm.set(new float[] {
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                -1, 0, 0, 0, 255 });
+        paint.setColorFilter(new ColorMatrixColorFilter(cm));
+        new Canvas(mask).drawBitmap(font, 0, 0, paint);
+        return mask;
     }
 }
@@ -0,0 +1,41 @@
+package jackpal.androidterm.emulatorview;
+
+/**
+ * A byte queue which hands data from one producer thread to one consumer
+ * thread.
+ */
+interface ByteFifo {
+    /**
+     * Get the number of bytes which can currently be read without blocking.
+     */
+    int getBytesAvailable();
+
+    /**
+     * Get the number of bytes which can currently be written without
+     * blocking.
+     */
+    int getFreeSpace();
+
+    /**
+     * Read up to length bytes into buffer, blocking until at least one byte
+     * is available.
+     *
+     * @return The number of bytes actually read.
+     */
+    int read(byte[] buffer, int offset, int length) throws InterruptedException;
+
+    /**
+     * Attempt to write the specified portion of the provided buffer to
+     * the queue, blocking while the queue is full.  Returns the number of
+     * bytes actually written to the queue; it is the caller's responsibility
+     * to check whether all of the data was written and repeat the call to
+     * write() if necessary.
+     */
+    int write(byte[] buffer, int offset, int length) throws InterruptedException;
+
+    /**
+     * Get the number of times a blocked reader or writer has been woken up
+     * by the other side.
+     */
+    int getWakeupCount();
+}
@@ -21,7 +21,7 @@
  * Only allows one producer and one consumer.
  */
 
-class ByteQueue {
+class ByteQueue implements ByteFifo {
     public ByteQueue(int size) {
         mBuffer = new byte[size];
     }
@@ -32,6 +32,12 @@ public int getBytesAvailable() {
         }
     }
 
+    public int getFreeSpace() {
+        synchronized(this) {
+            return mBuffer.length - mStoredBytes;
+        }
+    }
+
     public int read(byte[] buffer, int offset, int length)
         throws InterruptedException {
         if (length + offset > buffer.length) {
@@ -68,6 +74,7 @@ public int read(byte[] buffer, int offset, int length)
             }
             if (wasFull) {
                 notify();
+                mWakeupCount++;
             }
             return totalRead;
         }
@@ -95,10 +102,10 @@ public int write(byte[] buffer, int offset, int length)
         }
         synchronized(this) {
             int bufferLength = mBuffer.length;
-            boolean wasEmpty = mStoredBytes == 0;
             while(bufferLength == mStoredBytes) {
                 wait();
             }
+            boolean wasEmpty = mStoredBytes == 0;
             int tail = mHead + mStoredBytes;
             int oneRun;
             if (tail >= bufferLength) {
@@ -113,12 +120,20 @@ public int write(byte[] buffer, int offset, int length)
             mStoredBytes += bytesToCopy;
             if (wasEmpty) {
                 notify();
+                mWakeupCount++;
             }
             return bytesToCopy;
         }
     }
 
+    public int getWakeupCount() {
+        synchronized(this) {
+            return mWakeupCount;
+        }
+    }
+
     private byte[] mBuffer;
     private int mHead;
     private int mStoredBytes;
+    private int mWakeupCount;
 }
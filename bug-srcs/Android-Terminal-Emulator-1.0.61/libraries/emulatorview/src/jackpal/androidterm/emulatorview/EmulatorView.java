@@ -19,23 +19,18 @@
 import jackpal.androidterm.emulatorview.compat.ClipboardManagerCompat;
 import jackpal.androidterm.emulatorview.compat.ClipboardManagerCompatFactory;
 import jackpal.androidterm.emulatorview.compat.KeycodeConstants;
-import jackpal.androidterm.emulatorview.compat.Patterns;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Hashtable;
+import java.io.Writer;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
-import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
-import android.text.style.URLSpan;
-import android.text.util.Linkify;
-import android.text.util.Linkify.MatchFilter;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -178,6 +173,40 @@ public class EmulatorView extends View implements GestureDetector.OnGestureListe
     private int mSelX2 = -1;
     private int mSelY2 = -1;
 
+    /**
+     * A copy of the rows drawn in the last frame.  Rows which haven't changed
+     * since then are copied from here rather than drawn again.
+     */
+    private Bitmap mRowCache;
+    private Canvas mRowCacheCanvas;
+    private boolean mRowCacheValid;
+    private boolean mRowCacheUnavailable;
+
+    /*
+     * What the rows in the row cache were drawn with.  mCachedRowState holds
+     * the cursor column and the selection start and end column that were
+     * drawn on each visible row, three ints per row.
+     */
+    private TranscriptScreen mCachedScreen;
+    private TextRenderer mCachedRenderer;
+    private int mCachedTopRow;
+    private int mCachedLeftColumn;
+    private boolean mCachedReverseVideo;
+    private int mCachedCursorMode;
+    private String mCachedImeText = "";
+    private int mCachedCursorRow = -1;
+    private int mCachedCursorCol = -1;
+    private int[] mCachedRowState = new int[0];
+
+    /*
+     * Frame time statistics, kept when EmulatorDebug.LOG_FRAME_TIMES is set.
+     */
+    private static final int FRAME_TIME_LOG_INTERVAL = 120;
+    private int mFrameCount;
+    private int mFrameRowsDrawn;
+    private long mFrameTimeTotal;
+    private long mFrameTimeMax;
+
     /**
      * Routing alt and meta keyCodes away from the IME allows Alt key processing to work on
      * the Asus Transformer TF101.
@@ -196,8 +225,13 @@ public void run() {
             } else {
                 mCursorVisible = true;
             }
-            // Perhaps just invalidate the character with the cursor.
-            invalidate();
+            if (mEmulator != null) {
+                int cx = mEmulator.getCursorCol();
+                int cy = mEmulator.getCursorRow();
+                invalidateCells(cx, cy, cx + 2, cy);
+            } else {
+                invalidate();
+            }
         }
     };
 
@@ -229,192 +263,9 @@ public void run() {
     };
 
     /**
-     *
-     * A hash table of underlying URLs to implement clickable links.
-     */
-    private Hashtable<Integer,URLSpan[]> mLinkLayer = new Hashtable<Integer,URLSpan[]>();
-
-    /**
-     * Accept links that start with http[s]:
+     * The links on the screen, to implement clickable links.
      */
-    private static class HttpMatchFilter implements MatchFilter {
-        public boolean acceptMatch(CharSequence s, int start, int end) {
-            return startsWith(s, start, end, "http:") ||
-                startsWith(s, start, end, "https:");
-        }
-
-        private boolean startsWith(CharSequence s, int start, int end,
-                String prefix) {
-            int prefixLen = prefix.length();
-            int fragmentLen = end - start;
-            if (prefixLen > fragmentLen) {
-                return false;
-            }
-            for (int i = 0; i < prefixLen; i++) {
-                if (s.charAt(start + i) != prefix.charAt(i)) {
-                    return false;
-                }
-            }
-            return true;
-        }
-    }
-
-    private static MatchFilter sHttpMatchFilter = new HttpMatchFilter();
-
-    /**
-     * Convert any URLs in the current row into a URLSpan,
-     * and store that result in a hash table of URLSpan entries.
-     *
-     * @param row The number of the row to check for links
-     * @return The number of lines in a multi-line-wrap set of links
-     */
-    private int createLinks(int row)
-    {
-        TranscriptScreen transcriptScreen = mEmulator.getScreen();
-        char [] line = transcriptScreen.getScriptLine(row);
-        int lineCount = 1;
-
-        //Nothing to do if there's no text.
-        if(line == null)
-            return lineCount;
-
-        /* If this is not a basic line, the array returned from getScriptLine()
-         * could have arbitrary garbage at the end -- find the point at which
-         * the line ends and only include that in the text to linkify.
-         *
-         * XXX: The fact that the array returned from getScriptLine() on a
-         * basic line contains no garbage is an implementation detail -- the
-         * documented behavior explicitly allows garbage at the end! */
-        int lineLen;
-        boolean textIsBasic = transcriptScreen.isBasicLine(row);
-        if (textIsBasic) {
-            lineLen = line.length;
-        } else {
-            // The end of the valid data is marked by a NUL character
-            for (lineLen = 0; line[lineLen] != 0; ++lineLen);
-        }
-
-        SpannableStringBuilder textToLinkify = new SpannableStringBuilder(new String(line, 0, lineLen));
-
-        boolean lineWrap = transcriptScreen.getScriptLineWrap(row);
-
-        //While the current line has a wrap
-        while (lineWrap)
-        {
-            //Get next line
-            int nextRow = row + lineCount;
-            line = transcriptScreen.getScriptLine(nextRow);
-
-            //If next line is blank, don't try and append
-            if(line == null)
-                break;
-
-            boolean lineIsBasic = transcriptScreen.isBasicLine(nextRow);
-            if (textIsBasic && !lineIsBasic) {
-                textIsBasic = lineIsBasic;
-            }
-            if (lineIsBasic) {
-                lineLen = line.length;
-            } else {
-                // The end of the valid data is marked by a NUL character
-                for (lineLen = 0; line[lineLen] != 0; ++lineLen);
-            }
-
-            textToLinkify.append(new String(line, 0, lineLen));
-
-            //Check if line after next is wrapped
-            lineWrap = transcriptScreen.getScriptLineWrap(nextRow);
-            ++lineCount;
-        }
-
-        Linkify.addLinks(textToLinkify, Patterns.WEB_URL,
-            null, sHttpMatchFilter, null);
-        URLSpan [] urls = textToLinkify.getSpans(0, textToLinkify.length(), URLSpan.class);
-        if(urls.length > 0)
-        {
-            int columns = mColumns;
-
-            //re-index row to 0 if it is negative
-            int screenRow = row - mTopRow;
-
-            //Create and initialize set of links
-            URLSpan [][] linkRows = new URLSpan[lineCount][];
-            for(int i=0; i<lineCount; ++i)
-            {
-                linkRows[i] = new URLSpan[columns];
-                Arrays.fill(linkRows[i], null);
-            }
-
-            //For each URL:
-            for(int urlNum=0; urlNum<urls.length; ++urlNum)
-            {
-                URLSpan url = urls[urlNum];
-                int spanStart = textToLinkify.getSpanStart(url);
-                int spanEnd = textToLinkify.getSpanEnd(url);
-
-                // Build accurate indices for links
-                int startRow;
-                int startCol;
-                int endRow;
-                int endCol;
-                if (textIsBasic) {
-                    // Basic line -- can assume one char per column
-                    startRow = spanStart / mColumns;
-                    startCol = spanStart % mColumns;
-                    endRow   = spanEnd   / mColumns;
-                    endCol   = spanEnd   % mColumns;
-                } else {
-                    /* Iterate over the line to get starting and ending columns
-                     * for this span */
-                    startRow = 0;
-                    startCol = 0;
-                    for (int i = 0; i < spanStart; ++i) {
-                        char c = textToLinkify.charAt(i);
-                        if (Character.isHighSurrogate(c)) {
-                            ++i;
-                            startCol += UnicodeTranscript.charWidth(c, textToLinkify.charAt(i));
-                        } else {
-                            startCol += UnicodeTranscript.charWidth(c);
-                        }
-                        if (startCol >= columns) {
-                            ++startRow;
-                            startCol %= columns;
-                        }
-                    }
-
-                    endRow = startRow;
-                    endCol = startCol;
-                    for (int i = spanStart; i < spanEnd; ++i) {
-                        char c = textToLinkify.charAt(i);
-                        if (Character.isHighSurrogate(c)) {
-                            ++i;
-                            endCol += UnicodeTranscript.charWidth(c, textToLinkify.charAt(i));
-                        } else {
-                            endCol += UnicodeTranscript.charWidth(c);
-                        }
-                        if (endCol >= columns) {
-                            ++endRow;
-                            endCol %= columns;
-                        }
-                    }
-                }
-
-                //Fill linkRows with the URL where appropriate
-                for(int i=startRow; i <= endRow; ++i)
-                {
-                    int runStart = (i == startRow) ? startCol: 0;
-                    int runEnd = (i == endRow) ? endCol : mColumns;
-
-                    Arrays.fill(linkRows[i], runStart, runEnd, url);
-                }
-            }
-
-            //Add links into the link layer for later retrieval
-            for(int i=0; i<lineCount; ++i)
-                mLinkLayer.put(screenRow + i, linkRows[i]);
-        }
-        return lineCount;
-    }
+    private final LinkIndex mLinkIndex = new LinkIndex();
 
     /**
      * Sends mouse wheel codes to terminal in response to fling.
@@ -474,15 +325,27 @@ public void run() {
      */
     private UpdateCallback mUpdateNotify = new UpdateCallback() {
         public void onUpdate() {
+            int rowShift = mEmulator.getScrollCounter();
             if ( mIsSelectingText ) {
-                int rowShift = mEmulator.getScrollCounter();
                 mSelY1 -= rowShift;
                 mSelY2 -= rowShift;
                 mSelYAnchor -= rowShift;
             }
             mEmulator.clearScrollCounter();
+            if (rowShift != 0) {
+                // The links found so far are on the wrong rows now
+                mLinkIndex.clear();
+            }
+            int oldTopRow = mTopRow;
+            int oldLeftColumn = mLeftColumn;
             ensureCursorVisible();
-            invalidate();
+            if (mTopRow != oldTopRow || mLeftColumn != oldLeftColumn
+                    || mEmulator.getReverseVideo() != mCachedReverseVideo
+                    || (mIsSelectingText && rowShift != 0)) {
+                invalidate();
+            } else {
+                invalidateDirtyRows();
+            }
         }
     };
 
@@ -580,6 +443,9 @@ public void setDensity(DisplayMetrics metrics) {
      * Inform the view that it is now visible on screen.
      */
     public void onResume() {
+        if (mTermSession != null) {
+            mTermSession.setVisible(true);
+        }
         updateSize(false);
         if (mCursorBlink != 0) {
             mHandler.postDelayed(mBlinkCursor, CURSOR_BLINK_PERIOD);
@@ -599,6 +465,16 @@ public void onPause() {
         if (mKeyListener != null) {
             mKeyListener.onPause();
         }
+        if (mTermSession != null) {
+            mTermSession.setVisible(false);
+        }
+        releaseRowCache();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releaseRowCache();
     }
 
     /**
@@ -1487,8 +1363,6 @@ private void updateSize(int w, int h) {
      *              view's size has not changed.
      */
     public void updateSize(boolean force) {
-        //Need to clear saved links on each display refresh
-        mLinkLayer.clear();
         if (mKnownSize) {
             int w = getWidth();
             int h = getHeight();
@@ -1504,6 +1378,10 @@ public void updateSize(boolean force) {
     /**
      * Draw the view to the provided {@link Canvas}.
      *
+     * Rows are drawn into the row cache, and only those rows which changed
+     * since the last frame are drawn again; the cache is then copied to the
+     * view.
+     *
      * @param canvas The {@link Canvas} to draw the view to.
      */
     @Override
@@ -1515,6 +1393,7 @@ protected void onDraw(Canvas canvas) {
             return;
         }
 
+        long frameStart = EmulatorDebug.LOG_FRAME_TIMES ? System.nanoTime() : 0;
         int w = getWidth();
         int h = getHeight();
 
@@ -1523,7 +1402,7 @@ protected void onDraw(Canvas canvas) {
 
         Paint backgroundPaint =
                 reverseVideo ? mForegroundPaint : mBackgroundPaint;
-        canvas.drawRect(0, 0, w, h, backgroundPaint);
+        TranscriptScreen screen = mEmulator.getScreen();
         float x = -mLeftColumn * mCharacterWidth;
         float y = mCharacterHeight + mTopOfScreenMargin;
         int endLine = mTopRow + mRows;
@@ -1537,7 +1416,29 @@ protected void onDraw(Canvas canvas) {
         }
         int cursorStyle = mKeyListener.getCursorMode();
 
-        int linkLinesToSkip = 0; //for multi-line links
+        Canvas rowCanvas = getRowCacheCanvas(w, h);
+        boolean repaintAll = rowCanvas == null || !mRowCacheValid
+                || screen != mCachedScreen
+                || mTextRenderer != mCachedRenderer
+                || mTopRow != mCachedTopRow
+                || mLeftColumn != mCachedLeftColumn
+                || reverseVideo != mCachedReverseVideo
+                || mCachedRowState.length != 3 * mRows;
+        // The cursor style and the IME text are only drawn on the cursor row
+        boolean cursorChanged = cursorStyle != mCachedCursorMode
+                || !effectiveImeBuffer.equals(mCachedImeText);
+        if (rowCanvas == null) {
+            // No row cache, so draw every row straight to the view
+            rowCanvas = canvas;
+        }
+        if (mCachedRowState.length != 3 * mRows) {
+            mCachedRowState = new int[3 * mRows];
+        }
+        if (repaintAll) {
+            rowCanvas.drawRect(0, 0, w, h, backgroundPaint);
+        }
+
+        int[] rowState = mCachedRowState;
 
         for (int i = mTopRow; i < endLine; i++) {
             int cursorX = -1;
@@ -1556,15 +1457,153 @@ protected void onDraw(Canvas canvas) {
                     selx2 = mColumns;
                 }
             }
-            mEmulator.getScreen().drawText(i, canvas, x, y, mTextRenderer, cursorX, selx1, selx2, effectiveImeBuffer, cursorStyle);
+            int state = 3 * (i - mTopRow);
+            if (repaintAll || screen.isRowDirty(i)
+                    || rowState[state] != cursorX
+                    || rowState[state + 1] != selx1
+                    || rowState[state + 2] != selx2
+                    || (cursorChanged && cursorX != -1)) {
+                if (!repaintAll) {
+                    rowCanvas.drawRect(0, y - mCharacterHeight, w, y, backgroundPaint);
+                }
+                screen.drawText(i, rowCanvas, x, y, mTextRenderer, cursorX, selx1, selx2, effectiveImeBuffer, cursorStyle);
+                rowState[state] = cursorX;
+                rowState[state + 1] = selx1;
+                rowState[state + 2] = selx2;
+                mLinkIndex.rowChanged(i - mTopRow);
+                if (EmulatorDebug.LOG_FRAME_TIMES) {
+                    mFrameRowsDrawn++;
+                }
+            }
             y += mCharacterHeight;
-            //if no lines to skip, create links for the line being drawn
-            if(linkLinesToSkip == 0)
-                linkLinesToSkip = createLinks(i);
+        }
+        screen.clearDirty();
+        mLinkIndex.update(screen, mTopRow, mRows, mColumns);
+
+        if (rowCanvas != canvas) {
+            canvas.drawBitmap(mRowCache, 0, 0, null);
+            mRowCacheValid = true;
+        } else {
+            mRowCacheValid = false;
+        }
+        mCachedScreen = screen;
+        mCachedRenderer = mTextRenderer;
+        mCachedTopRow = mTopRow;
+        mCachedLeftColumn = mLeftColumn;
+        mCachedReverseVideo = reverseVideo;
+        mCachedCursorMode = cursorStyle;
+        mCachedImeText = effectiveImeBuffer;
+        mCachedCursorRow = cursorVisible ? cy : -1;
+        mCachedCursorCol = cx;
+
+        if (EmulatorDebug.LOG_FRAME_TIMES) {
+            logFrameTime(System.nanoTime() - frameStart);
+        }
+    }
+
+    private void logFrameTime(long nanos) {
+        mFrameTimeTotal += nanos;
+        mFrameTimeMax = Math.max(mFrameTimeMax, nanos);
+        if (++mFrameCount < FRAME_TIME_LOG_INTERVAL) {
+            return;
+        }
+        Log.d(TAG, String.format("%s: %d frames, %.2f ms average, %.2f ms max, %.1f rows per frame",
+                mTextRenderer.getClass().getSimpleName(), mFrameCount,
+                mFrameTimeTotal / 1e6 / mFrameCount, mFrameTimeMax / 1e6,
+                (float) mFrameRowsDrawn / mFrameCount));
+        mFrameCount = 0;
+        mFrameRowsDrawn = 0;
+        mFrameTimeTotal = 0;
+        mFrameTimeMax = 0;
+    }
+
+    /**
+     * Get a canvas which draws into the row cache, (re)allocating the cache
+     * to match the size of the view if needed.
+     *
+     * @return The canvas, or null if there is no memory for the cache.
+     */
+    private Canvas getRowCacheCanvas(int w, int h) {
+        if (mRowCacheUnavailable || w <= 0 || h <= 0) {
+            return null;
+        }
+        if (mRowCache == null || mRowCache.getWidth() != w
+                || mRowCache.getHeight() != h) {
+            releaseRowCache();
+            try {
+                mRowCache = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                Log.w(TAG, "No memory for a " + w + "x" + h + " row cache");
+                mRowCacheUnavailable = true;
+                return null;
+            }
+            mRowCacheCanvas = new Canvas(mRowCache);
+        }
+        return mRowCacheCanvas;
+    }
 
-            //createLinks always returns at least 1
-            --linkLinesToSkip;
+    /**
+     * Drop the row cache; it will be reallocated and redrawn on the next
+     * frame.  The bitmap isn't recycled, because the last frame may still
+     * be using it.
+     */
+    private void releaseRowCache() {
+        mRowCache = null;
+        mRowCacheCanvas = null;
+        mRowCacheValid = false;
+        mRowCacheUnavailable = false;
+    }
+
+    /**
+     * Invalidate the part of the view showing the screen rows which changed
+     * since the last frame, together with the old and new cursor.
+     */
+    private void invalidateDirtyRows() {
+        TranscriptScreen screen = mEmulator.getScreen();
+        int firstRow = Integer.MAX_VALUE;
+        int lastRow = -1;
+        int firstColumn = Integer.MAX_VALUE;
+        int lastColumn = -1;
+        for (int row = 0; row < mRows; ++row) {
+            if (screen.isRowDirty(row)) {
+                firstRow = Math.min(firstRow, row);
+                lastRow = row;
+                firstColumn = Math.min(firstColumn, screen.getDirtyStart(row));
+                lastColumn = Math.max(lastColumn, screen.getDirtyEnd(row));
+            }
         }
+        if (firstRow <= lastRow) {
+            invalidateCells(firstColumn, firstRow, lastColumn, lastRow);
+        }
+
+        int cx = mEmulator.getCursorCol();
+        int cy = mEmulator.getCursorRow();
+        if (cx != mCachedCursorCol || cy != mCachedCursorRow) {
+            if (mCachedCursorRow >= 0) {
+                invalidateCells(mCachedCursorCol, mCachedCursorRow,
+                        mCachedCursorCol + 2, mCachedCursorRow);
+            }
+            invalidateCells(cx, cy, cx + 2, cy);
+        }
+    }
+
+    /**
+     * Invalidate the part of the view showing columns firstColumn to
+     * lastColumn - 1 of screen rows firstRow to lastRow.
+     */
+    private void invalidateCells(int firstColumn, int firstRow,
+            int lastColumn, int lastRow) {
+        if (mImeBuffer.length() > 0) {
+            // The IME text can be drawn anywhere on the cursor row
+            firstColumn = 0;
+            lastColumn = mColumns;
+        }
+        // Allow one column either side for glyphs which overhang their cell
+        int left = (int) ((firstColumn - mLeftColumn - 1) * mCharacterWidth);
+        int right = (int) Math.ceil((lastColumn - mLeftColumn + 1) * mCharacterWidth);
+        int top = mTopOfScreenMargin + (firstRow - mTopRow) * mCharacterHeight;
+        int bottom = mTopOfScreenMargin + (lastRow + 1 - mTopRow) * mCharacterHeight;
+        invalidate(left, top, right, bottom);
     }
 
     private void ensureCursorVisible() {
@@ -1610,6 +1649,17 @@ public String getSelectedText() {
         return mEmulator.getSelectedText(mSelX1, mSelY1, mSelX2, mSelY2);
     }
 
+    /**
+     * Write the selected text to a {@link Writer}.
+     *
+     * @param out The Writer to write to. It is flushed but not closed.
+     * @param format One of the {@link TermSession} EXPORT_* formats.
+     */
+    public void exportSelectedText(Writer out, int format) throws IOException {
+        mEmulator.exportSelectedText(out, format, mColorScheme,
+                mSelX1, mSelY1, mSelX2, mSelY2);
+    }
+
     /**
      * Send a Ctrl key event to the terminal.
      */
@@ -1698,14 +1748,6 @@ public String getURLat(float x, float y)
         int row = (int)Math.floor(y_pos * mRows);
         int col = (int)Math.floor(x_pos * mColumns);
 
-        //Grab row from link layer
-        URLSpan [] linkRow = mLinkLayer.get(row);
-        URLSpan link;
-
-        //If row exists, and link exists at column, return it
-        if(linkRow != null && (link = linkRow[col]) != null)
-            return link.getURL();
-        else
-            return null;
+        return mLinkIndex.getUrlAt(row, col);
     }
 }
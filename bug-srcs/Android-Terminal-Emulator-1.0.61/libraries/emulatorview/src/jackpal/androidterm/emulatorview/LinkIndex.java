@@ -0,0 +1,510 @@
+package jackpal.androidterm.emulatorview;
+
+import java.util.ArrayList;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.SparseArray;
+
+/**
+ * Keeps track of the http and https links on the visible rows of an
+ * EmulatorView, so that they can be looked up when the user taps the screen.
+ *
+ * The view tells the index which rows it has drawn since the last frame.  On
+ * the UI thread, the index copies the text of only those rows (extended to
+ * whole wrapped lines) and hands it to a background thread, which finds the
+ * links with a simple hand-written scanner and posts the results back.  The
+ * links found are kept per screen row; since they are keyed by screen row,
+ * they are all thrown away whenever the screen scrolls or the view moves
+ * through the transcript, and the visible rows are scanned again.
+ *
+ * All methods must be called on the UI thread.
+ */
+class LinkIndex {
+    private static HandlerThread sScanThread;
+    private static Handler sScanHandler;
+
+    /** The links on one screen row. */
+    private static final class RowLinks {
+        /** Pairs of first column and one after the last column of each link */
+        final int[] mColumns;
+        final String[] mUrls;
+
+        RowLinks(int[] columns, String[] urls) {
+            mColumns = columns;
+            mUrls = urls;
+        }
+    }
+
+    /** The text of one (possibly wrapped) line, copied for scanning. */
+    private static final class Line {
+        final int mFirstRow;
+        final int mRowCount;
+        final String mText;
+        final boolean mBasic;
+        /** Set by the scanner: the links found on each row of the line. */
+        RowLinks[] mLinks;
+
+        Line(int firstRow, int rowCount, String text, boolean basic) {
+            mFirstRow = firstRow;
+            mRowCount = rowCount;
+            mText = text;
+            mBasic = basic;
+        }
+    }
+
+    private final Handler mHandler = new Handler();
+    private final SparseArray<RowLinks> mLinks = new SparseArray<RowLinks>();
+
+    /* What the links in mLinks were found for */
+    private TranscriptScreen mScreen;
+    private int mTopRow;
+    private int mRows;
+    private int mColumns;
+
+    /** Incremented whenever mLinks is cleared, so stale results can be
+     *  dropped. */
+    private volatile int mGeneration;
+    private boolean mAllRowsChanged = true;
+    private boolean[] mChangedRows = new boolean[0];
+
+    /**
+     * Forget all the links, and scan every row again on the next update.
+     * Called when the contents of the screen move.
+     */
+    public void clear() {
+        ++mGeneration;
+        mLinks.clear();
+        mAllRowsChanged = true;
+    }
+
+    /**
+     * Note that a screen row has (possibly) changed and needs scanning.
+     *
+     * @param row The screen row, from 0 to the number of rows - 1.
+     */
+    public void rowChanged(int row) {
+        if (row >= 0 && row < mChangedRows.length) {
+            mChangedRows[row] = true;
+        }
+    }
+
+    /**
+     * Start scanning the rows which have changed since the last update.
+     *
+     * @param screen The screen being shown.
+     * @param topRow The transcript row shown at the top of the view.
+     * @param rows The number of rows in the view.
+     * @param columns The number of columns in the view.
+     */
+    public void update(TranscriptScreen screen, int topRow, int rows, int columns) {
+        if (screen != mScreen || topRow != mTopRow || rows != mRows
+                || columns != mColumns) {
+            clear();
+            mScreen = screen;
+            mTopRow = topRow;
+            mRows = rows;
+            mColumns = columns;
+        }
+        if (mChangedRows.length != rows) {
+            mChangedRows = new boolean[rows];
+            mAllRowsChanged = true;
+        }
+        boolean[] changedRows = mChangedRows;
+        boolean allRowsChanged = mAllRowsChanged;
+        mAllRowsChanged = false;
+
+        ArrayList<Line> lines = null;
+        for (int row = 0; row < rows; ++row) {
+            if (!allRowsChanged && !changedRows[row]) {
+                continue;
+            }
+
+            // Scan the whole of the wrapped line this row is part of
+            int firstRow = row;
+            while (firstRow > 0 && screen.getScriptLineWrap(topRow + firstRow - 1)) {
+                --firstRow;
+            }
+            Line line = copyLine(screen, topRow, firstRow, rows);
+            for (int i = firstRow; i < firstRow + line.mRowCount; ++i) {
+                changedRows[i] = false;
+            }
+            row = firstRow + line.mRowCount - 1;
+
+            if (lines == null) {
+                lines = new ArrayList<Line>();
+            }
+            lines.add(line);
+        }
+
+        if (lines != null) {
+            scan(lines, mGeneration, columns);
+        }
+    }
+
+    /**
+     * Get the URL of the link at a screen position.
+     *
+     * @return The URL, or null if there's no link there.
+     */
+    public String getUrlAt(int row, int column) {
+        RowLinks links = mLinks.get(row);
+        if (links == null) {
+            return null;
+        }
+        int[] columns = links.mColumns;
+        for (int i = 0; i < columns.length; i += 2) {
+            if (column >= columns[i] && column < columns[i + 1]) {
+                return links.mUrls[i / 2];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copy the text of the wrapped line starting at a screen row.
+     */
+    private static Line copyLine(TranscriptScreen screen, int topRow, int firstRow,
+            int rows) {
+        StringBuilder text = new StringBuilder();
+        boolean basic = true;
+        int rowCount = 0;
+        boolean lineWrap = true;
+        while (lineWrap && firstRow + rowCount < rows) {
+            int row = topRow + firstRow + rowCount;
+            char[] rowText = screen.getScriptLine(row);
+            ++rowCount;
+            if (rowText == null) {
+                break;
+            }
+
+            /* If this is not a basic line, the array returned from
+             * getScriptLine() could have arbitrary garbage at the end --
+             * only include up to the NUL which ends the line. */
+            int rowLength;
+            if (screen.isBasicLine(row)) {
+                rowLength = rowText.length;
+            } else {
+                basic = false;
+                for (rowLength = 0; rowText[rowLength] != 0; ++rowLength);
+            }
+            text.append(rowText, 0, rowLength);
+
+            lineWrap = screen.getScriptLineWrap(row);
+        }
+        return new Line(firstRow, rowCount, text.toString(), basic);
+    }
+
+    /**
+     * Find the links in some lines on the scan thread, then store them on
+     * the UI thread unless the index has been cleared in the meantime.
+     */
+    private void scan(final ArrayList<Line> lines, final int generation,
+            final int columns) {
+        getScanHandler().post(new Runnable() {
+            public void run() {
+                if (generation != mGeneration) {
+                    return;
+                }
+                for (Line line : lines) {
+                    line.mLinks = findLinks(line, columns);
+                }
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        for (Line line : lines) {
+                            for (int i = 0; i < line.mRowCount; ++i) {
+                                RowLinks links = line.mLinks[i];
+                                if (links == null) {
+                                    mLinks.remove(line.mFirstRow + i);
+                                } else {
+                                    mLinks.put(line.mFirstRow + i, links);
+                                }
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static synchronized Handler getScanHandler() {
+        if (sScanHandler == null) {
+            sScanThread = new HandlerThread("EmulatorView link scanner");
+            sScanThread.start();
+            sScanHandler = new Handler(sScanThread.getLooper());
+        }
+        return sScanHandler;
+    }
+
+    /**
+     * Find the links in a line and work out the columns they cover on each
+     * of the line's rows.
+     */
+    private static RowLinks[] findLinks(Line line, int columns) {
+        String text = line.mText;
+        int rowCount = line.mRowCount;
+        RowLinks[] rowLinks = new RowLinks[rowCount];
+        int[] bounds = new int[2];
+        int from = 0;
+
+        // The screen position reached so far by measureTo()
+        int index = 0;
+        int row = 0;
+        int column = 0;
+
+        while (findUrl(text, from, bounds)) {
+            int start = bounds[0];
+            int end = bounds[1];
+            from = end;
+            String url = text.substring(start, end);
+
+            int startRow, startColumn, endRow, endColumn;
+            if (line.mBasic) {
+                // Basic line -- one char per column
+                startRow = start / columns;
+                startColumn = start % columns;
+                endRow = end / columns;
+                endColumn = end % columns;
+            } else {
+                for (; index < start; ++index) {
+                    char c = text.charAt(index);
+                    if (Character.isHighSurrogate(c) && index + 1 < text.length()) {
+                        ++index;
+                        column += UnicodeTranscript.charWidth(c, text.charAt(index));
+                    } else {
+                        column += UnicodeTranscript.charWidth(c);
+                    }
+                    if (column >= columns) {
+                        ++row;
+                        column %= columns;
+                    }
+                }
+                startRow = row;
+                startColumn = column;
+                for (; index < end; ++index) {
+                    char c = text.charAt(index);
+                    if (Character.isHighSurrogate(c) && index + 1 < text.length()) {
+                        ++index;
+                        column += UnicodeTranscript.charWidth(c, text.charAt(index));
+                    } else {
+                        column += UnicodeTranscript.charWidth(c);
+                    }
+                    if (column >= columns) {
+                        ++row;
+                        column %= columns;
+                    }
+                }
+                endRow = row;
+                endColumn = column;
+            }
+
+            for (int i = startRow; i <= endRow && i < rowCount; ++i) {
+                int runStart = (i == startRow) ? startColumn : 0;
+                int runEnd = (i == endRow) ? endColumn : columns;
+                if (runStart < runEnd) {
+                    rowLinks[i] = addLink(rowLinks[i], runStart, runEnd, url);
+                }
+            }
+        }
+        return rowLinks;
+    }
+
+    private static RowLinks addLink(RowLinks links, int start, int end, String url) {
+        if (links == null) {
+            return new RowLinks(new int[] { start, end }, new String[] { url });
+        }
+        int count = links.mUrls.length;
+        int[] columns = new int[2 * count + 2];
+        String[] urls = new String[count + 1];
+        System.arraycopy(links.mColumns, 0, columns, 0, 2 * count);
+        System.arraycopy(links.mUrls, 0, urls, 0, count);
+        columns[2 * count] = start;
+        columns[2 * count + 1] = end;
+        urls[count] = url;
+        return new RowLinks(columns, urls);
+    }
+
+    /**
+     * Find the next http or https URL in some text.  This recognizes roughly
+     * what Android's Patterns.WEB_URL does for those schemes: a host name
+     * ending in an alphabetic top-level domain (or an IPv4 address), an
+     * optional port, and an optional path; a URL which is followed by more
+     * text ends at its last letter, digit or underscore.
+     *
+     * @param text The text to search.
+     * @param from Where in the text to start searching.
+     * @param bounds Set to the start and the end of the URL, if one is found.
+     * @return Whether a URL was found.
+     */
+    static boolean findUrl(CharSequence text, int from, int[] bounds) {
+        int length = text.length();
+        for (int start = from; start + 7 < length; ++start) {
+            if (text.charAt(start) != 'h' || !regionMatches(text, start, "http")) {
+                continue;
+            }
+            int pos = start + 4;
+            if (text.charAt(pos) == 's') {
+                ++pos;
+            }
+            if (!regionMatches(text, pos, "://")) {
+                continue;
+            }
+            pos += 3;
+
+            // Optional user info, then the host name
+            int hostStart = pos;
+            int authorityEnd = pos;
+            while (authorityEnd < length && isAuthorityChar(text.charAt(authorityEnd))) {
+                if (text.charAt(authorityEnd) == '@') {
+                    hostStart = authorityEnd + 1;
+                }
+                ++authorityEnd;
+            }
+            int hostEnd = hostStart;
+            while (hostEnd < authorityEnd && isHostChar(text.charAt(hostEnd))) {
+                ++hostEnd;
+            }
+            if (!isValidHost(text, hostStart, hostEnd)) {
+                continue;
+            }
+
+            // Optional port
+            int end = hostEnd;
+            if (end < length && text.charAt(end) == ':') {
+                int portEnd = end + 1;
+                while (portEnd < length && portEnd - end <= 5
+                        && isDigit(text.charAt(portEnd))) {
+                    ++portEnd;
+                }
+                if (portEnd > end + 1) {
+                    end = portEnd;
+                }
+            }
+
+            // Optional path, query and fragment
+            if (end < length && text.charAt(end) == '/') {
+                while (end < length && isPathChar(text.charAt(end))) {
+                    ++end;
+                }
+            }
+
+            // Unless the URL runs to the end of the text, it has to end on a
+            // word boundary, which leaves out trailing punctuation
+            if (end < length) {
+                while (end > hostEnd && !isWordChar(text.charAt(end - 1))) {
+                    --end;
+                }
+            }
+
+            bounds[0] = start;
+            bounds[1] = end;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(CharSequence text, int start, String s) {
+        if (start + s.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            if (text.charAt(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the host name is a dotted name ending in an alphabetic
+     * top-level domain of at least two letters, or an IPv4 address.
+     */
+    private static boolean isValidHost(CharSequence text, int start, int end) {
+        if (start == end || text.charAt(start) == '.' || text.charAt(end - 1) == '.') {
+            return false;
+        }
+        int lastDot = -1;
+        boolean allDigitsAndDots = true;
+        int dots = 0;
+        for (int i = start; i < end; ++i) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                if (text.charAt(i - 1) == '.') {
+                    return false;
+                }
+                lastDot = i;
+                ++dots;
+            } else if (!isDigit(c)) {
+                allDigitsAndDots = false;
+            }
+        }
+        if (lastDot < 0) {
+            return false;
+        }
+        if (allDigitsAndDots) {
+            return dots == 3;
+        }
+        if (end - lastDot - 1 < 2) {
+            return false;
+        }
+        for (int i = lastDot + 1; i < end; ++i) {
+            char c = text.charAt(i);
+            if (!Character.isLetter(c) && !(c == '-' && i > lastDot + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAsciiAlnum(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c);
+    }
+
+    /** Non-ASCII letters, as allowed in internationalized names. */
+    private static boolean isIriChar(char c) {
+        return c >= ' ' && Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isWordChar(char c) {
+        return isAsciiAlnum(c) || c == '_' || isIriChar(c);
+    }
+
+    private static boolean isHostChar(char c) {
+        return isAsciiAlnum(c) || c == '-' || c == '.' || isIriChar(c);
+    }
+
+    private static boolean isAuthorityChar(char c) {
+        if (isHostChar(c)) {
+            return true;
+        }
+        switch (c) {
+        case '$': case '_': case '+': case '!': case '*': case '\'':
+        case '(': case ')': case ',': case ';': case '?': case '&':
+        case '=': case '%': case ':': case '@':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isPathChar(char c) {
+        if (isAsciiAlnum(c) || isIriChar(c)) {
+            return true;
+        }
+        switch (c) {
+        case ';': case '/': case '?': case ':': case '@': case '&': case '=':
+        case '#': case '~': case '-': case '.': case '+': case '!': case '*':
+        case '\'': case '(': case ')': case ',': case '_': case '%':
+            return true;
+        default:
+            return false;
+        }
+    }
+}
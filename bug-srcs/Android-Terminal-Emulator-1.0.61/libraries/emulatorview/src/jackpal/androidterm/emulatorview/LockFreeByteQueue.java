@@ -0,0 +1,278 @@
+package jackpal.androidterm.emulatorview;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free byte queue for exactly one producer thread and one consumer
+ * thread.
+ *
+ * The data is kept in a chain of segments.  The producer appends a new,
+ * larger segment whenever the last one fills up, so the queue grows on demand
+ * up to its maximum capacity; the consumer drops segments once it has read
+ * them, handing one back for reuse.  The total number of bytes written and
+ * read so far are kept in two volatile counters, which are the only state
+ * shared between the threads.
+ *
+ * A side that has to wait spins briefly, then yields, then parks.  The other
+ * side only pays for a wakeup when a thread is actually parked, and a single
+ * unpark covers everything written (or read) while it was parked.
+ */
+class LockFreeByteQueue implements ByteFifo {
+    private static final int SPIN_TRIES = 64;
+    private static final int YIELD_TRIES = 16;
+
+    private static final class Segment {
+        final byte[] mData;
+        /** Only followed by the consumer after the producer has published
+         *  bytes beyond the end of this segment. */
+        Segment mNext;
+
+        Segment(int size) {
+            mData = new byte[size];
+        }
+    }
+
+    private final int mMaxSegmentSize;
+    private final int mCapacity;
+
+    /** Total bytes written; only modified by the producer. */
+    private volatile long mWritten;
+    /** Total bytes read; only modified by the consumer. */
+    private volatile long mRead;
+
+    // Producer-only state
+    private Segment mTail;
+    private int mTailPos;
+
+    // Consumer-only state
+    private Segment mHead;
+    private int mHeadPos;
+
+    /** A drained segment handed from the consumer back to the producer. */
+    private volatile Segment mSpare;
+
+    private final AtomicReference<Thread> mParkedReader = new AtomicReference<Thread>();
+    private final AtomicReference<Thread> mParkedWriter = new AtomicReference<Thread>();
+    private final AtomicInteger mWakeupCount = new AtomicInteger();
+
+    /**
+     * @param initialSize The size of the first segment.
+     * @param capacity The maximum number of bytes the queue will hold before
+     *                 writes block.
+     */
+    public LockFreeByteQueue(int initialSize, int capacity) {
+        if (initialSize <= 0 || capacity < initialSize) {
+            throw new IllegalArgumentException("initialSize " + initialSize
+                    + " capacity " + capacity);
+        }
+        mCapacity = capacity;
+        mMaxSegmentSize = Math.max(initialSize, capacity / 8);
+        mTail = mHead = new Segment(initialSize);
+    }
+
+    public int getBytesAvailable() {
+        return (int) (mWritten - mRead);
+    }
+
+    public int getFreeSpace() {
+        return mCapacity - (int) (mWritten - mRead);
+    }
+
+    public int getWakeupCount() {
+        return mWakeupCount.get();
+    }
+
+    public int read(byte[] buffer, int offset, int length)
+        throws InterruptedException {
+        if (length + offset > buffer.length) {
+            throw
+                new IllegalArgumentException("length + offset > buffer.length");
+        }
+        if (length < 0) {
+            throw
+            new IllegalArgumentException("length < 0");
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        long read = mRead;
+        int available = (int) (mWritten - read);
+        if (available == 0) {
+            available = awaitData(read);
+        }
+
+        int toRead = Math.min(length, available);
+        int remaining = toRead;
+        Segment head = mHead;
+        int headPos = mHeadPos;
+        while (remaining > 0) {
+            if (headPos == head.mData.length) {
+                Segment drained = head;
+                head = head.mNext;
+                headPos = 0;
+                drained.mNext = null;
+                if (mSpare == null) {
+                    mSpare = drained;
+                }
+            }
+            int bytesToCopy = Math.min(remaining, head.mData.length - headPos);
+            System.arraycopy(head.mData, headPos, buffer, offset, bytesToCopy);
+            headPos += bytesToCopy;
+            offset += bytesToCopy;
+            remaining -= bytesToCopy;
+        }
+        mHead = head;
+        mHeadPos = headPos;
+
+        mRead = read + toRead;
+        wake(mParkedWriter);
+        return toRead;
+    }
+
+    public int write(byte[] buffer, int offset, int length)
+        throws InterruptedException {
+        if (length + offset > buffer.length) {
+            throw
+                new IllegalArgumentException("length + offset > buffer.length");
+        }
+        if (length < 0) {
+            throw
+            new IllegalArgumentException("length < 0");
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        long written = mWritten;
+        int free = mCapacity - (int) (written - mRead);
+        if (free == 0) {
+            free = awaitSpace(written);
+        }
+
+        int toWrite = Math.min(length, free);
+        int remaining = toWrite;
+        Segment tail = mTail;
+        int tailPos = mTailPos;
+        while (remaining > 0) {
+            if (tailPos == tail.mData.length) {
+                Segment next = obtainSegment(Math.min(2 * tail.mData.length,
+                        mMaxSegmentSize));
+                tail.mNext = next;
+                tail = next;
+                tailPos = 0;
+            }
+            int bytesToCopy = Math.min(remaining, tail.mData.length - tailPos);
+            System.arraycopy(buffer, offset, tail.mData, tailPos, bytesToCopy);
+            tailPos += bytesToCopy;
+            offset += bytesToCopy;
+            remaining -= bytesToCopy;
+        }
+        mTail = tail;
+        mTailPos = tailPos;
+
+        // Publish the data (and any new segment links) to the consumer
+        mWritten = written + toWrite;
+        wake(mParkedReader);
+        return toWrite;
+    }
+
+    private Segment obtainSegment(int size) {
+        Segment spare = mSpare;
+        if (spare != null) {
+            mSpare = null;
+            if (spare.mData.length >= size) {
+                return spare;
+            }
+        }
+        return new Segment(size);
+    }
+
+    /**
+     * Wait until the producer has written past the given position.
+     *
+     * @return The number of bytes available.
+     */
+    private int awaitData(long read) throws InterruptedException {
+        Thread self = Thread.currentThread();
+        try {
+            for (int tries = 0; ; ++tries) {
+                int available = (int) (mWritten - read);
+                if (available > 0) {
+                    return available;
+                }
+                if (readyToPark(tries, mParkedReader, self)) {
+                    available = (int) (mWritten - read);
+                    if (available > 0) {
+                        return available;
+                    }
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            mParkedReader.compareAndSet(self, null);
+        }
+    }
+
+    /**
+     * Wait until the consumer has freed some space in the queue.
+     *
+     * @return The number of bytes which can be written.
+     */
+    private int awaitSpace(long written) throws InterruptedException {
+        Thread self = Thread.currentThread();
+        try {
+            for (int tries = 0; ; ++tries) {
+                int free = mCapacity - (int) (written - mRead);
+                if (free > 0) {
+                    return free;
+                }
+                if (readyToPark(tries, mParkedWriter, self)) {
+                    free = mCapacity - (int) (written - mRead);
+                    if (free > 0) {
+                        return free;
+                    }
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            mParkedWriter.compareAndSet(self, null);
+        }
+    }
+
+    /**
+     * One round of spin-then-park backoff: spin for a while, then yield for
+     * a while, then advertise the current thread in parkedSlot and return
+     * true.  The caller must recheck its condition before actually parking;
+     * the other side publishes its progress before looking at the slot, so
+     * either the recheck sees the progress or the other side sees us.
+     */
+    private boolean readyToPark(int tries, AtomicReference<Thread> parkedSlot,
+            Thread self) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (tries < SPIN_TRIES) {
+            return false;
+        }
+        if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+            return false;
+        }
+        parkedSlot.set(self);
+        return true;
+    }
+
+    private void wake(AtomicReference<Thread> parkedSlot) {
+        if (parkedSlot.get() == null) {
+            return;
+        }
+        Thread parked = parkedSlot.getAndSet(null);
+        if (parked != null) {
+            LockSupport.unpark(parked);
+            mWakeupCount.incrementAndGet();
+        }
+    }
+}
@@ -49,6 +49,19 @@ interface Screen {
      */
     void set(int x, int y, byte b, int style);
 
+    /**
+     * Store a run of regular-width BMP characters into the screen, starting
+     * at location (x, y).  The run must fit on the row.
+     *
+     * @param x X coordinate (also known as column) of the first character
+     * @param y Y coordinate (also known as row)
+     * @param chars the array containing the characters to store
+     * @param offset the index of the first character in the array
+     * @param count the number of characters to store
+     * @param style the text style
+     */
+    void set(int x, int y, char[] chars, int offset, int count, int style);
+
     /**
      * Scroll the screen down one line. To scroll the whole screen of a 24 line
      * screen, the arguments would be (0, 24).
@@ -0,0 +1,561 @@
+package jackpal.androidterm.emulatorview;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import android.util.Log;
+
+/**
+ * Storage for the lines of a transcript which have scrolled off the top of
+ * the screen.  Lines can only be added and removed at the bottom (the newest
+ * end), and the oldest lines are dropped once the buffer is full.
+ *
+ * Lines are kept in pages of PAGE_ROWS lines, which are addressed as a
+ * ring.  Within a page, the text of all the lines is packed into a single
+ * char[] with trailing blanks trimmed, and the styles are stored as runs of
+ * (style, number of columns) in a single int[].  A blank line or a line in
+ * a single style thus costs only a few bytes more than its text.
+ *
+ * Pages which have scrolled far off the screen are rarely looked at again,
+ * so compact() deflates them.  A compressed page is inflated again when one
+ * of its lines is read; a couple of inflated pages are cached for that.
+ */
+class ScrollbackBuffer {
+    private static final String TAG = "ScrollbackBuffer";
+
+    /** Rows per page.  Per-row flags are kept as bits in a long. */
+    static final int PAGE_ROWS = 64;
+
+    /** The newest pages, which are never compressed. */
+    private static final int UNCOMPRESSED_PAGES = 16;
+
+    /** The number of compressed pages which are kept inflated for reading. */
+    private static final int INFLATED_CACHE_SIZE = 2;
+
+    private static final class Page {
+        /** The number of rows stored in the page, including dropped ones. */
+        int mRows;
+
+        /* Per-row flags, bit i for row i */
+        long mBlank;
+        long mFull;
+        long mNoColor;
+        long mWrap;
+
+        /* Row i's text is mText[mTextEnd[i-1]..mTextEnd[i]) (from 0 for the
+           first row), and its style runs are the (style, count) pairs in
+           mRuns[mRunsEnd[i-1]..mRunsEnd[i]).  All four arrays are null
+           while the page is compressed and not inflated. */
+        char[] mText;
+        int mTextLength;
+        int[] mTextEnd;
+        int[] mRuns;
+        int mRunsLength;
+        int[] mRunsEnd;
+
+        /** The deflated contents of the arrays above, if compressed. */
+        byte[] mCompressed;
+
+        Page(int textCapacity, int runsCapacity) {
+            mText = new char[textCapacity];
+            mTextEnd = new int[PAGE_ROWS];
+            mRuns = new int[runsCapacity];
+            mRunsEnd = new int[PAGE_ROWS];
+        }
+
+        int textStart(int row) {
+            return row == 0 ? 0 : mTextEnd[row - 1];
+        }
+
+        int runsStart(int row) {
+            return row == 0 ? 0 : mRunsEnd[row - 1];
+        }
+
+        /**
+         * The number of bytes needed to hold the arrays while compressing.
+         */
+        int rawSize() {
+            return 2 * mTextLength + 4 * mRunsLength + 8 * mRows;
+        }
+
+        void trim() {
+            if (mCompressed != null) {
+                return;
+            }
+            mText = resize(mText, mTextLength);
+            mRuns = resize(mRuns, mRunsLength);
+        }
+    }
+
+    private final int mColumns;
+    private int mCapacity;
+
+    /** Ring of pages; the oldest is at mFirstPage. */
+    private Page[] mPages;
+    private int mFirstPage;
+    private int mPageCount;
+    /** Rows already dropped from the start of the oldest page. */
+    private int mFirstPageDropped;
+    private int mRows;
+    /** The number of pages, starting from the oldest, which are compressed. */
+    private int mCompressedPages;
+
+    private final Page[] mInflated = new Page[INFLATED_CACHE_SIZE];
+    private int mNextInflated;
+
+    /** Set by locate() */
+    private Page mFoundPage;
+    private int mFoundRow;
+
+    private char[] mScratchLine;
+
+    /**
+     * @param columns The width of the lines.
+     * @param capacity The maximum number of lines to keep.
+     */
+    public ScrollbackBuffer(int columns, int capacity) {
+        mColumns = columns;
+        mCapacity = Math.max(0, capacity);
+        mPages = new Page[pagesFor(mCapacity)];
+    }
+
+    private static int pagesFor(int capacity) {
+        // The oldest page may be partly dropped and the newest partly filled
+        return (capacity + PAGE_ROWS - 1) / PAGE_ROWS + 1;
+    }
+
+    public int getRows() {
+        return mRows;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Change the maximum number of lines kept, dropping the oldest lines if
+     * there are now too many.
+     */
+    public void setCapacity(int capacity) {
+        capacity = Math.max(0, capacity);
+        while (mRows > capacity) {
+            dropOldest();
+        }
+        mCapacity = capacity;
+        int pageSlots = pagesFor(capacity);
+        if (pageSlots != mPages.length) {
+            Page[] pages = new Page[pageSlots];
+            for (int i = 0; i < mPageCount; ++i) {
+                pages[i] = pageAt(i);
+            }
+            mPages = pages;
+            mFirstPage = 0;
+        }
+    }
+
+    private Page pageAt(int index) {
+        return mPages[(mFirstPage + index) % mPages.length];
+    }
+
+    /**
+     * Find the page and the row within it holding a line, leaving them in
+     * mFoundPage and mFoundRow.
+     */
+    private void locate(int row) {
+        if (row < 0 || row >= mRows) {
+            throw new IllegalArgumentException("row " + row + " of " + mRows);
+        }
+        int position = row + mFirstPageDropped;
+        mFoundPage = pageAt(position / PAGE_ROWS);
+        mFoundRow = position % PAGE_ROWS;
+    }
+
+    /**
+     * Add a line at the bottom of the buffer.  The line and its style are
+     * copied, so the caller may go on using them.
+     *
+     * @param line The text of the line: a char[], a FullUnicodeLine, or null
+     *             for a blank line.
+     * @param color The style of the line, or null.
+     * @param wrap Whether the line wraps onto the next one.
+     */
+    public void push(Object line, StyleRow color, boolean wrap) {
+        if (mCapacity == 0) {
+            return;
+        }
+        if (mRows == mCapacity) {
+            dropOldest();
+        }
+
+        Page page = null;
+        if (mPageCount > 0) {
+            page = pageAt(mPageCount - 1);
+            if (page.mRows == PAGE_ROWS) {
+                page = null;
+            } else {
+                prepareForWrite(page);
+            }
+        }
+        if (page == null) {
+            // Size the new page like the last one, which is likely to be
+            // similar, to save growing the arrays a line at a time
+            int textCapacity = 256;
+            int runsCapacity = 32;
+            if (mPageCount > 0) {
+                // The previous page is full and won't change any more
+                Page last = pageAt(mPageCount - 1);
+                last.trim();
+                textCapacity = Math.max(textCapacity, last.mTextLength * 9 / 8);
+                runsCapacity = Math.max(runsCapacity, last.mRunsLength * 9 / 8);
+            }
+            page = new Page(textCapacity, runsCapacity);
+            mPages[(mFirstPage + mPageCount) % mPages.length] = page;
+            ++mPageCount;
+        }
+
+        int row = page.mRows;
+        long bit = 1L << row;
+        int columns = mColumns;
+
+        // Text
+        if (line == null) {
+            page.mBlank |= bit;
+        } else if (line instanceof char[]) {
+            char[] text = (char[]) line;
+            int length = columns;
+            while (length > 0 && text[length - 1] == ' ') {
+                --length;
+            }
+            ensureTextCapacity(page, length);
+            System.arraycopy(text, 0, page.mText, page.mTextLength, length);
+            page.mTextLength += length;
+        } else {
+            FullUnicodeLine fullLine = (FullUnicodeLine) line;
+            ensureTextCapacity(page, fullLine.getPackedLength());
+            page.mTextLength = fullLine.pack(page.mText, page.mTextLength);
+            page.mFull |= bit;
+        }
+        page.mTextEnd[row] = page.mTextLength;
+
+        // Style runs
+        if (color == null) {
+            page.mNoColor |= bit;
+        } else if (color.isSolidStyle()) {
+            ensureRunsCapacity(page, 2);
+            page.mRuns[page.mRunsLength++] = color.getSolidStyle();
+            page.mRuns[page.mRunsLength++] = columns;
+        } else {
+            for (int column = 0; column < columns; ) {
+                int count = color.getRunLength(column);
+                ensureRunsCapacity(page, 2);
+                page.mRuns[page.mRunsLength++] = color.get(column);
+                page.mRuns[page.mRunsLength++] = count;
+                column += count;
+            }
+        }
+        page.mRunsEnd[row] = page.mRunsLength;
+
+        if (wrap) {
+            page.mWrap |= bit;
+        }
+        page.mRows = row + 1;
+        ++mRows;
+    }
+
+    // Arrays.copyOf() is not available before API 9
+    private static char[] resize(char[] src, int length) {
+        char[] dst = new char[length];
+        System.arraycopy(src, 0, dst, 0, Math.min(src.length, length));
+        return dst;
+    }
+
+    private static int[] resize(int[] src, int length) {
+        int[] dst = new int[length];
+        System.arraycopy(src, 0, dst, 0, Math.min(src.length, length));
+        return dst;
+    }
+
+    private static byte[] resize(byte[] src, int length) {
+        byte[] dst = new byte[length];
+        System.arraycopy(src, 0, dst, 0, Math.min(src.length, length));
+        return dst;
+    }
+
+    private static void ensureTextCapacity(Page page, int extra) {
+        if (page.mTextLength + extra > page.mText.length) {
+            page.mText = resize(page.mText,
+                    Math.max(2 * page.mText.length, page.mTextLength + extra));
+        }
+    }
+
+    private static void ensureRunsCapacity(Page page, int extra) {
+        if (page.mRunsLength + extra > page.mRuns.length) {
+            page.mRuns = resize(page.mRuns,
+                    Math.max(2 * page.mRuns.length, page.mRunsLength + extra));
+        }
+    }
+
+    /**
+     * Remove the newest line.
+     */
+    public void removeNewest() {
+        if (mRows == 0) {
+            throw new IllegalStateException("Scrollback is empty");
+        }
+        Page page = pageAt(mPageCount - 1);
+        prepareForWrite(page);
+        int row = page.mRows - 1;
+        long mask = ~(1L << row);
+        page.mBlank &= mask;
+        page.mFull &= mask;
+        page.mNoColor &= mask;
+        page.mWrap &= mask;
+        page.mTextLength = page.textStart(row);
+        page.mRunsLength = page.runsStart(row);
+        page.mRows = row;
+        --mRows;
+
+        int rowsLeft = (mPageCount == 1) ? row - mFirstPageDropped : row;
+        if (rowsLeft == 0) {
+            mPages[(mFirstPage + mPageCount - 1) % mPages.length] = null;
+            --mPageCount;
+            if (mPageCount == 0) {
+                mFirstPageDropped = 0;
+            }
+        }
+    }
+
+    private void dropOldest() {
+        Page page = pageAt(0);
+        ++mFirstPageDropped;
+        --mRows;
+        if (mFirstPageDropped == page.mRows) {
+            // Nothing left in the page
+            mPages[mFirstPage] = null;
+            mFirstPage = (mFirstPage + 1) % mPages.length;
+            --mPageCount;
+            mFirstPageDropped = 0;
+            if (mCompressedPages > 0) {
+                --mCompressedPages;
+            }
+            forgetInflated(page);
+        }
+    }
+
+    /**
+     * Make sure a page about to be modified isn't compressed.
+     */
+    private void prepareForWrite(Page page) {
+        if (page.mCompressed != null) {
+            inflate(page);
+            page.mCompressed = null;
+            forgetInflated(page);
+            // Only the newest page is ever written to
+            mCompressedPages = Math.min(mCompressedPages, mPageCount - 1);
+        }
+    }
+
+    public boolean getLineWrap(int row) {
+        locate(row);
+        return (mFoundPage.mWrap & (1L << mFoundRow)) != 0;
+    }
+
+    public void setLineWrap(int row) {
+        locate(row);
+        mFoundPage.mWrap |= 1L << mFoundRow;
+    }
+
+    /**
+     * Whether a line contains only regular-width BMP characters (blank lines
+     * don't count).
+     */
+    public boolean isBasicLine(int row) {
+        locate(row);
+        long bit = 1L << mFoundRow;
+        return ((mFoundPage.mBlank | mFoundPage.mFull) & bit) == 0;
+    }
+
+    /**
+     * Get the text of a line, in the same form as UnicodeTranscript keeps it
+     * for a screen row.  A char[] returned is only valid until the next call.
+     *
+     * @return A char[] of length columns for a basic line, a
+     *         FullUnicodeLine, or null for a blank line.
+     */
+    public Object getLine(int row) {
+        locate(row);
+        Page page = mFoundPage;
+        int pageRow = mFoundRow;
+        long bit = 1L << pageRow;
+        if ((page.mBlank & bit) != 0) {
+            return null;
+        }
+        ensureReadable(page);
+        int start = page.textStart(pageRow);
+        int length = page.mTextEnd[pageRow] - start;
+        if ((page.mFull & bit) != 0) {
+            return FullUnicodeLine.unpack(mColumns, page.mText, start, length);
+        }
+        char[] line = mScratchLine;
+        if (line == null) {
+            line = mScratchLine = new char[mColumns];
+        }
+        System.arraycopy(page.mText, start, line, 0, length);
+        Arrays.fill(line, length, mColumns, ' ');
+        return line;
+    }
+
+    /**
+     * Get the style of a line, as a new StyleRow.
+     *
+     * @return The style, or null if the line had none.
+     */
+    public StyleRow getLineColor(int row) {
+        locate(row);
+        Page page = mFoundPage;
+        int pageRow = mFoundRow;
+        if ((page.mNoColor & (1L << pageRow)) != 0) {
+            return null;
+        }
+        ensureReadable(page);
+        int start = page.runsStart(pageRow);
+        int end = page.mRunsEnd[pageRow];
+        int[] runs = page.mRuns;
+        StyleRow color = new StyleRow(runs[start], mColumns);
+        int column = runs[start + 1];
+        for (int i = start + 2; i < end; i += 2) {
+            color.set(column, runs[i + 1], runs[i]);
+            column += runs[i + 1];
+        }
+        return color;
+    }
+
+    /**
+     * Compress some of the pages which have scrolled far enough away from
+     * the screen, oldest first.
+     *
+     * @param maxPages The most pages to compress in this call.
+     * @return Whether there are pages left to compress.
+     */
+    public boolean compact(int maxPages) {
+        int compressible = mPageCount - UNCOMPRESSED_PAGES;
+        while (maxPages > 0 && mCompressedPages < compressible) {
+            compress(pageAt(mCompressedPages));
+            ++mCompressedPages;
+            --maxPages;
+        }
+        return mCompressedPages < compressible;
+    }
+
+    private void compress(Page page) {
+        ByteBuffer raw = ByteBuffer.allocate(page.rawSize());
+        for (int i = 0; i < page.mTextLength; ++i) {
+            raw.putChar(page.mText[i]);
+        }
+        for (int i = 0; i < page.mRunsLength; ++i) {
+            raw.putInt(page.mRuns[i]);
+        }
+        for (int i = 0; i < page.mRows; ++i) {
+            raw.putInt(page.mTextEnd[i]);
+            raw.putInt(page.mRunsEnd[i]);
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw.array());
+            deflater.finish();
+            byte[] out = new byte[raw.capacity() / 2 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    out = resize(out, 2 * out.length);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            page.mCompressed = resize(out, length);
+        } finally {
+            deflater.end();
+        }
+        page.mText = null;
+        page.mRuns = null;
+        page.mTextEnd = null;
+        page.mRunsEnd = null;
+    }
+
+    private void ensureReadable(Page page) {
+        if (page.mText != null) {
+            return;
+        }
+        inflate(page);
+        // Keep it inflated for a while, in place of the least recently
+        // inflated page
+        Page evicted = mInflated[mNextInflated];
+        if (evicted != null && evicted.mCompressed != null) {
+            evicted.mText = null;
+            evicted.mRuns = null;
+            evicted.mTextEnd = null;
+            evicted.mRunsEnd = null;
+        }
+        mInflated[mNextInflated] = page;
+        mNextInflated = (mNextInflated + 1) % INFLATED_CACHE_SIZE;
+    }
+
+    private void inflate(Page page) {
+        if (page.mText != null) {
+            return;
+        }
+        byte[] raw = new byte[page.rawSize()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(page.mCompressed);
+            int length = 0;
+            while (length < raw.length) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != raw.length) {
+                throw new IllegalStateException("Short scrollback page: "
+                        + length + " of " + raw.length + " bytes");
+            }
+        } catch (DataFormatException e) {
+            Log.e(TAG, "Corrupt scrollback page", e);
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        char[] text = new char[page.mTextLength];
+        for (int i = 0; i < text.length; ++i) {
+            text[i] = buffer.getChar();
+        }
+        int[] runs = new int[page.mRunsLength];
+        for (int i = 0; i < runs.length; ++i) {
+            runs[i] = buffer.getInt();
+        }
+        int[] textEnd = new int[PAGE_ROWS];
+        int[] runsEnd = new int[PAGE_ROWS];
+        for (int i = 0; i < page.mRows; ++i) {
+            textEnd[i] = buffer.getInt();
+            runsEnd[i] = buffer.getInt();
+        }
+        page.mText = text;
+        page.mRuns = runs;
+        page.mTextEnd = textEnd;
+        page.mRunsEnd = runsEnd;
+    }
+
+    private void forgetInflated(Page page) {
+        for (int i = 0; i < INFLATED_CACHE_SIZE; ++i) {
+            if (mInflated[i] == page) {
+                mInflated[i] = null;
+            }
+        }
+    }
+}
@@ -24,12 +24,46 @@ final class StyleRow {
         mColumns = columns;
     }
 
-    void set(int column, int style) {
-        if (style == mStyle && mData == null) {
-            return;
+    /**
+     * @return Whether the style of the column changed.
+     */
+    boolean set(int column, int style) {
+        if (mData == null) {
+            if (style == mStyle) {
+                return false;
+            }
+            allocate();
+        } else if (getStyle(column) == style) {
+            return false;
         }
-        ensureData();
         setStyle(column, style);
+        return true;
+    }
+
+    /**
+     * @return Whether the style of any of the columns changed.
+     */
+    boolean set(int column, int count, int style) {
+        if (mData == null) {
+            if (style == mStyle) {
+                return false;
+            }
+            allocate();
+        }
+        byte b0 = (byte) (style & 0xff);
+        byte b1 = (byte) ((style >> 8) & 0xff);
+        byte b2 = (byte) ((style >> 16) & 0xff);
+        byte[] line = mData;
+        boolean changed = false;
+        for (int index = 3 * column, end = 3 * (column + count); index < end; index += 3) {
+            if (line[index] != b0 || line[index+1] != b1 || line[index+2] != b2) {
+                line[index] = b0;
+                line[index+1] = b1;
+                line[index+2] = b2;
+                changed = true;
+            }
+        }
+        return changed;
     }
 
     int get(int column) {
@@ -43,6 +77,28 @@ boolean isSolidStyle() {
         return mData == null;
     }
 
+    /**
+     * @return The number of columns, starting at column, which have the same
+     *         style as column.
+     */
+    int getRunLength(int column) {
+        if (mData == null) {
+            return mColumns - column;
+        }
+        byte[] line = mData;
+        int index = 3 * column;
+        byte b0 = line[index];
+        byte b1 = line[index+1];
+        byte b2 = line[index+2];
+        int end = 3 * mColumns;
+        for (index += 3; index < end; index += 3) {
+            if (line[index] != b0 || line[index+1] != b1 || line[index+2] != b2) {
+                break;
+            }
+        }
+        return index / 3 - column;
+    }
+
     int getSolidStyle() {
         if (mData != null) {
             throw new IllegalArgumentException("Not a solid style");
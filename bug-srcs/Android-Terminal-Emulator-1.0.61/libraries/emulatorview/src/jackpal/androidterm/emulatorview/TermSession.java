@@ -16,19 +16,24 @@
 
 package jackpal.androidterm.emulatorview;
 
+import java.io.BufferedWriter;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 
 /**
  * A terminal session, consisting of a VT100 terminal emulator and its
@@ -38,7 +43,8 @@
  * provide input and output to the terminal.  For a locally running
  * program, these would typically point to a tty; for a telnet program
  * they might point to a network socket.  Reader and writer threads will be
- * spawned to do I/O to these streams.  All other operations, including
+ * spawned to do I/O to these streams, unless a subclass does the I/O itself
+ * by overriding {@link #startIo}.  All other operations, including
  * processing of input and output in {@link #processInput processInput} and
  * {@link #write(byte[], int, int) write}, will be performed on the main thread.
  * <p>
@@ -56,6 +62,13 @@
  * and closes the attached I/O streams.
  */
 public class TermSession {
+    /** Export format for {@link #exportTranscript}: plain text. */
+    public static final int EXPORT_TEXT = 0;
+    /** Export format for {@link #exportTranscript}: text with ANSI color escapes. */
+    public static final int EXPORT_ANSI = 1;
+    /** Export format for {@link #exportTranscript}: an HTML document. */
+    public static final int EXPORT_HTML = 2;
+
     public void setKeyListener(TermKeyListener l) {
         mKeyListener = l;
     }
@@ -75,23 +88,65 @@ public void setKeyListener(TermKeyListener l) {
     private boolean mDefaultUTF8Mode;
 
     private Thread mReaderThread;
-    private ByteQueue mByteQueue;
+    private ByteFifo mByteQueue;
     private byte[] mReceiveBuffer;
 
     private Thread mWriterThread;
-    private ByteQueue mWriteQueue;
+    private ByteFifo mWriteQueue;
     private Handler mWriterHandler;
 
     private CharBuffer mWriteCharBuffer;
     private ByteBuffer mWriteByteBuffer;
     private CharsetEncoder mUTF8Encoder;
 
-    // Number of rows in the transcript
+    // Default number of rows in the transcript
     private static final int TRANSCRIPT_ROWS = 10000;
+    private int mTranscriptRows = TRANSCRIPT_ROWS;
+
+    // Scrollback pages compressed per COMPACT_TRANSCRIPT message
+    private static final int COMPACT_PAGES = 8;
+
+    // Delay before compressing scrollback after a screen update
+    private static final long COMPACT_DELAY_MS = 500;
+
+    // Initial and maximum sizes of the lock-free I/O queues
+    private static final int LOCK_FREE_QUEUE_INITIAL_SIZE = 4 * 1024;
+    private static final int LOCK_FREE_QUEUE_CAPACITY = 256 * 1024;
+
+    // Largest chunk of input handed to processInput() at once
+    private static final int MAX_RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+    // Minimum time between screen update notifications (about 60 fps)
+    private static final long FRAME_INTERVAL_MS = 16;
+
+    // Longest time input to a hidden session waits before it is parsed
+    private static final long HIDDEN_PARSE_DELAY_MS = 1000;
 
     private static final int NEW_INPUT = 1;
     private static final int NEW_OUTPUT = 2;
     private static final int FINISH = 3;
+    private static final int FRAME_UPDATE = 4;
+    private static final int COMPACT_TRANSCRIPT = 5;
+
+    /* Set by the producer of input when it posts NEW_INPUT, cleared by the
+       main thread before draining the queue, so that at most one immediate
+       and one delayed NEW_INPUT message are outstanding at a time */
+    private static final int INPUT_IDLE = 0;
+    private static final int INPUT_DELAYED = 1;
+    private static final int INPUT_PENDING = 2;
+    private final AtomicInteger mInputState = new AtomicInteger(INPUT_IDLE);
+
+    // Whether the session is being shown; input to hidden sessions is parsed lazily
+    private volatile boolean mVisible = true;
+
+    // Frame pacing state, only touched on the main thread
+    private boolean mFrameUpdatePending;
+    private long mLastFrameTime;
+    private int mFrameBytes;
+    private int mLastFrameBytes;
+    private long mFrameCount;
+    private long mDroppedRedrawCount;
+    private boolean mCompactPending;
 
     /**
      * Callback to be invoked when a {@link TermSession} finishes.
@@ -109,21 +164,25 @@ public interface FinishCallback {
     private FinishCallback mFinishCallback;
 
     private boolean mIsRunning = false;
-    private Handler mMsgHandler = new Handler() {
-        @Override
-        public void handleMessage(Message msg) {
-            if (!mIsRunning) {
-                return;
-            }
-            if (msg.what == NEW_INPUT) {
-                readFromProcess();
-            }
-        }
-    };
+    // Created by initializeEmulator(), so a session which is never started
+    // doesn't need a Looper
+    private Handler mMsgHandler;
 
     private UpdateCallback mTitleChangedListener;
 
     public TermSession() {
+        this(false);
+    }
+
+    /**
+     * Create a terminal session, choosing the kind of queue used to pass data
+     * between the reader and writer threads and the main thread.
+     *
+     * @param lockFreeQueues If true, use lock-free queues which grow on
+     *                       demand; otherwise, use fixed-size 4 KiB queues
+     *                       guarded by a monitor.
+     */
+    public TermSession(boolean lockFreeQueues) {
         mWriteCharBuffer = CharBuffer.allocate(2);
         mWriteByteBuffer = ByteBuffer.allocate(4);
         mUTF8Encoder = Charset.forName("UTF-8").newEncoder();
@@ -131,7 +190,12 @@ public TermSession() {
         mUTF8Encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
 
         mReceiveBuffer = new byte[4 * 1024];
-        mByteQueue = new ByteQueue(4 * 1024);
+        if (lockFreeQueues) {
+            mByteQueue = new LockFreeByteQueue(LOCK_FREE_QUEUE_INITIAL_SIZE,
+                    LOCK_FREE_QUEUE_CAPACITY);
+        } else {
+            mByteQueue = new ByteQueue(4 * 1024);
+        }
         mReaderThread = new Thread() {
             private byte[] mBuffer = new byte[4096];
 
@@ -150,8 +214,7 @@ public void run() {
                                     offset, read);
                             offset += written;
                             read -= written;
-                            mMsgHandler.sendMessage(
-                                    mMsgHandler.obtainMessage(NEW_INPUT));
+                            notifyNewInput();
                         }
                     }
                 } catch (IOException e) {
@@ -161,7 +224,12 @@ public void run() {
         };
         mReaderThread.setName("TermSession input reader");
 
-        mWriteQueue = new ByteQueue(4096);
+        if (lockFreeQueues) {
+            mWriteQueue = new LockFreeByteQueue(LOCK_FREE_QUEUE_INITIAL_SIZE,
+                    LOCK_FREE_QUEUE_CAPACITY);
+        } else {
+            mWriteQueue = new ByteQueue(4096);
+        }
         mWriterThread = new Thread() {
             private byte[] mBuffer = new byte[4096];
 
@@ -187,7 +255,7 @@ public void handleMessage(Message msg) {
             }
 
             private void writeToOutput() {
-                ByteQueue writeQueue = mWriteQueue;
+                ByteFifo writeQueue = mWriteQueue;
                 byte[] buffer = mBuffer;
                 OutputStream termOut = mTermOut;
 
@@ -213,6 +281,17 @@ private void writeToOutput() {
         mWriterThread.setName("TermSession output writer");
     }
 
+    /**
+     * Set the number of rows of transcript (screen plus scrollback) kept by
+     * the terminal emulator.  Only takes effect if called before
+     * {@link #initializeEmulator}.
+     *
+     * @param rows The number of rows of transcript to keep.
+     */
+    public void setTranscriptRows(int rows) {
+        mTranscriptRows = rows;
+    }
+
     /**
      * Set the terminal emulator's window size and start terminal emulation.
      *
@@ -220,16 +299,162 @@ private void writeToOutput() {
      * @param rows The number of rows in the terminal window.
      */
     public void initializeEmulator(int columns, int rows) {
-        mTranscriptScreen = new TranscriptScreen(columns, TRANSCRIPT_ROWS, rows, mColorScheme);
+        mTranscriptScreen = new TranscriptScreen(columns, Math.max(mTranscriptRows, rows),
+                rows, mColorScheme);
         mEmulator = new TerminalEmulator(this, mTranscriptScreen, columns, rows, mColorScheme);
         mEmulator.setDefaultUTF8Mode(mDefaultUTF8Mode);
         mEmulator.setKeyListener(mKeyListener);
 
+        mMsgHandler = new Handler() {
+            @Override
+            public void handleMessage(Message msg) {
+                if (!mIsRunning) {
+                    return;
+                }
+                if (msg.what == NEW_INPUT) {
+                    readFromProcess();
+                } else if (msg.what == FRAME_UPDATE) {
+                    mFrameUpdatePending = false;
+                    finishFrame();
+                } else if (msg.what == COMPACT_TRANSCRIPT) {
+                    compactTranscript();
+                }
+            }
+        };
         mIsRunning = true;
+        startIo();
+    }
+
+    /**
+     * Start moving data between the session's streams and the terminal
+     * emulator.  Called once from {@link #initializeEmulator}.  The default
+     * implementation starts a reader thread and a writer thread for this
+     * session.
+     * <p>
+     * Subclasses which do the I/O some other way -- for example, with one
+     * thread polling many sessions -- override this, {@link #onOutputQueued}
+     * and {@link #stopIo} without calling through, and hand data to and from
+     * the emulator with {@link #queueInput} and {@link #takeOutput}.
+     */
+    protected void startIo() {
         mReaderThread.start();
         mWriterThread.start();
     }
 
+    /**
+     * Called on the main thread whenever {@link #write(byte[], int, int)
+     * write} has queued output for the process.  The default implementation
+     * signals the writer thread.
+     */
+    protected void onOutputQueued() {
+        Handler writerHandler = mWriterHandler;
+        if (writerHandler == null) {
+           /* Writer thread isn't started -- will pick up data once it does */
+           return;
+        }
+        writerHandler.sendEmptyMessage(NEW_OUTPUT);
+    }
+
+    /**
+     * Stop the I/O started by {@link #startIo}.  Called from {@link #finish}
+     * before the session's streams are closed.  The default implementation
+     * stops the writer thread; the reader thread stops once its stream is
+     * closed.
+     */
+    protected void stopIo() {
+        if (mWriterHandler != null) {
+            mWriterHandler.sendEmptyMessage(FINISH);
+        }
+    }
+
+    /**
+     * Queue data read from the process to be parsed on the main thread,
+     * without blocking.  Only one thread at a time may call this.
+     *
+     * @return The number of bytes queued, which is less than
+     *         <code>count</code> if the input queue is full.  In that case,
+     *         the caller should offer the rest again after the next call to
+     *         {@link #onInputDrained}.
+     */
+    protected final int queueInput(byte[] data, int offset, int count) {
+        ByteFifo byteQueue = mByteQueue;
+        int queued = 0;
+        try {
+            int free = byteQueue.getFreeSpace();
+            while (queued < count && free > 0) {
+                int written = byteQueue.write(data, offset + queued,
+                        Math.min(count - queued, free));
+                queued += written;
+                free -= written;
+            }
+        } catch (InterruptedException e) {
+        }
+        if (queued > 0) {
+            notifyNewInput();
+        }
+        return queued;
+    }
+
+    /**
+     * Called on the main thread each time the input queued by {@link
+     * #queueInput} has been parsed.  The default implementation does
+     * nothing.
+     */
+    protected void onInputDrained() {
+    }
+
+    /**
+     * Take output queued by {@link #write(byte[], int, int) write} for the
+     * process, without blocking.  Only one thread at a time may call this.
+     *
+     * @return The number of bytes copied into <code>buffer</code>, or 0 if
+     *         there is no output waiting.
+     */
+    protected final int takeOutput(byte[] buffer, int offset, int count) {
+        ByteFifo writeQueue = mWriteQueue;
+        int bytesToRead = Math.min(count, writeQueue.getBytesAvailable());
+        if (bytesToRead == 0) {
+            return 0;
+        }
+        try {
+            return writeQueue.read(buffer, offset, bytesToRead);
+        } catch (InterruptedException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Tell the session whether it is being shown.  Input for a hidden
+     * session is only parsed every so often, or when a lot of it has queued
+     * up, rather than as soon as it arrives; whatever is waiting is parsed as
+     * soon as the session is shown again.  Sessions are visible until told
+     * otherwise.
+     *
+     * @param visible Whether the session is being shown.
+     */
+    public void setVisible(boolean visible) {
+        mVisible = visible;
+        if (visible && mIsRunning) {
+            readFromProcess();
+        }
+    }
+
+    /* Tell the main thread there's new input waiting, unless it has already
+       been told.  A hidden session's input waits for a while, but not so
+       long that the queue fills and the process stalls */
+    private void notifyNewInput() {
+        Handler handler = mMsgHandler;
+        if (mVisible || mByteQueue.getFreeSpace() < mByteQueue.getBytesAvailable()) {
+            if (mInputState.get() != INPUT_PENDING
+                    && mInputState.getAndSet(INPUT_PENDING) != INPUT_PENDING) {
+                handler.sendMessage(handler.obtainMessage(NEW_INPUT));
+            }
+        } else if (mInputState.compareAndSet(INPUT_IDLE, INPUT_DELAYED)) {
+            handler.sendMessageDelayed(handler.obtainMessage(NEW_INPUT),
+                    HIDDEN_PARSE_DELAY_MS);
+        }
+    }
+
     /**
      * Write data to the terminal output.  The written data will be consumed by
      * the emulation client as input.
@@ -252,7 +477,7 @@ public void write(byte[] data, int offset, int count) {
                 int written = mWriteQueue.write(data, offset, count);
                 offset += written;
                 count -= written;
-                notifyNewOutput();
+                onOutputQueued();
             }
         } catch (InterruptedException e) {
         }
@@ -303,16 +528,6 @@ public void write(int codePoint) {
         write(byteBuf.array(), 0, byteBuf.position()-1);
     }
 
-    /* Notify the writer thread that there's new output waiting */
-    private void notifyNewOutput() {
-        Handler writerHandler = mWriterHandler;
-        if (writerHandler == null) {
-           /* Writer thread isn't started -- will pick up data once it does */
-           return;
-        }
-        writerHandler.sendEmptyMessage(NEW_OUTPUT);
-    }
-
     /**
      * Get the {@link OutputStream} associated with this session.
      *
@@ -451,22 +666,141 @@ public String getTranscriptText() {
         return mTranscriptScreen.getTranscriptText();
     }
 
+    /**
+     * Write the terminal's screen and scrollback buffer to a {@link Writer}
+     * a row at a time, without first building the whole transcript as a
+     * {@link String}.  Must be called on the main thread.
+     *
+     * @param out The Writer to write to. It is flushed but not closed.
+     * @param format {@link #EXPORT_TEXT}, {@link #EXPORT_ANSI} or
+     *        {@link #EXPORT_HTML}.
+     */
+    public void exportTranscript(Writer out, int format) throws IOException {
+        mTranscriptScreen.exportTranscript(out, format, mColorScheme);
+    }
+
+    /**
+     * Write the terminal's screen and scrollback buffer to an
+     * {@link OutputStream}, encoded as UTF-8.
+     *
+     * @param out The OutputStream to write to. It is flushed but not closed.
+     * @param format {@link #EXPORT_TEXT}, {@link #EXPORT_ANSI} or
+     *        {@link #EXPORT_HTML}.
+     */
+    public void exportTranscript(OutputStream out, int format) throws IOException {
+        exportTranscript(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")), format);
+    }
+
     /**
      * Look for new input from the ptty, send it to the terminal emulator.
+     * Everything the reader thread has queued so far is drained and parsed
+     * in as few passes as possible, and the screen update is deferred to the
+     * next frame.
      */
     private void readFromProcess() {
+        mInputState.set(INPUT_IDLE);
+
         int bytesAvailable = mByteQueue.getBytesAvailable();
-        int bytesToRead = Math.min(bytesAvailable, mReceiveBuffer.length);
-        int bytesRead = 0;
-        try {
-            bytesRead = mByteQueue.read(mReceiveBuffer, 0, bytesToRead);
-        } catch (InterruptedException e) {
+        if (bytesAvailable == 0) {
+            onInputDrained();
+            return;
+        }
+        if (bytesAvailable > mReceiveBuffer.length
+                && mReceiveBuffer.length < MAX_RECEIVE_BUFFER_SIZE) {
+            mReceiveBuffer = new byte[Math.min(bytesAvailable,
+                    MAX_RECEIVE_BUFFER_SIZE)];
+        }
+
+        while (bytesAvailable > 0) {
+            int bytesToRead = Math.min(bytesAvailable, mReceiveBuffer.length);
+            int bytesRead = 0;
+            try {
+                bytesRead = mByteQueue.read(mReceiveBuffer, 0, bytesToRead);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            // Give subclasses a chance to process the read data
+            processInput(mReceiveBuffer, 0, bytesRead);
+            mFrameBytes += bytesRead;
+            bytesAvailable -= bytesRead;
+        }
+        scheduleFrameUpdate();
+        onInputDrained();
+    }
+
+    /**
+     * Notify the {@link UpdateCallback} of a screen change, at most once per
+     * frame.  If a frame was finished less than a frame interval ago, the
+     * notification is deferred until the interval has passed; changes made
+     * in the meantime are folded into that same notification.
+     */
+    private void scheduleFrameUpdate() {
+        if (mFrameUpdatePending) {
+            ++mDroppedRedrawCount;
             return;
         }
+        long sinceLastFrame = SystemClock.uptimeMillis() - mLastFrameTime;
+        if (sinceLastFrame >= FRAME_INTERVAL_MS) {
+            finishFrame();
+        } else {
+            mFrameUpdatePending = true;
+            mMsgHandler.sendEmptyMessageDelayed(FRAME_UPDATE,
+                    FRAME_INTERVAL_MS - sinceLastFrame);
+        }
+    }
 
-        // Give subclasses a chance to process the read data
-        processInput(mReceiveBuffer, 0, bytesRead);
+    private void finishFrame() {
+        mLastFrameTime = SystemClock.uptimeMillis();
+        mLastFrameBytes = mFrameBytes;
+        mFrameBytes = 0;
+        ++mFrameCount;
         notifyUpdate();
+
+        if (!mCompactPending) {
+            mCompactPending = true;
+            mMsgHandler.sendEmptyMessageDelayed(COMPACT_TRANSCRIPT,
+                    COMPACT_DELAY_MS);
+        }
+    }
+
+    /**
+     * Compress a little of the scrollback which has moved far away from the
+     * screen, and come back for more later if there's any left, so that the
+     * main thread is never held up for long.
+     */
+    private void compactTranscript() {
+        mCompactPending = false;
+        if (mTranscriptScreen != null
+                && mTranscriptScreen.compactTranscript(COMPACT_PAGES)) {
+            mCompactPending = true;
+            mMsgHandler.sendEmptyMessageDelayed(COMPACT_TRANSCRIPT,
+                    FRAME_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Get the number of bytes of input parsed for the most recent screen
+     * update.
+     */
+    public int getBytesParsedLastFrame() {
+        return mLastFrameBytes;
+    }
+
+    /**
+     * Get the number of screen updates sent to the {@link UpdateCallback}
+     * because of new input.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Get the number of times a screen update for new input was folded into
+     * an already scheduled one instead of causing its own redraw.
+     */
+    public long getDroppedRedrawCount() {
+        return mDroppedRedrawCount;
     }
 
     /**
@@ -585,15 +919,15 @@ public void setFinishCallback(FinishCallback callback) {
      */
     public void finish() {
         mIsRunning = false;
+        mMsgHandler.removeMessages(FRAME_UPDATE);
+        mMsgHandler.removeMessages(COMPACT_TRANSCRIPT);
         mEmulator.finish();
         if (mTranscriptScreen != null) {
             mTranscriptScreen.finish();
         }
 
         // Stop the reader and writer threads, and close the I/O streams
-        if (mWriterHandler != null) {
-            mWriterHandler.sendEmptyMessage(FINISH);
-        }
+        stopIo();
         try {
             mTermIn.close();
             mTermOut.close();
@@ -16,7 +16,9 @@
 
 package jackpal.androidterm.emulatorview;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
@@ -395,6 +397,15 @@ public void setKeyListener(TermKeyListener l) {
     private CharsetDecoder mUTF8Decoder;
     private UpdateCallback mUTF8ModeNotify;
 
+    /**
+     * Scratch buffer for runs of printable characters, which are written to
+     * the screen in one call instead of going through process() byte by
+     * byte.
+     */
+    private static final int PRINTABLE_RUN_CAPACITY = 256;
+    private char[] mPrintableRun = new char[PRINTABLE_RUN_CAPACITY];
+    private int mPrintableRunLength;
+
     /** This is not accurate, but it makes the terminal more useful on
      * small screens.
      */
@@ -664,8 +675,25 @@ public void append(byte[] buffer, int base, int length) {
         if (EmulatorDebug.LOG_CHARACTERS_FLAG) {
             Log.d(EmulatorDebug.LOG_TAG, "In: '" + EmulatorDebug.bytesToString(buffer, base, length) + "'");
         }
-        for (int i = 0; i < length; i++) {
-            byte b = buffer[base + i];
+        int end = base + length;
+        int i = base;
+        while (i < end) {
+            if (canAppendPrintableRun()) {
+                int consumed = decodePrintableRun(buffer, i, end);
+                if (consumed > 0) {
+                    try {
+                        emitPrintableRun(mPrintableRun, mPrintableRunLength);
+                    } catch (Exception e) {
+                        Log.e(EmulatorDebug.LOG_TAG, "Exception while processing run at character "
+                                + Integer.toString(mProcessedCharCount), e);
+                    }
+                    mProcessedCharCount += consumed;
+                    i += consumed;
+                    continue;
+                }
+            }
+
+            byte b = buffer[i++];
             try {
                 process(b);
                 mProcessedCharCount++;
@@ -677,6 +705,128 @@ public void append(byte[] buffer, int base, int length) {
         }
     }
 
+    /**
+     * Whether the parser is in a state where a run of printable characters
+     * can bypass process() and be written to the screen in one go.  The
+     * cases excluded here (escape sequences, partial UTF-8 sequences, insert
+     * mode, the special graphics character set and disabled autowrap) are
+     * left to the byte-at-a-time state machine.
+     */
+    private boolean canAppendPrintableRun() {
+        return mEscapeState == ESC_NONE && mUTF8ToFollow == 0 && !mInsertMode
+                && !mUseAlternateCharSet && autoWrapEnabled();
+    }
+
+    /**
+     * Decode a run of printable characters starting at buffer[offset] into
+     * mPrintableRun, and store the number of chars decoded in
+     * mPrintableRunLength.
+     *
+     * The run only contains printable ASCII and, in UTF-8 mode, complete
+     * UTF-8 sequences which decode to a single-width BMP character.  It stops
+     * at the first byte which needs the full state machine: a control
+     * character, DEL, or a UTF-8 sequence which is incomplete, invalid,
+     * overlong, or decodes to anything else.
+     *
+     * @return The number of bytes consumed.
+     */
+    private int decodePrintableRun(byte[] buffer, int offset, int end) {
+        char[] run = mPrintableRun;
+        int capacity = run.length;
+        boolean utf8Mode = mUTF8Mode;
+        int count = 0;
+        int i = offset;
+        while (i < end && count < capacity) {
+            int b = buffer[i] & 0xff;
+            if (b >= 32 && b < 127) {
+                run[count++] = (char) b;
+                ++i;
+                continue;
+            }
+            if (!utf8Mode) {
+                break;
+            }
+
+            int codePoint;
+            int sequenceLength;
+            if ((b & 0xe0) == 0xc0) { // 0b110 -- two-byte sequence
+                if (i + 1 >= end) {
+                    break;
+                }
+                int b1 = buffer[i + 1] & 0xff;
+                if ((b1 & 0xc0) != 0x80) {
+                    break;
+                }
+                codePoint = ((b & 0x1f) << 6) | (b1 & 0x3f);
+                if (codePoint < 0x80) {
+                    break;
+                }
+                sequenceLength = 2;
+            } else if ((b & 0xf0) == 0xe0) { // 0b1110 -- three-byte sequence
+                if (i + 2 >= end) {
+                    break;
+                }
+                int b1 = buffer[i + 1] & 0xff;
+                int b2 = buffer[i + 2] & 0xff;
+                if ((b1 & 0xc0) != 0x80 || (b2 & 0xc0) != 0x80) {
+                    break;
+                }
+                codePoint = ((b & 0x0f) << 12) | ((b1 & 0x3f) << 6) | (b2 & 0x3f);
+                if (codePoint < 0x800
+                        || (codePoint >= 0xd800 && codePoint <= 0xdfff)) {
+                    break;
+                }
+                sequenceLength = 3;
+            } else {
+                // Four-byte sequences are never basic; leave the rest alone
+                break;
+            }
+
+            if (!UnicodeTranscript.isBasicChar(codePoint)) {
+                break;
+            }
+            run[count++] = (char) codePoint;
+            i += sequenceLength;
+        }
+        mPrintableRunLength = count;
+        return i - offset;
+    }
+
+    /**
+     * Send a run of single-width BMP characters to the screen, one line
+     * segment at a time.  Equivalent to calling emit() for each character,
+     * given that canAppendPrintableRun() returned true.
+     */
+    private void emitPrintableRun(char[] run, int count) {
+        int style = getStyle();
+        int columns = mColumns;
+        int offset = 0;
+        while (offset < count) {
+            if (mCursorCol == columns - 1 && mAboutToAutoWrap) {
+                mScreen.setLineWrap(mCursorRow);
+                mCursorCol = 0;
+                if (mCursorRow + 1 < mBottomMargin) {
+                    mCursorRow++;
+                } else {
+                    scroll();
+                }
+            }
+
+            int length = Math.min(count - offset, columns - mCursorCol);
+            mScreen.set(mCursorCol, mCursorRow, run, offset, length, style);
+            offset += length;
+
+            int lastCol = mCursorCol + length - 1;
+            mAboutToAutoWrap = (lastCol == columns - 1);
+            if (mAboutToAutoWrap) {
+                mScreen.setLineWrap(mCursorRow);
+            }
+            mCursorCol = Math.min(lastCol + 1, columns - 1);
+        }
+        mJustWrapped = false;
+        mLastEmittedCharWidth = 1;
+    }
+
     private void process(byte b) {
         process(b, true);
     }
@@ -921,7 +1071,9 @@ private void doEscLSBQuest(byte b) {
             mDecFlags |= mask;
             switch (arg) {
             case 1:
-                mKeyListener.setCursorKeysApplicationMode(true);
+                if (mKeyListener != null) {
+                    mKeyListener.setCursorKeysApplicationMode(true);
+                }
                 break;
             case 47:
             case 1047:
@@ -940,7 +1092,9 @@ private void doEscLSBQuest(byte b) {
             mDecFlags &= ~mask;
             switch (arg) {
             case 1:
-                mKeyListener.setCursorKeysApplicationMode(false);
+                if (mKeyListener != null) {
+                    mKeyListener.setCursorKeysApplicationMode(false);
+                }
                 break;
             case 47:
             case 1047:
@@ -1998,6 +2152,11 @@ public String getSelectedText(int x1, int y1, int x2, int y2) {
         return mScreen.getSelectedText(x1, y1, x2, y2);
     }
 
+    public void exportSelectedText(Writer out, int format, ColorScheme scheme,
+            int x1, int y1, int x2, int y2) throws IOException {
+        mScreen.exportSelectedText(out, format, scheme, x1, y1, x2, y2);
+    }
+
     public void finish() {
         if (mAltBuffer != null) {
             mAltBuffer.finish();
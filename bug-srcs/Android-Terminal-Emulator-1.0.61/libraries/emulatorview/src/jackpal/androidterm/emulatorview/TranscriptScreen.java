@@ -16,6 +16,8 @@
 
 package jackpal.androidterm.emulatorview;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
 import android.graphics.Canvas;
 
@@ -103,6 +105,21 @@ public void set(int x, int y, byte b, int style) {
         mData.setChar(x, y, b, style);
     }
 
+    /**
+     * Store a run of regular-width BMP characters into the screen, starting
+     * at location (x, y).  The run must fit on the row.
+     *
+     * @param x X coordinate (also known as column) of the first character
+     * @param y Y coordinate (also known as row)
+     * @param chars the array containing the characters to store
+     * @param offset the index of the first character in the array
+     * @param count the number of characters to store
+     * @param style the text style
+     */
+    public void set(int x, int y, char[] chars, int offset, int count, int style) {
+        mData.setChars(x, y, chars, offset, count, style);
+    }
+
     /**
      * Scroll the screen down one line. To scroll the whole screen of a 24 line
      * screen, the arguments would be (0, 24).
@@ -280,6 +297,59 @@ public final void drawText(int row, Canvas canvas, float x, float y,
         }
      }
 
+    /**
+     * Whether a screen row has changed since the last call to
+     * {@link #clearDirty}.  Rows outside the screen are never dirty.
+     *
+     * @param row The screen row to check.
+     */
+    public boolean isRowDirty(int row) {
+        if (mData == null) {
+            return false;
+        }
+        return mData.isRowDirty(row);
+    }
+
+    /**
+     * Get the first column of a dirty row which has changed.
+     *
+     * @param row A dirty screen row.
+     */
+    public int getDirtyStart(int row) {
+        return mData.getDirtyStart(row);
+    }
+
+    /**
+     * Get the column after the last column of a dirty row which has changed.
+     *
+     * @param row A dirty screen row.
+     */
+    public int getDirtyEnd(int row) {
+        return mData.getDirtyEnd(row);
+    }
+
+    /**
+     * Mark the whole screen as clean, typically after it has been drawn.
+     */
+    public void clearDirty() {
+        if (mData != null) {
+            mData.clearDirty();
+        }
+    }
+
+    /**
+     * Compress some of the scrollback which is far away from the screen.
+     *
+     * @param maxPages The most pages of scrollback to compress.
+     * @return Whether there is more scrollback left to compress.
+     */
+    public boolean compactTranscript(int maxPages) {
+        if (mData == null) {
+            return false;
+        }
+        return mData.compactScrollback(maxPages);
+    }
+
     /**
      * Get the count of active rows.
      *
@@ -314,8 +384,86 @@ public String getSelectedText(GrowableIntArray colors, int selX1, int selY1, int
         return internalGetTranscriptText(colors, selX1, selY1, selX2, selY2);
     }
 
-    private String internalGetTranscriptText(GrowableIntArray colors, int selX1, int selY1, int selX2, int selY2) {
-        StringBuilder builder = new StringBuilder();
+    /**
+     * Write the contents of the transcript buffer to a {@link Writer} one row
+     * at a time.
+     *
+     * @param out The Writer to write to. It is flushed but not closed.
+     * @param format One of the TermSession.EXPORT_* formats.
+     * @param scheme The color scheme used for HTML output.
+     */
+    public void exportTranscript(Writer out, int format, ColorScheme scheme) throws IOException {
+        exportSelectedText(out, format, scheme, 0, -mData.getActiveTranscriptRows(), mColumns, mScreenRows);
+    }
+
+    /**
+     * Write the selected text inside the transcript buffer to a
+     * {@link Writer} one row at a time.
+     *
+     * @param out The Writer to write to. It is flushed but not closed.
+     * @param format One of the TermSession.EXPORT_* formats.
+     * @param scheme The color scheme used for HTML output.
+     */
+    public void exportSelectedText(Writer out, int format, ColorScheme scheme,
+            int selX1, int selY1, int selX2, int selY2) throws IOException {
+        TranscriptWriter writer = new TranscriptWriter(out, format, scheme);
+        writer.begin();
+        visitText(writer, writer.wantsColors(), selX1, selY1, selX2, selY2);
+        writer.end();
+    }
+
+    /**
+     * Receives the text visited by {@link #visitText} a row at a time.
+     */
+    interface RowSink {
+        /**
+         * @param line The characters of the row; only valid during the call.
+         * @param length The number of chars to take from line.
+         * @param color The style of each column of the row, or null if every
+         *        column has the default style.
+         * @param defaultStyle The default style of the transcript.
+         */
+        void appendRow(char[] line, int length, StyleRow color, int defaultStyle) throws IOException;
+
+        void appendNewline() throws IOException;
+    }
+
+    private String internalGetTranscriptText(final GrowableIntArray colors, int selX1, int selY1, int selX2, int selY2) {
+        final StringBuilder builder = new StringBuilder();
+        RowSink sink = new RowSink() {
+            public void appendRow(char[] line, int length, StyleRow color, int defaultStyle) {
+                builder.append(line, 0, length);
+                if (colors == null) {
+                    return;
+                }
+                int column = 0;
+                for (int j = 0; j < length; ++j) {
+                    colors.append(color != null ? color.get(column) : defaultStyle);
+                    column += UnicodeTranscript.charWidth(line, j);
+                    if (Character.isHighSurrogate(line[j])) {
+                        ++j;
+                    }
+                }
+            }
+
+            public void appendNewline() {
+                builder.append('\n');
+                if (colors != null) {
+                    colors.append(0);
+                }
+            }
+        };
+        try {
+            visitText(sink, colors != null, selX1, selY1, selX2, selY2);
+        } catch (IOException e) {
+            // A StringBuilder never throws
+            throw new IllegalStateException(e);
+        }
+        return builder.toString();
+    }
+
+    private void visitText(RowSink sink, boolean colors, int selX1, int selY1, int selX2, int selY2)
+            throws IOException {
         UnicodeTranscript data = mData;
         int columns = mColumns;
         char[] line;
@@ -326,6 +474,7 @@ private String internalGetTranscriptText(GrowableIntArray colors, int selX1, int
         if (selY2 >= mScreenRows) {
             selY2 = mScreenRows - 1;
         }
+        int defaultColor = data.getDefaultStyle();
         for (int row = selY1; row <= selY2; row++) {
             int x1 = 0;
             int x2;
@@ -341,19 +490,15 @@ private String internalGetTranscriptText(GrowableIntArray colors, int selX1, int
                 x2 = columns;
             }
             line = data.getLine(row, x1, x2);
-            if (colors != null) {
+            if (colors) {
                 rowColorBuffer = data.getLineColor(row, x1, x2);
             }
             if (line == null) {
                 if (!data.getLineWrap(row) && row < selY2 && row < mScreenRows - 1) {
-                    builder.append('\n');
-                    if (colors != null) {
-                        colors.append(0);
-                    }
+                    sink.appendNewline();
                 }
                 continue;
             }
-            int defaultColor = mData.getDefaultStyle();
             int lastPrintingChar = -1;
             int lineLen = line.length;
             int i;
@@ -374,35 +519,11 @@ private String internalGetTranscriptText(GrowableIntArray colors, int selX1, int
                 // If the line was wrapped, we shouldn't lose trailing space
                 lastPrintingChar = i - 1;
             }
-            builder.append(line, 0, lastPrintingChar + 1);
-            if (colors != null) {
-                if (rowColorBuffer != null) {
-                    column = 0;
-                    for (int j = 0; j <= lastPrintingChar; ++j) {
-                        colors.append(rowColorBuffer.get(column));
-                        column += UnicodeTranscript.charWidth(line, j);
-                        if (Character.isHighSurrogate(line[j])) {
-                            ++j;
-                        }
-                    }
-                } else {
-                    for (int j = 0; j <= lastPrintingChar; ++j) {
-                        colors.append(defaultColor);
-                        char c = line[j];
-                        if (Character.isHighSurrogate(c)) {
-                            ++j;
-                        }
-                    }
-                }
-            }
+            sink.appendRow(line, lastPrintingChar + 1, rowColorBuffer, defaultColor);
             if (!data.getLineWrap(row) && row < selY2 && row < mScreenRows - 1) {
-                builder.append('\n');
-                if (colors != null) {
-                    colors.append((char) 0);
-                }
+                sink.appendNewline();
             }
         }
-        return builder.toString();
     }
 
     public boolean fastResize(int columns, int rows, int[] cursor) {
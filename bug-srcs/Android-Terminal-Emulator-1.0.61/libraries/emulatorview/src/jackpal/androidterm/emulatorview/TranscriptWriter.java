@@ -0,0 +1,216 @@
+package jackpal.androidterm.emulatorview;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streams rows of transcript text to a {@link Writer}, optionally marking up
+ * color changes as ANSI escape sequences or HTML.  Rows are written as
+ * {@link TranscriptScreen} walks the transcript, so exporting a large
+ * scrollback never needs the whole text in memory at once.
+ */
+class TranscriptWriter implements TranscriptScreen.RowSink {
+    private final Writer mOut;
+    private final int mFormat;
+    private final int[] mPalette;
+
+    /** The style of the text most recently written, or -1 at a line start. */
+    private int mStyle = -1;
+
+    TranscriptWriter(Writer out, int format, ColorScheme scheme) {
+        if (format != TermSession.EXPORT_TEXT && format != TermSession.EXPORT_ANSI
+                && format != TermSession.EXPORT_HTML) {
+            throw new IllegalArgumentException("Unknown export format " + format);
+        }
+        mOut = out;
+        mFormat = format;
+        if (format == TermSession.EXPORT_HTML) {
+            mPalette = new int[TextStyle.ciColorLength];
+            System.arraycopy(BaseTextRenderer.sXterm256Paint, 0, mPalette, 0,
+                    BaseTextRenderer.sXterm256Paint.length);
+            mPalette[TextStyle.ciForeground] = scheme.getForeColor();
+            mPalette[TextStyle.ciBackground] = scheme.getBackColor();
+        } else {
+            mPalette = null;
+        }
+    }
+
+    public boolean wantsColors() {
+        return mFormat != TermSession.EXPORT_TEXT;
+    }
+
+    void begin() throws IOException {
+        if (mFormat == TermSession.EXPORT_HTML) {
+            mOut.write("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"></head>\n"
+                    + "<body><pre style=\"color:");
+            writeHtmlColor(mPalette[TextStyle.ciForeground]);
+            mOut.write(";background-color:");
+            writeHtmlColor(mPalette[TextStyle.ciBackground]);
+            mOut.write("\">");
+        }
+    }
+
+    void end() throws IOException {
+        resetStyle();
+        if (mFormat == TermSession.EXPORT_HTML) {
+            mOut.write("</pre></body></html>\n");
+        }
+        mOut.flush();
+    }
+
+    public void appendRow(char[] line, int length, StyleRow color, int defaultStyle)
+            throws IOException {
+        if (mFormat == TermSession.EXPORT_TEXT) {
+            mOut.write(line, 0, length);
+            return;
+        }
+
+        int column = 0;
+        int runStart = 0;
+        for (int i = 0; i < length; ++i) {
+            int style = color != null ? color.get(column) : defaultStyle;
+            if (style != mStyle) {
+                writeText(line, runStart, i);
+                runStart = i;
+                setStyle(style);
+            }
+            column += UnicodeTranscript.charWidth(line, i);
+            if (Character.isHighSurrogate(line[i]) && i + 1 < length) {
+                ++i;
+            }
+        }
+        writeText(line, runStart, length);
+    }
+
+    public void appendNewline() throws IOException {
+        // End each line in the default style, so lines stand on their own
+        resetStyle();
+        mOut.write('\n');
+    }
+
+    private void resetStyle() throws IOException {
+        if (mStyle != -1 && mStyle != TextStyle.kNormalTextStyle) {
+            mOut.write(mFormat == TermSession.EXPORT_HTML ? "</span>" : "\033[0m");
+        }
+        mStyle = -1;
+    }
+
+    private void writeText(char[] line, int start, int end) throws IOException {
+        if (mFormat != TermSession.EXPORT_HTML) {
+            mOut.write(line, start, end - start);
+            return;
+        }
+        int runStart = start;
+        for (int i = start; i < end; ++i) {
+            String entity;
+            switch (line[i]) {
+            case '<':
+                entity = "&lt;";
+                break;
+            case '>':
+                entity = "&gt;";
+                break;
+            case '&':
+                entity = "&amp;";
+                break;
+            default:
+                continue;
+            }
+            mOut.write(line, runStart, i - runStart);
+            mOut.write(entity);
+            runStart = i + 1;
+        }
+        mOut.write(line, runStart, end - runStart);
+    }
+
+    private void setStyle(int style) throws IOException {
+        int previous = mStyle;
+        mStyle = style;
+        int foreColor = TextStyle.decodeForeColor(style);
+        int backColor = TextStyle.decodeBackColor(style);
+        int effect = TextStyle.decodeEffect(style);
+        if (mFormat == TermSession.EXPORT_ANSI) {
+            if (previous == -1 && style == TextStyle.kNormalTextStyle) {
+                return;
+            }
+            writeSgr(foreColor, backColor, effect);
+            return;
+        }
+
+        if (previous != -1 && previous != TextStyle.kNormalTextStyle) {
+            mOut.write("</span>");
+        }
+        if (style == TextStyle.kNormalTextStyle) {
+            return;
+        }
+        // Mirror what PaintRenderer draws for this style
+        if ((effect & (TextStyle.fxInverse | TextStyle.fxItalic)) != 0) {
+            int temp = foreColor;
+            foreColor = backColor;
+            backColor = temp;
+        }
+        if ((effect & TextStyle.fxBlink) != 0 && backColor < 8) {
+            backColor += 8;
+        }
+        if ((effect & TextStyle.fxBold) != 0 && foreColor < 8) {
+            foreColor += 8;
+        }
+        if ((effect & TextStyle.fxInvisible) != 0) {
+            foreColor = backColor;
+        }
+        mOut.write("<span style=\"color:");
+        writeHtmlColor(mPalette[foreColor]);
+        mOut.write(";background-color:");
+        writeHtmlColor(mPalette[backColor]);
+        if ((effect & TextStyle.fxBold) != 0) {
+            mOut.write(";font-weight:bold");
+        }
+        if ((effect & TextStyle.fxUnderline) != 0) {
+            mOut.write(";text-decoration:underline");
+        }
+        mOut.write("\">");
+    }
+
+    private void writeSgr(int foreColor, int backColor, int effect) throws IOException {
+        Writer out = mOut;
+        out.write("\033[0");
+        if ((effect & TextStyle.fxBold) != 0) {
+            out.write(";1");
+        }
+        if ((effect & TextStyle.fxItalic) != 0) {
+            out.write(";3");
+        }
+        if ((effect & TextStyle.fxUnderline) != 0) {
+            out.write(";4");
+        }
+        if ((effect & TextStyle.fxBlink) != 0) {
+            out.write(";5");
+        }
+        if ((effect & TextStyle.fxInverse) != 0) {
+            out.write(";7");
+        }
+        if ((effect & TextStyle.fxInvisible) != 0) {
+            out.write(";8");
+        }
+        if (foreColor < 8) {
+            out.write(";" + (30 + foreColor));
+        } else if (foreColor < 256) {
+            out.write(";38;5;" + foreColor);
+        }
+        if (backColor < 8) {
+            out.write(";" + (40 + backColor));
+        } else if (backColor < 256) {
+            out.write(";48;5;" + backColor);
+        }
+        out.write('m');
+    }
+
+    private void writeHtmlColor(int color) throws IOException {
+        String hex = Integer.toHexString(color & 0xffffff);
+        mOut.write('#');
+        for (int i = hex.length(); i < 6; ++i) {
+            mOut.write('0');
+        }
+        mOut.write(hex);
+    }
+}
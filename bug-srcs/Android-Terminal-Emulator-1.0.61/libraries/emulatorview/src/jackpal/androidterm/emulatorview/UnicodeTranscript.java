@@ -16,6 +16,8 @@
 
 package jackpal.androidterm.emulatorview;
 
+import java.util.Arrays;
+
 import android.util.Log;
 
 import jackpal.androidterm.emulatorview.compat.AndroidCharacterCompat;
@@ -23,8 +25,9 @@
 /**
  * A backing store for a TranscriptScreen.
  *
- * The text is stored as a circular buffer of rows.  There are two types of
- * row:
+ * The screen is stored as a circular buffer of rows, and lines which scroll
+ * off the top of the screen are moved into a ScrollbackBuffer, which keeps
+ * them in a much more compact form.  There are two types of screen row:
  * - "basic", which is a char[] array used to store lines which consist
  *   entirely of regular-width characters (no combining characters, zero-width
  *   characters, East Asian double-width characters, etc.) in the BMP; and
@@ -34,6 +37,7 @@
  *   if column 20 starts at index 23 in the array, then mOffset[20] = 3.
  *
  * Style information is stored in a separate circular buffer of StyleRows.
+ * Lines read back from the scrollback use the same representation.
  *
  * Rows are allocated on demand, when a character is first stored into them.
  * A "basic" row is allocated unless the store which triggers the allocation
@@ -50,7 +54,7 @@ class UnicodeTranscript {
     private int mTotalRows;
     private int mScreenRows;
     private int mColumns;
-    private int mActiveTranscriptRows = 0;
+    private ScrollbackBuffer mScrollback;
     private int mDefaultStyle = 0;
 
     private int mScreenFirstRow = 0;
@@ -58,16 +62,27 @@ class UnicodeTranscript {
     private char[] tmpLine;
     private StyleRow tmpColor;
 
+    /*
+     * The columns of each screen row which have changed since the last call
+     * to clearDirty(), in external coordinates: row y has changed between
+     * mDirtyStart[y] (inclusive) and mDirtyEnd[y] (exclusive), and is clean
+     * if mDirtyStart[y] >= mDirtyEnd[y].
+     */
+    private int[] mDirtyStart;
+    private int[] mDirtyEnd;
+
     public UnicodeTranscript(int columns, int totalRows, int screenRows, int defaultStyle) {
         mColumns = columns;
         mTotalRows = totalRows;
         mScreenRows = screenRows;
-        mLines = new Object[totalRows];
-        mColor = new StyleRow[totalRows];
-        mLineWrap = new boolean[totalRows];
+        mLines = new Object[screenRows];
+        mColor = new StyleRow[screenRows];
+        mLineWrap = new boolean[screenRows];
+        mScrollback = new ScrollbackBuffer(columns, totalRows - screenRows);
         tmpColor = new StyleRow(defaultStyle, mColumns);
 
         mDefaultStyle = defaultStyle;
+        allocateDirty(screenRows);
     }
 
     public void setDefaultStyle(int defaultStyle) {
@@ -79,55 +94,136 @@ public int getDefaultStyle() {
     }
 
     public int getActiveTranscriptRows() {
-        return mActiveTranscriptRows;
+        return mScrollback.getRows();
     }
 
     public int getActiveRows() {
-        return mActiveTranscriptRows + mScreenRows;
+        return mScrollback.getRows() + mScreenRows;
     }
 
     /**
-     * Convert a row value from the public external coordinate system to our
+     * Compress some of the scrollback which is far off the screen.
+     *
+     * @param maxPages The most pages of scrollback to compress.
+     * @return Whether there is more scrollback left to compress.
+     */
+    public boolean compactScrollback(int maxPages) {
+        return mScrollback.compact(maxPages);
+    }
+
+    /**
+     * Convert a screen row from the public external coordinate system to our
      * internal private coordinate system.
      * External coordinate system:
-     * -mActiveTranscriptRows to mScreenRows-1, with the screen being
-     * 0..mScreenRows-1
+     * -getActiveTranscriptRows() to mScreenRows-1, with the screen being
+     * 0..mScreenRows-1, and the negative rows being in the scrollback
      * Internal coordinate system: the mScreenRows lines starting at
-     * mScreenFirstRow comprise the screen, while the mActiveTranscriptRows
-     * lines ending at mScreenRows-1 form the transcript (as a circular
-     * buffer).
+     * mScreenFirstRow comprise the screen (as a circular buffer).
      *
-     * @param extRow a row in the external coordinate system.
+     * @param extRow a screen row in the external coordinate system.
      * @return The row corresponding to the input argument in the private
      *         coordinate system.
      */
     private int externalToInternalRow(int extRow) {
-        if (extRow < -mActiveTranscriptRows || extRow > mScreenRows) {
+        if (extRow < 0 || extRow >= mScreenRows) {
             String errorMessage = "externalToInternalRow "+ extRow +
-                " " + mScreenRows + " " + mActiveTranscriptRows;
+                " " + mScreenRows + " " + mScrollback.getRows();
             Log.e(TAG, errorMessage);
             throw new IllegalArgumentException(errorMessage);
         }
 
-        if (extRow >= 0) {
-            return (mScreenFirstRow + extRow) % mTotalRows;
-        } else {
-            if (-extRow > mScreenFirstRow) {
-                return mTotalRows + mScreenFirstRow + extRow;
-            } else {
-                return mScreenFirstRow + extRow;
-            }
-        }
+        return (mScreenFirstRow + extRow) % mScreenRows;
+    }
+
+    /**
+     * Convert a negative external row to a row of the scrollback.
+     */
+    private int scrollbackRow(int extRow) {
+        return mScrollback.getRows() + extRow;
     }
 
     public void setLineWrap(int row) {
+        if (row < 0) {
+            mScrollback.setLineWrap(scrollbackRow(row));
+            return;
+        }
         mLineWrap[externalToInternalRow(row)] = true;
     }
 
     public boolean getLineWrap(int row) {
+        if (row < 0) {
+            return mScrollback.getLineWrap(scrollbackRow(row));
+        }
         return mLineWrap[externalToInternalRow(row)];
     }
 
+    private void allocateDirty(int screenRows) {
+        mDirtyStart = new int[screenRows];
+        mDirtyEnd = new int[screenRows];
+        setDirty(0, screenRows);
+    }
+
+    /**
+     * Mark whole screen rows firstRow..lastRow-1 as changed.
+     */
+    private void setDirty(int firstRow, int lastRow) {
+        int columns = mColumns;
+        for (int row = firstRow; row < lastRow; ++row) {
+            mDirtyStart[row] = 0;
+            mDirtyEnd[row] = columns;
+        }
+    }
+
+    /**
+     * Mark columns start..end-1 of a screen row as changed.
+     */
+    private void setDirty(int row, int start, int end) {
+        if (row < 0) {
+            // Not on the screen
+            return;
+        }
+        if (start < mDirtyStart[row]) {
+            mDirtyStart[row] = start;
+        }
+        if (end > mDirtyEnd[row]) {
+            mDirtyEnd[row] = end;
+        }
+    }
+
+    /**
+     * Whether any column of the screen row has changed since the last call
+     * to clearDirty().  Transcript rows and rows past the bottom of the
+     * screen are never dirty.
+     */
+    public boolean isRowDirty(int row) {
+        if (row < 0 || row >= mScreenRows) {
+            return false;
+        }
+        return mDirtyStart[row] < mDirtyEnd[row];
+    }
+
+    /**
+     * The first changed column of a dirty screen row.
+     */
+    public int getDirtyStart(int row) {
+        return mDirtyStart[row];
+    }
+
+    /**
+     * One past the last changed column of a dirty screen row.
+     */
+    public int getDirtyEnd(int row) {
+        return mDirtyEnd[row];
+    }
+
+    /**
+     * Mark every screen row as clean.
+     */
+    public void clearDirty() {
+        Arrays.fill(mDirtyStart, mColumns);
+        Arrays.fill(mDirtyEnd, 0);
+    }
+
     /**
      * Resize the screen which this transcript backs.  Currently, this
      * only works if the number of columns does not change.
@@ -148,21 +244,10 @@ public boolean resize(int newColumns, int newRows, int[] cursor) {
         }
 
         int screenRows = mScreenRows;
-        int activeTranscriptRows = mActiveTranscriptRows;
+        int activeTranscriptRows = mScrollback.getRows();
         int shift = screenRows - newRows;
         if (shift < -activeTranscriptRows) {
             // We want to add blank lines at the bottom instead of at the top
-            Object[] lines = mLines;
-            Object[] color = mColor;
-            boolean[] lineWrap = mLineWrap;
-            int screenFirstRow = mScreenFirstRow;
-            int totalRows = mTotalRows;
-            for (int i = 0; i < activeTranscriptRows - shift; ++i) {
-                int index = (screenFirstRow + screenRows + i) % totalRows;
-                lines[index] = null;
-                color[index] = null;
-                lineWrap[index] = false;
-            }
             shift = -activeTranscriptRows;
         } else if (shift > 0 && cursor != null && cursor[1] != screenRows - 1) {
             /* When shrinking the screen, we want to hide blank lines at the
@@ -215,68 +300,58 @@ public boolean resize(int newColumns, int newRows, int[] cursor) {
             }
         }
 
-        if (shift > 0 || (shift < 0 && mScreenFirstRow >= -shift)) {
-            // All we're doing is moving the top of the screen.
-            mScreenFirstRow = (mScreenFirstRow + shift) % mTotalRows;
+        Object[] lines = new Object[newRows];
+        StyleRow[] color = new StyleRow[newRows];
+        boolean[] lineWrap = new boolean[newRows];
+        ScrollbackBuffer scrollback = mScrollback;
+        scrollback.setCapacity(Math.max(mTotalRows - screenRows, mTotalRows - newRows));
+        int first = 0;
+        if (shift > 0) {
+            // Lines scrolled off the top of the screen go into the scrollback
+            for (int i = 0; i < shift; ++i) {
+                int index = externalToInternalRow(i);
+                scrollback.push(mLines[index], mColor[index], mLineWrap[index]);
+            }
         } else if (shift < 0) {
-            // The new top of the screen wraps around the top of the array.
-            mScreenFirstRow = mTotalRows + mScreenFirstRow + shift;
+            // Lines are pulled back out of the scrollback onto the screen
+            int newest = scrollback.getRows() - 1;
+            for (int i = -shift - 1; i >= 0; --i) {
+                Object line = scrollback.getLine(newest);
+                if (line instanceof char[]) {
+                    line = ((char[]) line).clone();
+                }
+                lines[i] = line;
+                color[i] = scrollback.getLineColor(newest);
+                lineWrap[i] = scrollback.getLineWrap(newest);
+                scrollback.removeNewest();
+                --newest;
+            }
+            first = -shift;
         }
-
-        if (mActiveTranscriptRows + shift < 0) {
-            mActiveTranscriptRows = 0;
-        } else {
-            mActiveTranscriptRows += shift;
+        for (int i = first; i < newRows; ++i) {
+            int oldRow = i + shift;
+            if (oldRow < screenRows) {
+                int index = externalToInternalRow(oldRow);
+                lines[i] = mLines[index];
+                color[i] = mColor[index];
+                lineWrap[i] = mLineWrap[index];
+            }
         }
+        scrollback.setCapacity(mTotalRows - newRows);
+
+        mLines = lines;
+        mColor = color;
+        mLineWrap = lineWrap;
+        mScreenFirstRow = 0;
         if (cursor != null) {
             cursor[1] -= shift;
         }
         mScreenRows = newRows;
 
-        return true;
-    }
-
-    /**
-     * Block copy lines and associated metadata from one location to another
-     * in the circular buffer, taking wraparound into account.
-     *
-     * @param src The first line to be copied.
-     * @param len The number of lines to be copied.
-     * @param shift The offset of the destination from the source.
-     */
-    private void blockCopyLines(int src, int len, int shift) {
-        int totalRows = mTotalRows;
-
-        int dst;
-        if (src + shift >= 0) {
-            dst = (src + shift) % totalRows;
-        } else {
-            dst = totalRows + src + shift;
-        }
-
-        if (src + len <= totalRows && dst + len <= totalRows) {
-            // Fast path -- no wraparound
-            System.arraycopy(mLines, src, mLines, dst, len);
-            System.arraycopy(mColor, src, mColor, dst, len);
-            System.arraycopy(mLineWrap, src, mLineWrap, dst, len);
-            return;
-        }
+        // Everything on the screen may have moved
+        allocateDirty(newRows);
 
-        if (shift < 0) {
-            // Do the copy from top to bottom
-            for (int i = 0; i < len; ++i) {
-                mLines[(dst + i) % totalRows] = mLines[(src + i) % totalRows];
-                mColor[(dst + i) % totalRows] = mColor[(src + i) % totalRows];
-                mLineWrap[(dst + i) % totalRows] = mLineWrap[(src + i) % totalRows];
-            }
-        } else {
-            // Do the copy from bottom to top
-            for (int i = len - 1; i >= 0; --i) {
-                mLines[(dst + i) % totalRows] = mLines[(src + i) % totalRows];
-                mColor[(dst + i) % totalRows] = mColor[(src + i) % totalRows];
-                mLineWrap[(dst + i) % totalRows] = mLineWrap[(src + i) % totalRows];
-            }
-        }
+        return true;
     }
 
     /**
@@ -303,47 +378,27 @@ public void scroll(int topMargin, int bottomMargin, int style) {
         }
 
         int screenRows = mScreenRows;
-        int totalRows = mTotalRows;
-
-        if (topMargin == 0 && bottomMargin == screenRows) {
-            // Fast path -- scroll the entire screen
-            mScreenFirstRow = (mScreenFirstRow + 1) % totalRows;
-            if (mActiveTranscriptRows < totalRows - screenRows) {
-                ++mActiveTranscriptRows;
-            }
-
-            // Blank the bottom margin
-            int blankRow = externalToInternalRow(bottomMargin - 1);
-            mLines[blankRow] = null;
-            mColor[blankRow] = new StyleRow(style, mColumns);
-            mLineWrap[blankRow] = false;
-
-            return;
-        }
-
-        int screenFirstRow = mScreenFirstRow;
-        int topMarginInt = externalToInternalRow(topMargin);
-        int bottomMarginInt = externalToInternalRow(bottomMargin);
-
-        /* Save the scrolled line, move the lines above it on the screen down
-           one line, move the lines on screen below the bottom margin down
-           one line, then insert the scrolled line into the transcript */
         Object[] lines = mLines;
         StyleRow[] color = mColor;
         boolean[] lineWrap = mLineWrap;
-        Object scrollLine = lines[topMarginInt];
-        StyleRow scrollColor = color[topMarginInt];
-        boolean scrollLineWrap = lineWrap[topMarginInt];
-        blockCopyLines(screenFirstRow, topMargin, 1);
-        blockCopyLines(bottomMarginInt, screenRows - bottomMargin, 1);
-        lines[screenFirstRow] = scrollLine;
-        color[screenFirstRow] = scrollColor;
-        lineWrap[screenFirstRow] = scrollLineWrap;
 
-        // Update the screen location
-        mScreenFirstRow = (screenFirstRow + 1) % totalRows;
-        if (mActiveTranscriptRows < totalRows - screenRows) {
-            ++mActiveTranscriptRows;
+        // The line scrolled off the top goes into the scrollback
+        int topMarginInt = externalToInternalRow(topMargin);
+        mScrollback.push(lines[topMarginInt], color[topMarginInt],
+                lineWrap[topMarginInt]);
+
+        if (topMargin == 0 && bottomMargin == screenRows) {
+            // Fast path -- scroll the entire screen
+            mScreenFirstRow = (mScreenFirstRow + 1) % screenRows;
+        } else {
+            // Move the lines below the top margin up one line
+            for (int i = topMargin; i < bottomMargin - 1; ++i) {
+                int dst = externalToInternalRow(i);
+                int src = externalToInternalRow(i + 1);
+                lines[dst] = lines[src];
+                color[dst] = color[src];
+                lineWrap[dst] = lineWrap[src];
+            }
         }
 
         // Blank the bottom margin
@@ -352,7 +407,7 @@ public void scroll(int topMargin, int bottomMargin, int style) {
         color[blankRow] = new StyleRow(style, mColumns);
         lineWrap[blankRow] = false;
 
-        return;
+        setDirty(topMargin, bottomMargin);
     }
 
     /**
@@ -413,6 +468,7 @@ public void blockCopy(int sx, int sy, int w, int h, int dx, int dy) {
                     }
                 }
                 color[srcRow].copy(sx, color[dstRow], dx, w);
+                setDirty(dy + y, dx, dx + w);
             }
         } else {
             // Move in decreasing order
@@ -451,6 +507,7 @@ public void blockCopy(int sx, int sy, int w, int h, int dx, int dy) {
                     }
                 }
                 color[srcRow].copy(sx, color[dstRow], dx, w);
+                setDirty(dy + y2, dx, dx + w);
             }
         }
     }
@@ -567,40 +624,36 @@ public static int charWidth(char[] chars, int index) {
      * character requested will be followed by a NUL; the contents of the rest
      * of the array could potentially be garbage.
      *
-     * @param row The row number to get (-mActiveTranscriptRows..mScreenRows-1)
+     * @param row The row number to get (-getActiveTranscriptRows()..mScreenRows-1)
      * @param x1 The first screen position that's wanted
      * @param x2 One after the last screen position that's wanted
      * @return A char[] array containing the requested contents
      */
     public char[] getLine(int row, int x1, int x2) {
-        if (row < -mActiveTranscriptRows || row > mScreenRows-1) {
-            throw new IllegalArgumentException();
-        }
-
         int columns = mColumns;
-        row = externalToInternalRow(row);
-        if (mLines[row] == null) {
+        Object rowLine = getLineObject(row);
+        if (rowLine == null) {
             // Line is blank
             return null;
         }
-        if (mLines[row] instanceof char[]) {
+        if (rowLine instanceof char[]) {
             // Line contains only regular-width BMP characters
             if (x1 == 0 && x2 == columns) {
                 // Want the whole row? Easy.
-                return (char[]) mLines[row];
+                return (char[]) rowLine;
             } else {
                 if (tmpLine == null || tmpLine.length < columns + 1) {
                     tmpLine = new char[columns+1];
                 }
                 int length = x2 - x1;
-                System.arraycopy(mLines[row], x1, tmpLine, 0, length);
+                System.arraycopy(rowLine, x1, tmpLine, 0, length);
                 tmpLine[length] = 0;
                 return tmpLine;
             }
         }
 
         // Figure out how long the array needs to be
-        FullUnicodeLine line = (FullUnicodeLine) mLines[row];
+        FullUnicodeLine line = (FullUnicodeLine) rowLine;
         char[] rawLine = line.getLine();
         x1 = line.findStartOfColumn(x1);
         if (x2 < columns) {
@@ -622,18 +675,37 @@ public char[] getLine(int row) {
         return getLine(row, 0, mColumns);
     }
 
+    /**
+     * Get the internal representation of a line of the transcript: a char[],
+     * a FullUnicodeLine, or null for a blank line.  Lines in the scrollback
+     * are only valid until the next call.
+     */
+    private Object getLineObject(int row) {
+        if (row < -mScrollback.getRows() || row > mScreenRows-1) {
+            throw new IllegalArgumentException();
+        }
+        if (row < 0) {
+            return mScrollback.getLine(scrollbackRow(row));
+        }
+        return mLines[externalToInternalRow(row)];
+    }
+
     /**
      * Get color/formatting information for a particular line.
      * The returned object may be a pointer to a temporary buffer, only good
      * until the next call to getLineColor.
      */
     public StyleRow getLineColor(int row, int x1, int x2) {
-        if (row < -mActiveTranscriptRows || row > mScreenRows-1) {
+        if (row < -mScrollback.getRows() || row > mScreenRows-1) {
             throw new IllegalArgumentException();
         }
 
-        row = externalToInternalRow(row);
-        StyleRow color = mColor[row];
+        StyleRow color;
+        if (row < 0) {
+            color = mScrollback.getLineColor(scrollbackRow(row));
+        } else {
+            color = mColor[externalToInternalRow(row)];
+        }
         StyleRow tmp = tmpColor;
         if (color != null) {
             if (x1 == 0 && x2 == mColumns) {
@@ -651,10 +723,13 @@ public StyleRow getLineColor(int row) {
     }
 
     boolean isBasicLine(int row) {
-        if (row < -mActiveTranscriptRows || row > mScreenRows-1) {
+        if (row < -mScrollback.getRows() || row > mScreenRows-1) {
             throw new IllegalArgumentException();
         }
 
+        if (row < 0) {
+            return mScrollback.isBasicLine(scrollbackRow(row));
+        }
         return (mLines[externalToInternalRow(row)] instanceof char[]);
     }
 
@@ -678,23 +753,20 @@ public boolean getChar(int row, int column, int charIndex) {
      * @return Whether or not there are characters following this one in the column.
      */
     public boolean getChar(int row, int column, int charIndex, char[] out, int offset) {
-        if (row < -mActiveTranscriptRows || row > mScreenRows-1) {
-            throw new IllegalArgumentException();
-        }
-        row = externalToInternalRow(row);
+        Object rowLine = getLineObject(row);
 
-        if (mLines[row] instanceof char[]) {
+        if (rowLine instanceof char[]) {
             // Fast path: all regular-width BMP chars in the row
-            char[] line = (char[]) mLines[row];
+            char[] line = (char[]) rowLine;
             out[offset] = line[column];
             return false;
         }
 
-        FullUnicodeLine line = (FullUnicodeLine) mLines[row];
+        FullUnicodeLine line = (FullUnicodeLine) rowLine;
         return line.getChar(column, charIndex, out, offset);
     }
 
-    private boolean isBasicChar(int codePoint) {
+    static boolean isBasicChar(int codePoint) {
         return !(charWidth(codePoint) != 1 || Character.charCount(codePoint) != 1);
     }
 
@@ -728,8 +800,9 @@ public boolean setChar(int column, int row, int codePoint, int style) {
             return false;
         }
 
-        row = externalToInternalRow(row);
-        mColor[row].set(column, style);
+        if (mColor[externalToInternalRow(row)].set(column, style)) {
+            setDirty(row, column, column + 1);
+        }
 
         return true;
     }
@@ -739,6 +812,7 @@ public boolean setChar(int column, int row, int codePoint) {
             Log.e(TAG, "illegal arguments! " + row + " " + column + " " + mScreenRows + " " + mColumns);
             throw new IllegalArgumentException();
         }
+        int extRow = row;
         row = externalToInternalRow(row);
 
         /*
@@ -771,7 +845,10 @@ public boolean setChar(int column, int row, int codePoint) {
 
             if (basicMode == 1) {
                 // Fast path -- just put the char in the array
-                line[column] = (char) codePoint;
+                if (line[column] != (char) codePoint) {
+                    line[column] = (char) codePoint;
+                    setDirty(extRow, column, column + 1);
+                }
                 return true;
             }
 
@@ -781,8 +858,67 @@ public boolean setChar(int column, int row, int codePoint) {
 
         FullUnicodeLine line = (FullUnicodeLine) mLines[row];
         line.setChar(column, codePoint);
+        // A wide character also covers the next column, and overwriting one
+        // half of a wide character blanks the other half
+        setDirty(extRow, Math.max(column - 1, 0), Math.min(column + 2, mColumns));
         return true;
     }
+
+    /**
+     * Store a run of "basic" characters (regular-width BMP characters, see
+     * isBasicChar()) into a row, all with the same style.  The run must fit
+     * within the row.  Equivalent to calling setChar() for each character,
+     * but a run landing in a basic row is stored with a single array copy.
+     *
+     * @param column The column at which the run starts.
+     * @param row The row to store the run into.
+     * @param chars The array containing the run.
+     * @param offset The index of the first char of the run in the array.
+     * @param count The number of chars (and columns) in the run.
+     * @param style The style to give the run.
+     */
+    public void setChars(int column, int row, char[] chars, int offset, int count, int style) {
+        if (row >= mScreenRows || column < 0 || column + count > mColumns) {
+            Log.e(TAG, "illegal arguments! " + row + " " + column + " " + count + " " + mScreenRows + " " + mColumns);
+            throw new IllegalArgumentException();
+        }
+        int extRow = row;
+        row = externalToInternalRow(row);
+
+        if (mLines[row] == null) {
+            allocateBasicLine(row, mColumns);
+        }
+
+        if (mLines[row] instanceof char[]) {
+            // Fast path -- copy the whole run into the array, noting which
+            // part of it actually changed
+            char[] line = (char[]) mLines[row];
+            int first = 0;
+            while (first < count && line[column + first] == chars[offset + first]) {
+                ++first;
+            }
+            if (first < count) {
+                int last = count - 1;
+                while (line[column + last] == chars[offset + last]) {
+                    --last;
+                }
+                System.arraycopy(chars, offset + first, line, column + first,
+                        last + 1 - first);
+                setDirty(extRow, column + first, column + last + 1);
+            }
+        } else {
+            FullUnicodeLine line = (FullUnicodeLine) mLines[row];
+            for (int i = 0; i < count; ++i) {
+                line.setChar(column + i, chars[offset + i]);
+            }
+            setDirty(extRow, Math.max(column - 1, 0),
+                    Math.min(column + count + 1, mColumns));
+        }
+
+        if (mColor[row].set(column, count, style)) {
+            setDirty(extRow, column, column + count);
+        }
+    }
 }
 
 /*
@@ -833,6 +969,45 @@ public int getSpaceUsed() {
         return mOffset[0];
     }
 
+    /**
+     * The number of chars pack() will store.
+     */
+    int getPackedLength() {
+        return getSpaceUsed() + mColumns;
+    }
+
+    /**
+     * Store the text of the line followed by its column offsets into an
+     * array, for unpack() to rebuild the line from later.
+     *
+     * @return The index after the last char stored.
+     */
+    int pack(char[] dest, int pos) {
+        int spaceUsed = getSpaceUsed();
+        System.arraycopy(mText, 0, dest, pos, spaceUsed);
+        pos += spaceUsed;
+        short[] offset = mOffset;
+        for (int i = 0; i < mColumns; ++i) {
+            dest[pos++] = (char) offset[i];
+        }
+        return pos;
+    }
+
+    static FullUnicodeLine unpack(int columns, char[] src, int pos, int length) {
+        FullUnicodeLine line = new FullUnicodeLine(columns);
+        int spaceUsed = length - columns;
+        if (spaceUsed > line.mText.length) {
+            line.mText = new char[spaceUsed + columns];
+        }
+        System.arraycopy(src, pos, line.mText, 0, spaceUsed);
+        pos += spaceUsed;
+        short[] offset = line.mOffset;
+        for (int i = 0; i < columns; ++i) {
+            offset[i] = (short) src[pos++];
+        }
+        return line;
+    }
+
     public char[] getLine() {
         return mText;
     }
@@ -84,5 +84,62 @@ public static native void setPtyUTF8Mode(FileDescriptor fd,
      * Send SIGHUP to a process group.
      */
     public static native void hangupProcessGroup(int processId);
+
+    /** {@link #poll} event: the descriptor can be read without blocking. */
+    public static final int POLL_IN = 1;
+    /** {@link #poll} event: the descriptor can be written without blocking. */
+    public static final int POLL_OUT = 2;
+    /** {@link #poll} event: the other end hung up, or an error occurred. */
+    public static final int POLL_HUP = 4;
+
+    /**
+     * Get the raw file descriptor number of a FileDescriptor.
+     */
+    public static native int getFd(FileDescriptor fd);
+
+    /**
+     * Put a file descriptor into non-blocking mode.
+     */
+    public static native void setNonBlocking(int fd);
+
+    /**
+     * Create a pipe.
+     *
+     * @param fds A two-element array to which the read and write ends of
+     * the pipe will be written.
+     * @return Whether the pipe was created.
+     */
+    public static native boolean createPipe(int[] fds);
+
+    /**
+     * Wait until one of a set of file descriptors is ready for I/O.
+     *
+     * @param fds The file descriptors to wait on.
+     * @param events For each file descriptor, the POLL_IN and POLL_OUT
+     * events to wait for.  On return, each entry holds the POLL_IN,
+     * POLL_OUT and POLL_HUP events which occurred.
+     * @param count The number of file descriptors to wait on.
+     * @param timeoutMillis How long to wait, or -1 to wait indefinitely.
+     * @return The number of file descriptors with events, 0 if the wait timed
+     * out or was interrupted, or -1 on error.
+     */
+    public static native int poll(int[] fds, int[] events, int count,
+       int timeoutMillis);
+
+    /**
+     * Read from a non-blocking file descriptor.
+     *
+     * @return The number of bytes read, 0 if no data is available, or -1 at
+     * end of file or on error.
+     */
+    public static native int read(int fd, byte[] buffer, int offset, int length);
+
+    /**
+     * Write to a non-blocking file descriptor.
+     *
+     * @return The number of bytes written, 0 if the descriptor isn't ready
+     * for writing, or -1 on error.
+     */
+    public static native int write(int fd, byte[] buffer, int offset, int length);
 }
 
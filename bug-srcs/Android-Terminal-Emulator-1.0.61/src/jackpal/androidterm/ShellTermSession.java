@@ -49,6 +49,9 @@ public class ShellTermSession extends TermSession {
     private FileDescriptor mTermFd;
     private Thread mWatcherThread;
 
+    // The pty's registration with the shared I/O thread, if it has one
+    private TermIoMultiplexer.Registration mIoRegistration;
+
     // A cookie which uniquely identifies this session.
     private String mHandle;
 
@@ -73,6 +76,16 @@ public void handleMessage(Message msg) {
         }
     };
 
+    private final TermIoMultiplexer.Channel mIoChannel = new TermIoMultiplexer.Channel() {
+        public int input(byte[] data, int offset, int count) {
+            return queueInput(data, offset, count);
+        }
+
+        public int output(byte[] buffer, int offset, int count) {
+            return takeOutput(buffer, offset, count);
+        }
+    };
+
     private UpdateCallback mUTF8ModeNotify = new UpdateCallback() {
         public void onUpdate() {
             Exec.setPtyUTF8Mode(mTermFd, getUTF8Mode());
@@ -80,7 +93,7 @@ public void onUpdate() {
     };
 
     public ShellTermSession(TermSettings settings, String initialCommand) {
-        super();
+        super(true);
 
         updatePrefs(settings);
 
@@ -167,6 +180,43 @@ public void initializeEmulator(int columns, int rows) {
         sendInitialCommand(mInitialCommand);
     }
 
+    /* Do the pty I/O on the thread shared by all sessions, falling back to
+       the superclass's reader and writer threads if it isn't available */
+    @Override
+    protected void startIo() {
+        TermIoMultiplexer multiplexer = TermIoMultiplexer.getInstance();
+        if (multiplexer == null) {
+            super.startIo();
+            return;
+        }
+        mIoRegistration = multiplexer.register(Exec.getFd(mTermFd), mIoChannel);
+    }
+
+    @Override
+    protected void onOutputQueued() {
+        if (mIoRegistration != null) {
+            mIoRegistration.outputQueued();
+        } else {
+            super.onOutputQueued();
+        }
+    }
+
+    @Override
+    protected void onInputDrained() {
+        if (mIoRegistration != null) {
+            mIoRegistration.inputDrained();
+        }
+    }
+
+    @Override
+    protected void stopIo() {
+        if (mIoRegistration != null) {
+            mIoRegistration.unregister();
+        } else {
+            super.stopIo();
+        }
+    }
+
     private void sendInitialCommand(String initialCommand) {
         if (initialCommand.length() > 0) {
             write(initialCommand + '\r');
@@ -280,8 +330,9 @@ private void onProcessExit(int result) {
     @Override
     public void finish() {
         Exec.hangupProcessGroup(mProcId);
-        Exec.close(mTermFd);
+        // Stops the I/O before the pty is closed
         super.finish();
+        Exec.close(mTermFd);
     }
 
     /**
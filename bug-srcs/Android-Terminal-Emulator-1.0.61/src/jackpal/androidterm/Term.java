@@ -29,8 +29,15 @@
 import jackpal.androidterm.util.SessionList;
 import jackpal.androidterm.util.TermSettings;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.text.Collator;
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -52,6 +59,7 @@
 import android.net.Uri;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
+import android.os.Environment;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
@@ -707,6 +715,8 @@ public boolean onOptionsItemSelected(MenuItem item) {
             toast.show();
         } else if (id == R.id.menu_send_email) {
             doEmailTranscript();
+        } else if (id == R.id.menu_save_transcript) {
+            doSaveTranscript();
         } else if (id == R.id.menu_special_keys) {
             doDocumentKeys();
         } else if (id == R.id.menu_toggle_soft_keyboard) {
@@ -1012,8 +1022,7 @@ private void doEmailTranscript() {
                 subject = subject + " - " + title;
             }
             intent.putExtra(Intent.EXTRA_SUBJECT, subject);
-            intent.putExtra(Intent.EXTRA_TEXT,
-                    session.getTranscriptText().trim());
+            intent.putExtra(Intent.EXTRA_TEXT, getTranscriptText(session));
             try {
                 startActivity(Intent.createChooser(intent,
                         getString(R.string.email_transcript_chooser_title)));
@@ -1025,10 +1034,54 @@ private void doEmailTranscript() {
         }
     }
 
+    private void doSaveTranscript() {
+        TermSession session = getCurrentTermSession();
+        if (session == null) {
+            return;
+        }
+        String name = "transcript-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date())
+                + ".txt";
+        File file = new File(Environment.getExternalStorageDirectory(), name);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            session.exportTranscript(out, TermSession.EXPORT_TEXT);
+            Toast.makeText(this, getString(R.string.save_transcript_done, file.getPath()),
+                    Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(TermDebug.LOG_TAG, "Failed to save transcript to " + file, e);
+            Toast.makeText(this, R.string.save_transcript_failed,
+                    Toast.LENGTH_LONG).show();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing we can do
+                }
+            }
+        }
+    }
+
     private void doCopyAll() {
         ClipboardManagerCompat clip = ClipboardManagerCompatFactory
                 .getManager(getApplicationContext());
-        clip.setText(getCurrentTermSession().getTranscriptText().trim());
+        clip.setText(getTranscriptText(getCurrentTermSession()));
+    }
+
+    /**
+     * Get a session's transcript, without leading or trailing whitespace,
+     * for the places that need it as a single String.
+     */
+    private static String getTranscriptText(TermSession session) {
+        StringWriter out = new StringWriter();
+        try {
+            session.exportTranscript(out, TermSession.EXPORT_TEXT);
+        } catch (IOException e) {
+            // A StringWriter never throws
+        }
+        return out.toString().trim();
     }
 
     private void doPaste() {
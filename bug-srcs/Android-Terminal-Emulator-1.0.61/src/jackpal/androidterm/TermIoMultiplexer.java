@@ -0,0 +1,321 @@
+package jackpal.androidterm;
+
+import java.util.ArrayList;
+
+import android.util.Log;
+
+/**
+ * Moves data between the ptys of all terminal sessions and their emulators
+ * on one shared thread, instead of a reader and a writer thread per session.
+ * <p>
+ * The thread sleeps in poll() until a pty has output for the emulator, or can
+ * take input which the session has queued, so idle sessions cost nothing.  It
+ * runs only while at least one session is registered.  A pipe is polled
+ * alongside the ptys so that the main thread can wake it when a session has
+ * new output or can accept more input.
+ */
+class TermIoMultiplexer {
+    private static final String TAG = "TermIoMultiplexer";
+
+    /** Bytes moved per read() or write(); matches the native chunk size. */
+    private static final int BUFFER_SIZE = 4096;
+
+    private static TermIoMultiplexer sInstance;
+
+    /**
+     * The session side of a registration, called on the multiplexer thread.
+     */
+    interface Channel {
+        /**
+         * Accept data read from the pty.
+         *
+         * @return The number of bytes accepted.  If this is less than
+         *         <code>count</code>, the pty isn't read again until
+         *         {@link Registration#inputDrained} is called.
+         */
+        int input(byte[] data, int offset, int count);
+
+        /**
+         * Fill <code>buffer</code> with data to write to the pty.
+         *
+         * @return The number of bytes copied, or 0 if there is nothing to
+         *         write.
+         */
+        int output(byte[] buffer, int offset, int count);
+    }
+
+    /**
+     * A pty registered with the multiplexer.  All fields except the buffers
+     * are guarded by the multiplexer's lock.
+     */
+    class Registration {
+        private final int mFd;
+        private final Channel mChannel;
+        private boolean mRegistered = true;
+        private boolean mHungUp;
+        private boolean mOutputPending = true;
+        private boolean mInputBlocked;
+
+        // Input the channel couldn't accept yet
+        private byte[] mStalledInput;
+        private int mStalledOffset;
+        private int mStalledCount;
+
+        // Output the pty couldn't take yet
+        private final byte[] mOutput = new byte[BUFFER_SIZE];
+        private int mOutputOffset;
+        private int mOutputCount;
+
+        private Registration(int fd, Channel channel) {
+            mFd = fd;
+            mChannel = channel;
+        }
+
+        /**
+         * Tell the multiplexer the session has queued output for the pty.
+         */
+        void outputQueued() {
+            synchronized (mLock) {
+                if (mOutputPending || !mRegistered) {
+                    return;
+                }
+                mOutputPending = true;
+            }
+            wakeUp();
+        }
+
+        /**
+         * Tell the multiplexer the session has room for more input.
+         */
+        void inputDrained() {
+            synchronized (mLock) {
+                if (!mInputBlocked || !mRegistered) {
+                    return;
+                }
+                mInputBlocked = false;
+            }
+            wakeUp();
+        }
+
+        /**
+         * Stop polling the pty.  Once this returns, the multiplexer no longer
+         * touches the file descriptor, so it is safe to close.
+         */
+        void unregister() {
+            synchronized (mLock) {
+                if (!mRegistered) {
+                    return;
+                }
+                mRegistered = false;
+                mRegistrations.remove(this);
+            }
+            wakeUp();
+        }
+
+        private int getEvents() {
+            if (mHungUp) {
+                return 0;
+            }
+            int events = 0;
+            if (!mInputBlocked) {
+                events |= Exec.POLL_IN;
+            }
+            if (mOutputPending || mOutputCount > 0) {
+                events |= Exec.POLL_OUT;
+            }
+            return events;
+        }
+    }
+
+    private final Object mLock = new Object();
+    private final ArrayList<Registration> mRegistrations = new ArrayList<Registration>();
+    private Thread mThread;
+
+    private final int mWakeReadFd;
+    private final int mWakeWriteFd;
+    private final byte[] mWakeByte = new byte[1];
+
+    private TermIoMultiplexer(int[] wakePipe) {
+        mWakeReadFd = wakePipe[0];
+        mWakeWriteFd = wakePipe[1];
+        Exec.setNonBlocking(mWakeReadFd);
+        Exec.setNonBlocking(mWakeWriteFd);
+    }
+
+    /**
+     * @return The process-wide multiplexer, or null if it couldn't be set up.
+     */
+    static synchronized TermIoMultiplexer getInstance() {
+        if (sInstance == null) {
+            int[] wakePipe = new int[2];
+            if (!Exec.createPipe(wakePipe)) {
+                return null;
+            }
+            sInstance = new TermIoMultiplexer(wakePipe);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Start polling a pty.  The file descriptor is made non-blocking.
+     *
+     * @param fd The pty's file descriptor.
+     * @param channel Where to put data read from the pty, and where to get
+     *                data to write to it.
+     * @return The registration, which the session uses to signal the
+     *         multiplexer and must unregister before closing the pty.
+     */
+    Registration register(int fd, Channel channel) {
+        Exec.setNonBlocking(fd);
+        Registration registration = new Registration(fd, channel);
+        synchronized (mLock) {
+            mRegistrations.add(registration);
+            if (mThread == null) {
+                mThread = new Thread() {
+                    @Override
+                    public void run() {
+                        pollLoop();
+                    }
+                };
+                mThread.setName("TermSession I/O");
+                mThread.start();
+                return registration;
+            }
+        }
+        wakeUp();
+        return registration;
+    }
+
+    private void wakeUp() {
+        // If the pipe is full, the thread has a wakeup waiting anyway
+        Exec.write(mWakeWriteFd, mWakeByte, 0, 1);
+    }
+
+    private void pollLoop() {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Registration[] polled = new Registration[0];
+        int[] fds = new int[1];
+        int[] events = new int[1];
+
+        while (true) {
+            int count;
+            synchronized (mLock) {
+                count = mRegistrations.size();
+                if (count == 0) {
+                    mThread = null;
+                    return;
+                }
+                if (polled.length < count) {
+                    polled = new Registration[count];
+                    fds = new int[count + 1];
+                    events = new int[count + 1];
+                }
+                for (int i = 0; i < count; ++i) {
+                    Registration registration = mRegistrations.get(i);
+                    if (registration.mStalledCount > 0 && !registration.mInputBlocked) {
+                        retryStalledInput(registration);
+                    }
+                    polled[i] = registration;
+                    events[i] = registration.getEvents();
+                    // poll() skips negative descriptors
+                    fds[i] = events[i] != 0 ? registration.mFd : -1;
+                }
+            }
+            fds[count] = mWakeReadFd;
+            events[count] = Exec.POLL_IN;
+
+            if (Exec.poll(fds, events, count + 1, -1) < 0) {
+                Log.e(TAG, "poll failed");
+                synchronized (mLock) {
+                    mThread = null;
+                }
+                return;
+            }
+
+            if (events[count] != 0) {
+                while (Exec.read(mWakeReadFd, buffer, 0, buffer.length) > 0) {
+                }
+            }
+
+            /* Do the I/O with the lock held, so that a session can't close
+               its pty in the middle of it */
+            synchronized (mLock) {
+                for (int i = 0; i < count; ++i) {
+                    Registration registration = polled[i];
+                    polled[i] = null;
+                    if (!registration.mRegistered || events[i] == 0) {
+                        continue;
+                    }
+                    if ((events[i] & (Exec.POLL_OUT | Exec.POLL_HUP)) != 0
+                            && (registration.mOutputPending || registration.mOutputCount > 0)) {
+                        writeOutput(registration);
+                    }
+                    if ((events[i] & (Exec.POLL_IN | Exec.POLL_HUP)) != 0) {
+                        readInput(registration, buffer);
+                    }
+                }
+            }
+        }
+    }
+
+    private void readInput(Registration registration, byte[] buffer) {
+        if (registration.mInputBlocked) {
+            return;
+        }
+        int read = Exec.read(registration.mFd, buffer, 0, buffer.length);
+        if (read < 0) {
+            /* The process has closed the pty; the session finds out it has
+               exited from its process watcher */
+            registration.mHungUp = true;
+            return;
+        }
+        if (read == 0) {
+            return;
+        }
+        int accepted = registration.mChannel.input(buffer, 0, read);
+        if (accepted < read) {
+            if (registration.mStalledInput == null) {
+                registration.mStalledInput = new byte[BUFFER_SIZE];
+            }
+            System.arraycopy(buffer, accepted, registration.mStalledInput, 0,
+                    read - accepted);
+            registration.mStalledOffset = 0;
+            registration.mStalledCount = read - accepted;
+            registration.mInputBlocked = true;
+        }
+    }
+
+    /* Offer the session the input it couldn't take last time, before any
+       more is read */
+    private void retryStalledInput(Registration registration) {
+        int accepted = registration.mChannel.input(registration.mStalledInput,
+                registration.mStalledOffset, registration.mStalledCount);
+        registration.mStalledOffset += accepted;
+        registration.mStalledCount -= accepted;
+        registration.mInputBlocked = registration.mStalledCount > 0;
+    }
+
+    private void writeOutput(Registration registration) {
+        if (registration.mOutputCount == 0) {
+            /* Clear the flag before looking, so output queued while we look
+               sets it again */
+            registration.mOutputPending = false;
+            int count = registration.mChannel.output(registration.mOutput, 0,
+                    registration.mOutput.length);
+            if (count == 0) {
+                return;
+            }
+            registration.mOutputPending = true;
+            registration.mOutputOffset = 0;
+            registration.mOutputCount = count;
+        }
+        int written = Exec.write(registration.mFd, registration.mOutput,
+                registration.mOutputOffset, registration.mOutputCount);
+        if (written < 0) {
+            // Nobody is listening any more; drop the output
+            written = registration.mOutputCount;
+        }
+        registration.mOutputOffset += written;
+        registration.mOutputCount -= written;
+    }
+}
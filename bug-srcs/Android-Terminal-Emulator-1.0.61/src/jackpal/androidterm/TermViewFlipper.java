@@ -214,11 +214,22 @@ public void setDisplayedChild(int position) {
     @Override
     public void addView(View v, int index) {
         super.addView(v, index, mChildParams);
+        hideSession(v);
     }
 
     @Override
     public void addView(View v) {
         super.addView(v, mChildParams);
+        hideSession(v);
+    }
+
+    /* A view's session stays hidden until the view is resumed, so that
+       windows in the background don't parse their output eagerly */
+    private void hideSession(View v) {
+        TermSession session = ((EmulatorView) v).getTermSession();
+        if (session != null) {
+            session.setVisible(false);
+        }
     }
 
     private void updateVisibleRect() {
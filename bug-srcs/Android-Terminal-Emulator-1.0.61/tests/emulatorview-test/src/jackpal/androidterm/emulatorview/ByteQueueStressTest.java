@@ -0,0 +1,85 @@
+package jackpal.androidterm.emulatorview;
+
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Pushes a stream of bytes through each ByteFifo implementation from one
+ * producer thread to one consumer thread, checks that it arrives intact, and
+ * logs the throughput and the number of wakeups needed.
+ */
+public class ByteQueueStressTest extends AndroidTestCase {
+    private static final String TAG = "ByteQueueStressTest";
+
+    private static final long TOTAL_BYTES = 32 * 1024 * 1024;
+    private static final int MAX_WRITE = 4096;
+    private static final int MAX_READ = 4096;
+
+    public void testByteQueue() throws InterruptedException {
+        stress("ByteQueue", new ByteQueue(4096));
+    }
+
+    public void testLockFreeByteQueue() throws InterruptedException {
+        stress("LockFreeByteQueue", new LockFreeByteQueue(4096, 256 * 1024));
+    }
+
+    public void testLockFreeByteQueueTiny() throws InterruptedException {
+        // Forces the queue to fill up and the writer to wait all the time
+        stress("LockFreeByteQueue (tiny)", new LockFreeByteQueue(16, 64));
+    }
+
+    private void stress(String name, final ByteFifo queue)
+            throws InterruptedException {
+        final Throwable[] producerError = new Throwable[1];
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                Random random = new Random(1);
+                byte[] buffer = new byte[MAX_WRITE];
+                byte value = 0;
+                long sent = 0;
+                try {
+                    while (sent < TOTAL_BYTES) {
+                        int length = (int) Math.min(TOTAL_BYTES - sent,
+                                1 + random.nextInt(MAX_WRITE));
+                        for (int i = 0; i < length; i++) {
+                            buffer[i] = value++;
+                        }
+                        int offset = 0;
+                        while (offset < length) {
+                            offset += queue.write(buffer, offset, length - offset);
+                        }
+                        sent += length;
+                    }
+                } catch (Throwable e) {
+                    producerError[0] = e;
+                }
+            }
+        };
+
+        long start = System.nanoTime();
+        producer.start();
+
+        Random random = new Random(2);
+        byte[] buffer = new byte[MAX_READ];
+        byte expected = 0;
+        long received = 0;
+        while (received < TOTAL_BYTES) {
+            int read = queue.read(buffer, 0, 1 + random.nextInt(MAX_READ));
+            for (int i = 0; i < read; i++) {
+                assertEquals("byte " + (received + i), expected++, buffer[i]);
+            }
+            received += read;
+        }
+        producer.join();
+        long elapsed = System.nanoTime() - start;
+
+        assertNull(producerError[0]);
+        assertEquals(0, queue.getBytesAvailable());
+        Log.i(TAG, String.format("%s: %.2f MB/s, %d wakeups", name,
+                (TOTAL_BYTES / 1048576.0) / (elapsed / 1e9),
+                queue.getWakeupCount()));
+    }
+}
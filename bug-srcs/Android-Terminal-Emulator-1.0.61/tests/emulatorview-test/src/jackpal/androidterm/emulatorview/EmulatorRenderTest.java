@@ -0,0 +1,278 @@
+package jackpal.androidterm.emulatorview;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Replays the output of full-screen programs frame by frame and draws each
+ * frame the way EmulatorView does: only the rows the transcript reports as
+ * dirty (plus the old and new cursor rows) are drawn again, on top of the
+ * previous frame.  Logs the rows painted per frame, and checks that the
+ * result matches drawing every row from scratch.
+ */
+public class EmulatorRenderTest extends AndroidTestCase {
+    private static final String TAG = "EmulatorRenderTest";
+
+    private static final int COLUMNS = 80;
+    private static final int ROWS = 24;
+    private static final int TRANSCRIPT_ROWS = 1000;
+    private static final int FRAMES = 200;
+    private static final int TEXT_SIZE = 12;
+    private static final int CHECK_INTERVAL = 20;
+
+    private TerminalEmulator mEmulator;
+    private TranscriptScreen mScreen;
+    private TextRenderer mRenderer;
+    private Paint mBackgroundPaint;
+    private int mWidth;
+    private int mHeight;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ColorScheme scheme = BaseTextRenderer.defaultColorScheme;
+        mScreen = new TranscriptScreen(COLUMNS, TRANSCRIPT_ROWS, ROWS, scheme);
+        mEmulator = new TerminalEmulator(new MockTermSession(), mScreen,
+                COLUMNS, ROWS, scheme);
+        mEmulator.setDefaultUTF8Mode(true);
+        mRenderer = new PaintRenderer(TEXT_SIZE, scheme);
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(scheme.getBackColor());
+        mWidth = (int) Math.ceil(COLUMNS * mRenderer.getCharacterWidth());
+        mHeight = mRenderer.getTopMargin() + ROWS * mRenderer.getCharacterHeight();
+    }
+
+    public void testTop() throws UnsupportedEncodingException {
+        float rowsPerFrame = render("top", topFrames());
+        assertTrue("top repainted the whole screen", rowsPerFrame < ROWS / 2);
+    }
+
+    /**
+     * Draw every row of every frame of top, and log the time and the number
+     * of canvas calls per frame.  A run of text is drawn with one drawText()
+     * and at most one drawRect() for its background, so a row costs a few
+     * calls however many characters it holds.
+     */
+    public void testFrameTime() throws UnsupportedEncodingException {
+        String[] frames = topFrames();
+        Bitmap bitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        CountingCanvas canvas = new CountingCanvas(bitmap);
+        long total = 0;
+        long max = 0;
+        for (int frame = 0; frame < frames.length; frame++) {
+            byte[] data = frames[frame].getBytes("UTF-8");
+            mEmulator.append(data, 0, data.length);
+
+            long start = System.nanoTime();
+            canvas.drawRect(0, 0, mWidth, mHeight, mBackgroundPaint);
+            for (int row = 0; row < ROWS; row++) {
+                drawRow(canvas, row, false);
+            }
+            long time = System.nanoTime() - start;
+            total += time;
+            max = Math.max(max, time);
+        }
+
+        float callsPerFrame = (float) canvas.mCalls / frames.length;
+        Log.i(TAG, String.format("frame time: %.3f ms average, %.3f ms max,"
+                + " %.1f canvas calls per frame of %d rows", total / 1e6 / frames.length,
+                max / 1e6, callsPerFrame, ROWS));
+        assertTrue("text drawn one character at a time", callsPerFrame < ROWS * 8);
+    }
+
+    private String[] topFrames() {
+        String[] frames = new String[FRAMES];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            // Like top, rewrite every row of the screen on every refresh
+            StringBuilder out = new StringBuilder();
+            out.append("\033[H");
+            out.append(String.format("top - 12:%02d:%02d up 3 days,  4:12,  2 users,"
+                    + "  load average: 0.%02d, 0.40, 0.35", frame / 60 % 60,
+                    frame % 60, frame % 100)).append("\033[K\r\n");
+            out.append("Tasks: 183 total,   1 running, 182 sleeping,"
+                    + "   0 stopped,   0 zombie\033[K\r\n");
+            out.append(String.format("%%Cpu(s):  %d.%d us,  1.0 sy,  0.0 ni,"
+                    + " 9%d.0 id,  0.0 wa", 2 + frame % 3, frame % 10, frame % 7))
+                    .append("\033[K\r\n");
+            out.append("MiB Mem :   3849.2 total,    512.3 free,   1780.1 used,"
+                    + "   1556.8 buff/cache\033[K\r\n");
+            out.append("MiB Swap:   2048.0 total,   2048.0 free,      0.0 used."
+                    + "   1830.5 avail Mem\033[K\r\n");
+            out.append("\033[K\r\n");
+            out.append("\033[7m  PID USER      PR  NI    VIRT    RES    SHR S"
+                    + "  %CPU  %MEM     TIME+ COMMAND\033[m\033[K");
+            for (int process = 0; process < ROWS - 7; process++) {
+                // Only a few processes use any CPU between refreshes
+                int cpu = (process < 3) ? (frame * 7 + process * 13) % 50 : 0;
+                out.append("\r\n").append(String.format(
+                        "%5d u0_a%-5d 20   0 %7d %6d %6d %s %5.1f %5.1f %3d:%02d.%02d %s",
+                        1000 + process, 10 + process, 1500000 + process * 1000,
+                        90000 + process * 100, 60000, cpu > 0 ? "R" : "S",
+                        cpu / 1.0, 1.5, 0, process, (process < 3) ? frame % 100 : 0,
+                        "process" + process)).append("\033[K");
+            }
+            frames[frame] = out.toString();
+        }
+        return frames;
+    }
+
+    public void testVimScrolling() throws UnsupportedEncodingException {
+        String[] frames = new String[FRAMES];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            // Like vim after ^E: scroll the text area (all rows but the
+            // status line) up one line, draw the new bottom line, and update
+            // the ruler
+            StringBuilder out = new StringBuilder();
+            out.append("\033[?25l\033[1;").append(ROWS - 1).append("r\033[")
+                    .append(ROWS - 1).append(";1H\n\033[r");
+            int line = frame + ROWS - 1;
+            out.append("\033[").append(ROWS - 1).append(";1H\033[33m")
+                    .append(String.format("%4d ", line)).append("\033[m")
+                    .append("    public void method").append(line)
+                    .append("() { return; } // \u00e9t\u00e9\033[K");
+            out.append("\033[").append(ROWS).append(";63H")
+                    .append(String.format("%-8s %3d%%", (frame + 1) + ",1",
+                            frame * 100 / FRAMES));
+            out.append("\033[1;1H\033[?25h");
+            frames[frame] = out.toString();
+        }
+        render("vim scrolling", frames);
+    }
+
+    public void testVimInsert() throws UnsupportedEncodingException {
+        String[] frames = new String[FRAMES];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            // Typing in insert mode: one character, then the ruler
+            int column = frame % 60;
+            StringBuilder out = new StringBuilder();
+            out.append("\033[12;").append(column + 1).append("H")
+                    .append((char) ('a' + frame % 26));
+            out.append("\033[").append(ROWS).append(";63H")
+                    .append(String.format("%-8s All", "12," + (column + 2)));
+            out.append("\033[12;").append(column + 2).append("H");
+            frames[frame] = out.toString();
+        }
+        float rowsPerFrame = render("vim insert", frames);
+        assertTrue("vim insert repainted the whole screen", rowsPerFrame < 4);
+    }
+
+    /**
+     * Draw each frame incrementally, and check the result against drawing
+     * all the rows every so often.
+     *
+     * @return The average number of rows painted per frame.
+     */
+    private float render(String name, String[] frames)
+            throws UnsupportedEncodingException {
+        Bitmap damaged = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        Canvas damagedCanvas = new Canvas(damaged);
+        Bitmap full = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        Canvas fullCanvas = new Canvas(full);
+
+        // The first frame is drawn in full, as by EmulatorView
+        damagedCanvas.drawRect(0, 0, mWidth, mHeight, mBackgroundPaint);
+        int cursorRow = -1;
+        long rowsPainted = 0;
+        long damagedTime = 0;
+        long fullTime = 0;
+        for (int frame = 0; frame < frames.length; frame++) {
+            byte[] data = frames[frame].getBytes("UTF-8");
+            mEmulator.append(data, 0, data.length);
+
+            long start = System.nanoTime();
+            int newCursorRow = mEmulator.getShowCursor() ? mEmulator.getCursorRow() : -1;
+            for (int row = 0; row < ROWS; row++) {
+                if (mScreen.isRowDirty(row) || row == cursorRow || row == newCursorRow) {
+                    drawRow(damagedCanvas, row, true);
+                    ++rowsPainted;
+                }
+            }
+            mScreen.clearDirty();
+            cursorRow = newCursorRow;
+            damagedTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            fullCanvas.drawRect(0, 0, mWidth, mHeight, mBackgroundPaint);
+            for (int row = 0; row < ROWS; row++) {
+                drawRow(fullCanvas, row, false);
+            }
+            fullTime += System.nanoTime() - start;
+
+            if (frame % CHECK_INTERVAL == 0 || frame == frames.length - 1) {
+                assertSamePixels(name + " frame " + frame, full, damaged);
+            }
+        }
+
+        float rowsPerFrame = (float) rowsPainted / frames.length;
+        Log.i(TAG, String.format("%s: %.1f of %d rows painted per frame,"
+                + " %.3f ms per frame (%.3f ms drawing every row)", name,
+                rowsPerFrame, ROWS, damagedTime / 1e6 / frames.length,
+                fullTime / 1e6 / frames.length));
+        return rowsPerFrame;
+    }
+
+    private void drawRow(Canvas canvas, int row, boolean clear) {
+        int charHeight = mRenderer.getCharacterHeight();
+        float y = mRenderer.getTopMargin() + (row + 1) * charHeight;
+        if (clear) {
+            canvas.drawRect(0, y - charHeight, mWidth, y, mBackgroundPaint);
+        }
+        int cursorX = -1;
+        if (mEmulator.getShowCursor() && row == mEmulator.getCursorRow()) {
+            cursorX = mEmulator.getCursorCol();
+        }
+        mScreen.drawText(row, canvas, 0, y, mRenderer, cursorX, -1, -1, "",
+                TextRenderer.MODE_OFF);
+    }
+
+    /**
+     * A Canvas which counts the drawing calls the renderers make.
+     */
+    private static class CountingCanvas extends Canvas {
+        int mCalls;
+
+        CountingCanvas(Bitmap bitmap) {
+            super(bitmap);
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+            ++mCalls;
+            super.drawRect(left, top, right, bottom, paint);
+        }
+
+        @Override
+        public void drawRect(Rect r, Paint paint) {
+            ++mCalls;
+            super.drawRect(r, paint);
+        }
+
+        @Override
+        public void drawText(char[] text, int index, int count, float x, float y,
+                Paint paint) {
+            ++mCalls;
+            super.drawText(text, index, count, x, y, paint);
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+            ++mCalls;
+            super.drawBitmap(bitmap, src, dst, paint);
+        }
+    }
+
+    private void assertSamePixels(String message, Bitmap expected, Bitmap actual) {
+        int[] expectedPixels = new int[mWidth * mHeight];
+        int[] actualPixels = new int[mWidth * mHeight];
+        expected.getPixels(expectedPixels, 0, mWidth, 0, 0, mWidth, mHeight);
+        actual.getPixels(actualPixels, 0, mWidth, 0, 0, mWidth, mHeight);
+        assertTrue(message, Arrays.equals(expectedPixels, actualPixels));
+    }
+}
@@ -0,0 +1,98 @@
+package jackpal.androidterm.emulatorview;
+
+import java.io.UnsupportedEncodingException;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Replays typical pty output through TerminalEmulator, without any views
+ * attached, and logs the parse throughput in MB/s.
+ */
+public class EmulatorThroughputTest extends AndroidTestCase {
+    private static final String TAG = "EmulatorThroughputTest";
+
+    private static final int COLUMNS = 80;
+    private static final int ROWS = 24;
+    private static final int TRANSCRIPT_ROWS = 10000;
+    private static final int CHUNK_SIZE = 4096;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 10;
+
+    public void testLsLongRecursive() throws UnsupportedEncodingException {
+        StringBuilder out = new StringBuilder();
+        for (int dir = 0; dir < 200; dir++) {
+            out.append("./src/dir").append(dir).append(":\r\n");
+            out.append("total ").append(dir * 8).append("\r\n");
+            for (int file = 0; file < 20; file++) {
+                out.append("-rw-r--r-- 1 u0_a123 u0_a123  ")
+                        .append(1000 + dir * file)
+                        .append(" 2014-03-01 12:34 file")
+                        .append(file).append(".java\r\n");
+            }
+            out.append("\r\n");
+        }
+        replay("ls -lR", out.toString().getBytes("UTF-8"));
+    }
+
+    public void testVimRedraw() throws UnsupportedEncodingException {
+        StringBuilder out = new StringBuilder();
+        for (int frame = 0; frame < 300; frame++) {
+            out.append("\033[?25l\033[H");
+            for (int row = 0; row < ROWS - 1; row++) {
+                out.append("\033[").append(row + 1).append(";1H\033[K")
+                        .append("\033[33m").append(String.format("%4d ", frame + row))
+                        .append("\033[m")
+                        .append("    public void method").append(row)
+                        .append("() { return; } // \u00e9t\u00e9");
+            }
+            out.append("\033[").append(ROWS).append(";1H\033[7m")
+                    .append("\"Foo.java\" 300L, 9000C").append("\033[m")
+                    .append("\033[1;6H\033[?25h");
+        }
+        replay("vim redraw", out.toString().getBytes("UTF-8"));
+    }
+
+    public void testCompilerOutput() throws UnsupportedEncodingException {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            out.append("\033[1msrc/module").append(i % 17).append("/file")
+                    .append(i).append(".c:").append(i % 400).append(":12: \033[0m")
+                    .append("\033[1;35mwarning: \033[0m")
+                    .append("unused variable \u2018tmp").append(i).append("\u2019")
+                    .append(" [-Wunused-variable]\r\n")
+                    .append("     int tmp").append(i).append(" = 0;\r\n")
+                    .append("         \033[1;32m^\033[0m\r\n");
+        }
+        replay("compiler output", out.toString().getBytes("UTF-8"));
+    }
+
+    private void replay(String name, byte[] data) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runOnce(data);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            best = Math.min(best, runOnce(data));
+        }
+        double megabytesPerSecond = (data.length / 1048576.0) / (best / 1e9);
+        Log.i(TAG, String.format("%s: %d bytes, %.2f MB/s", name, data.length,
+                megabytesPerSecond));
+        assertTrue(megabytesPerSecond > 0);
+    }
+
+    private long runOnce(byte[] data) {
+        TermSession session = new MockTermSession();
+        TranscriptScreen screen = new TranscriptScreen(COLUMNS, TRANSCRIPT_ROWS,
+                ROWS, BaseTextRenderer.defaultColorScheme);
+        TerminalEmulator emulator = new TerminalEmulator(session, screen,
+                COLUMNS, ROWS, BaseTextRenderer.defaultColorScheme);
+        emulator.setDefaultUTF8Mode(true);
+
+        long start = System.nanoTime();
+        for (int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+            emulator.append(data, offset, Math.min(CHUNK_SIZE, data.length - offset));
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,242 @@
+package jackpal.androidterm.emulatorview;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+/**
+ * Replays recorded pty output through TerminalEmulator and TranscriptScreen,
+ * without any views, and checks the final screen against a snapshot.  Also
+ * logs the parse throughput, the memory allocated while parsing, and the
+ * cost of resizing the screen afterwards, so that changes to the emulator
+ * core can be compared trace by trace.
+ * <p>
+ * The traces live in the traces/ directory next to this class.  The
+ * vt100-* traces exercise the same sequences as vttest's cursor movement,
+ * scrolling and character set screens; the others were recorded from vim,
+ * less, top and ls running in an 80x24 pty with TERM=screen (vim and less
+ * are cut off before they quit, so the snapshot isn't a blank screen).  Each
+ * name.trace has a name.screen snapshot holding the cursor position, the
+ * text of every row and the style runs of rows which aren't in the default
+ * style.  If a change to the emulator is meant to alter a snapshot, replace
+ * the file with the actual snapshot from the failure message.
+ * <p>
+ * This is a plain JUnit test which only uses the emulator core, so it runs on
+ * a desktop JVM as well as on a device.  East Asian character widths come
+ * from the platform, and without Android every character is one column
+ * wide; a trace whose screen depends on those widths also has a
+ * name.wide.screen snapshot, which is used where the platform knows them.  The allocation figure needs
+ * com.sun.management.ThreadMXBean, and is left out where it isn't available.
+ */
+public class EmulatorTraceTest extends TestCase {
+    private static final String TAG = "EmulatorTraceTest";
+
+    private static final int COLUMNS = 80;
+    private static final int ROWS = 24;
+    private static final int TRANSCRIPT_ROWS = 2000;
+    private static final int CHUNK_SIZE = 4096;
+
+    // Each timed run replays the trace until at least this much is parsed
+    private static final int MIN_BYTES_PER_RUN = 1024 * 1024;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+
+    // Screen sizes cycled through when timing resizes, ending where we started
+    private static final int[][] RESIZE_SIZES = {
+        { 100, 40 }, { 60, 20 }, { 132, 50 }, { 40, 12 }, { COLUMNS, ROWS }
+    };
+    private static final int RESIZE_ITERATIONS = 20;
+
+    // The colors of BaseTextRenderer.defaultColorScheme, without loading the
+    // renderer's graphics classes
+    private static final ColorScheme COLOR_SCHEME = new ColorScheme(0xffcccccc, 0xff000000);
+
+    public void testVt100Cursor() throws IOException {
+        checkTrace("vt100-cursor");
+    }
+
+    public void testVt100Edit() throws IOException {
+        checkTrace("vt100-edit");
+    }
+
+    public void testVt100Attributes() throws IOException {
+        checkTrace("vt100-attrs");
+    }
+
+    public void testVim() throws IOException {
+        checkTrace("vim");
+    }
+
+    public void testLess() throws IOException {
+        checkTrace("less");
+    }
+
+    public void testTop() throws IOException {
+        checkTrace("top");
+    }
+
+    public void testLs() throws IOException {
+        checkTrace("ls");
+    }
+
+    private void checkTrace(String name) throws IOException {
+        byte[] trace = readResource(name + ".trace");
+        String screen = name + ".screen";
+        if (UnicodeTranscript.charWidth('\u4e2d') == 2
+                && getClass().getResource("traces/" + name + ".wide.screen") != null) {
+            screen = name + ".wide.screen";
+        }
+        String expected = new String(readResource(screen), "UTF-8");
+
+        TerminalEmulator emulator = newEmulator();
+        replay(emulator, trace, 1);
+        assertEquals(name, expected, snapshot(emulator));
+
+        int repeat = Math.max(1, MIN_BYTES_PER_RUN / trace.length);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            replay(newEmulator(), trace, repeat);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            best = Math.min(best, replay(newEmulator(), trace, repeat));
+        }
+        double megabytes = (double) trace.length * repeat / 1048576.0;
+        double megabytesPerSecond = megabytes / (best / 1e9);
+
+        emulator = newEmulator();
+        long allocatedBefore = threadAllocatedBytes();
+        replay(emulator, trace, repeat);
+        long allocated = threadAllocatedBytes() - allocatedBefore;
+
+        long resizeStart = System.nanoTime();
+        for (int i = 0; i < RESIZE_ITERATIONS; i++) {
+            for (int[] size : RESIZE_SIZES) {
+                emulator.updateSize(size[0], size[1]);
+            }
+        }
+        double resizeMicros = (System.nanoTime() - resizeStart) / 1e3
+                / (RESIZE_ITERATIONS * RESIZE_SIZES.length);
+
+        String allocation = (allocatedBefore < 0) ? "allocation not measured"
+                : String.format("%d KiB allocated per MiB",
+                        (long) (allocated / 1024 / megabytes));
+        System.out.println(String.format("%s: %s: %d bytes, %.2f MB/s, %s,"
+                + " %.1f us per resize", TAG, name, trace.length, megabytesPerSecond,
+                allocation, resizeMicros));
+        assertTrue(megabytesPerSecond > 0);
+    }
+
+    private TerminalEmulator newEmulator() {
+        TranscriptScreen screen = new TranscriptScreen(COLUMNS, TRANSCRIPT_ROWS, ROWS,
+                COLOR_SCHEME);
+        TerminalEmulator emulator = new TerminalEmulator(new FakeTermSession(), screen,
+                COLUMNS, ROWS, COLOR_SCHEME);
+        emulator.setDefaultUTF8Mode(true);
+        return emulator;
+    }
+
+    /**
+     * The bytes allocated by the current thread so far, from
+     * com.sun.management.ThreadMXBean, which is looked up by reflection
+     * because Android has neither it nor java.lang.management.
+     *
+     * @return The number of bytes, or -1 if it can't be measured.
+     */
+    private static long threadAllocatedBytes() {
+        try {
+            Object bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Method method = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            Object result = method.invoke(bean, Thread.currentThread().getId());
+            return ((Long) result).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A session which is never started, and drops the emulator's replies.
+     */
+    private static class FakeTermSession extends TermSession {
+        @Override
+        public void write(byte[] data, int offset, int count) {
+        }
+    }
+
+    /**
+     * Feed the trace to the emulator in pty-sized chunks.
+     *
+     * @return The time taken, in nanoseconds.
+     */
+    private long replay(TerminalEmulator emulator, byte[] trace, int repeat) {
+        long start = System.nanoTime();
+        for (int i = 0; i < repeat; i++) {
+            for (int offset = 0; offset < trace.length; offset += CHUNK_SIZE) {
+                emulator.append(trace, offset, Math.min(CHUNK_SIZE, trace.length - offset));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private String snapshot(TerminalEmulator emulator) {
+        TranscriptScreen screen = emulator.getScreen();
+        StringBuilder text = new StringBuilder();
+        StringBuilder styles = new StringBuilder();
+        text.append("cursor ").append(emulator.getCursorRow()).append(' ')
+                .append(emulator.getCursorCol()).append('\n');
+        for (int row = 0; row < ROWS; row++) {
+            GrowableIntArray colors = new GrowableIntArray(COLUMNS);
+            text.append('|').append(screen.getSelectedText(colors, 0, row, COLUMNS, row))
+                    .append("|\n");
+            appendStyleRuns(styles, row, colors);
+        }
+        return text.append(styles).toString();
+    }
+
+    /* Describe the styles of a row as runs of "count*style", skipping rows
+       which are entirely in the default style */
+    private void appendStyleRuns(StringBuilder out, int row, GrowableIntArray colors) {
+        int length = colors.length();
+        boolean plain = true;
+        for (int i = 0; i < length; i++) {
+            if (colors.at(i) != TextStyle.kNormalTextStyle) {
+                plain = false;
+                break;
+            }
+        }
+        if (plain) {
+            return;
+        }
+        out.append("style ").append(row).append(':');
+        for (int i = 0; i < length; ) {
+            int style = colors.at(i);
+            int run = 1;
+            while (i + run < length && colors.at(i + run) == style) {
+                run++;
+            }
+            out.append(' ').append(run).append('*').append(Integer.toHexString(style));
+            i += run;
+        }
+        out.append('\n');
+    }
+
+    private byte[] readResource(String name) throws IOException {
+        InputStream in = getClass().getResourceAsStream("traces/" + name);
+        assertNotNull("Missing resource traces/" + name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package jackpal.androidterm.emulatorview;
+
+import java.util.ArrayList;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Checks the URLs LinkIndex's scanner finds in some sample text.
+ */
+public class LinkIndexTest extends AndroidTestCase {
+    public void testFindsUrls() {
+        assertUrls("see http://example.com/path?x=1. and more",
+                "http://example.com/path?x=1");
+        assertUrls("https://a.b.co/x_(y)", "https://a.b.co/x_(y)");
+        assertUrls("xhttp://foo.org, then", "http://foo.org");
+        assertUrls("http://10.0.0.1:8080/a", "http://10.0.0.1:8080/a");
+        assertUrls("http://user:pw@host.example.net/",
+                "http://user:pw@host.example.net/");
+        assertUrls("https://sub.domain.io:443 and http://two.com/",
+                "https://sub.domain.io:443", "http://two.com/");
+        assertUrls("http://\u4f8b\u3048.\u30c6\u30b9\u30c8/ end",
+                "http://\u4f8b\u3048.\u30c6\u30b9\u30c8");
+    }
+
+    public void testIgnoresNonUrls() {
+        assertUrls("http://localhost:80/");
+        assertUrls("http://exa mple.com");
+        assertUrls("ftp://example.com");
+        assertUrls("http://ex..com");
+        assertUrls("http://x.c");
+        assertUrls("HTTP://example.com");
+    }
+
+    private void assertUrls(String text, String... expected) {
+        ArrayList<String> found = new ArrayList<String>();
+        int[] bounds = new int[2];
+        int from = 0;
+        while (LinkIndex.findUrl(text, from, bounds)) {
+            found.add(text.substring(bounds[0], bounds[1]));
+            from = bounds[1];
+        }
+        assertEquals(text, expected.length, found.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(text, expected[i], found.get(i));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package jackpal.androidterm.emulatorview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Checks that lines come back out of a ScrollbackBuffer the way they went
+ * in, across page boundaries, dropped lines and compression, and logs how
+ * much memory a large transcript takes.
+ */
+public class ScrollbackBufferTest extends AndroidTestCase {
+    private static final String TAG = "ScrollbackBufferTest";
+
+    private static final int COLUMNS = 40;
+    private static final int OPERATIONS = 20000;
+    private static final int TRANSCRIPT_LINES = 100000;
+
+    public void testRoundTrip() {
+        Random random = new Random(1);
+        int capacity = 500;
+        ScrollbackBuffer buffer = new ScrollbackBuffer(COLUMNS, capacity);
+        ArrayList<String> expected = new ArrayList<String>();
+        for (int op = 0; op < OPERATIONS; op++) {
+            int action = random.nextInt(100);
+            if (action < 75) {
+                Object line = randomLine(random);
+                StyleRow color = randomColor(random);
+                boolean wrap = random.nextBoolean();
+                buffer.push(line, color, wrap);
+                expected.add(describe(line, color, wrap));
+                while (expected.size() > capacity) {
+                    expected.remove(0);
+                }
+            } else if (action < 85 && expected.size() > 0) {
+                buffer.removeNewest();
+                expected.remove(expected.size() - 1);
+            } else if (action < 95) {
+                buffer.compact(random.nextInt(4));
+            } else if (action < 96) {
+                capacity = 1 + random.nextInt(1000);
+                buffer.setCapacity(capacity);
+                while (expected.size() > capacity) {
+                    expected.remove(0);
+                }
+            }
+
+            assertEquals(expected.size(), buffer.getRows());
+            for (int i = 0; i < 3 && expected.size() > 0; i++) {
+                int row = random.nextInt(expected.size());
+                assertEquals("operation " + op + " row " + row,
+                        expected.get(row), describe(buffer.getLine(row),
+                                buffer.getLineColor(row), buffer.getLineWrap(row)));
+            }
+        }
+    }
+
+    public void testTranscriptCompaction() {
+        TranscriptScreen screen = new TranscriptScreen(80, TRANSCRIPT_LINES + 24,
+                24, BaseTextRenderer.defaultColorScheme);
+        TerminalEmulator emulator = new TerminalEmulator(new MockTermSession(),
+                screen, 80, 24, BaseTextRenderer.defaultColorScheme);
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        for (int i = 0; i < TRANSCRIPT_LINES; i++) {
+            byte[] data = ("-rw-r--r-- 1 user group  12345 Oct 17 10:0" + (i % 10)
+                    + " \033[32mfile_" + i + ".txt\033[m\r\n").getBytes();
+            emulator.append(data, 0, data.length);
+        }
+        System.gc();
+        long filled = runtime.totalMemory() - runtime.freeMemory();
+        String text = screen.getTranscriptText();
+
+        while (screen.compactTranscript(8)) {
+        }
+        System.gc();
+        long compacted = runtime.totalMemory() - runtime.freeMemory();
+
+        // The cursor is left on a blank line at the bottom of the screen
+        assertEquals(TRANSCRIPT_LINES + 1 - 24, screen.getActiveTranscriptRows());
+        assertEquals(text, screen.getTranscriptText());
+        Log.i(TAG, String.format("%d lines: %.1f MB, %.1f MB compacted",
+                TRANSCRIPT_LINES, (filled - before) / 1e6,
+                (compacted - before) / 1e6));
+    }
+
+    private static Object randomLine(Random random) {
+        switch (random.nextInt(3)) {
+        case 0:
+            return null;
+        case 1:
+            char[] line = new char[COLUMNS];
+            Arrays.fill(line, ' ');
+            int length = random.nextInt(COLUMNS);
+            for (int i = 0; i < length; i++) {
+                line[i] = (char) ('a' + random.nextInt(26));
+            }
+            return line;
+        default:
+            FullUnicodeLine fullLine = new FullUnicodeLine(COLUMNS);
+            for (int i = 0; i < 10; i++) {
+                int codePoint = random.nextBoolean() ? 0x4e2d : 0x1f600;
+                fullLine.setChar(random.nextInt(COLUMNS - 1), codePoint);
+            }
+            return fullLine;
+        }
+    }
+
+    private static StyleRow randomColor(Random random) {
+        if (random.nextInt(5) == 0) {
+            return null;
+        }
+        StyleRow color = new StyleRow(random.nextInt(3), COLUMNS);
+        int runs = random.nextInt(4);
+        for (int i = 0; i < runs; i++) {
+            int column = random.nextInt(COLUMNS);
+            int count = Math.min(1 + random.nextInt(4), COLUMNS - column);
+            color.set(column, count, random.nextInt(5));
+        }
+        return color;
+    }
+
+    private static String describe(Object line, StyleRow color, boolean wrap) {
+        StringBuilder builder = new StringBuilder();
+        if (line == null) {
+            builder.append("blank");
+        } else if (line instanceof char[]) {
+            builder.append("basic ").append((char[]) line);
+        } else {
+            FullUnicodeLine fullLine = (FullUnicodeLine) line;
+            builder.append("full ").append(fullLine.getLine(), 0, fullLine.getSpaceUsed());
+        }
+        builder.append(" |");
+        if (color != null) {
+            for (int i = 0; i < COLUMNS; i++) {
+                builder.append(' ').append(color.get(i));
+            }
+        }
+        return builder.append(" | ").append(wrap).toString();
+    }
+}
@@ -0,0 +1,68 @@
+package jackpal.androidterm.emulatorview;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Checks the hooks which let a subclass do a session's I/O itself, instead
+ * of with its own reader and writer threads.
+ */
+public class TermSessionIoTest extends AndroidTestCase {
+    private static class PolledSession extends TermSession {
+        PolledSession() {
+            super(true);
+        }
+
+        @Override
+        protected void startIo() {
+            // The test moves the data
+        }
+
+        @Override
+        protected void onOutputQueued() {
+        }
+
+        @Override
+        protected void stopIo() {
+        }
+
+        int input(byte[] data, int offset, int count) {
+            return queueInput(data, offset, count);
+        }
+
+        int output(byte[] buffer, int offset, int count) {
+            return takeOutput(buffer, offset, count);
+        }
+    }
+
+    private PolledSession mSession;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSession = new PolledSession();
+        mSession.initializeEmulator(80, 24);
+    }
+
+    public void testTakeOutput() {
+        byte[] buffer = new byte[16];
+        assertEquals(0, mSession.output(buffer, 0, buffer.length));
+        mSession.write("ls -l\r");
+        assertEquals(6, mSession.output(buffer, 2, 10));
+        assertEquals("ls -l\r", new String(buffer, 2, 6));
+        assertEquals(0, mSession.output(buffer, 0, buffer.length));
+    }
+
+    public void testQueueInputDoesNotBlockWhenFull() {
+        mSession.setVisible(false);
+        byte[] chunk = new byte[60 * 1024];
+        int total = 0;
+        int queued;
+        do {
+            queued = mSession.input(chunk, 0, chunk.length);
+            total += queued;
+        } while (queued == chunk.length);
+        assertTrue(queued < chunk.length);
+        assertEquals(0, mSession.input(chunk, 0, 1));
+        assertTrue(total > 0);
+    }
+}
@@ -0,0 +1,66 @@
+package jackpal.androidterm.emulatorview;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Checks that streaming the transcript to a Writer gives the same text as
+ * the String API, and that colors are marked up in ANSI and HTML exports.
+ */
+public class TranscriptExportTest extends AndroidTestCase {
+    private TranscriptScreen mScreen;
+    private TerminalEmulator mEmulator;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mScreen = new TranscriptScreen(20, 200, 5, BaseTextRenderer.defaultColorScheme);
+        mEmulator = new TerminalEmulator(new MockTermSession(), mScreen, 20, 5,
+                BaseTextRenderer.defaultColorScheme);
+    }
+
+    public void testPlainTextMatchesTranscriptText() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            append("line " + i + " \033[31mred\033[m <&>\r\n");
+        }
+        append("a line long enough to wrap around\r\n中文\r\n");
+        assertEquals(mScreen.getTranscriptText(), export(TermSession.EXPORT_TEXT));
+    }
+
+    public void testSelection() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            append("row " + i + "\r\n");
+        }
+        StringWriter out = new StringWriter();
+        mScreen.exportSelectedText(out, TermSession.EXPORT_TEXT,
+                BaseTextRenderer.defaultColorScheme, 2, -3, 2, 1);
+        assertEquals(mScreen.getSelectedText(2, -3, 2, 1), out.toString());
+    }
+
+    public void testAnsi() throws IOException {
+        append("plain \033[1;32mgreen\033[m plain");
+        // The rest of the five row screen is blank
+        assertEquals("plain \033[0;1;32mgreen\033[0m plain\n\n\n\n",
+                export(TermSession.EXPORT_ANSI));
+    }
+
+    public void testHtml() throws IOException {
+        append("<b> \033[4;31mred\033[m");
+        String html = export(TermSession.EXPORT_HTML);
+        assertTrue(html, html.contains("&lt;b&gt; <span style=\"color:#cd0000;"
+                + "background-color:#000000;text-decoration:underline\">red</span>"));
+    }
+
+    private void append(String text) {
+        byte[] data = text.getBytes();
+        mEmulator.append(data, 0, data.length);
+    }
+
+    private String export(int format) throws IOException {
+        StringWriter out = new StringWriter();
+        mScreen.exportTranscript(out, format, BaseTextRenderer.defaultColorScheme);
+        return out.toString();
+    }
+}
@@ -12,24 +12,23 @@ import android.content.Context;
 
 import com.grarak.kerneladiutor.utils.Utils;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * main application class
  */
 public class CpuSpyApp extends Application {
 
-    private final String PREF_OFFSETS;
+    private static final String PREF_OFFSETS = "offsets";
 
     /**
      * the long-living object used to monitor the system frequency states
      */
     private final CpuStateMonitor _monitor;
 
-    public CpuSpyApp(int core) {
-        PREF_OFFSETS = "offsets" + core;
-        _monitor = new CpuStateMonitor(core);
+    /**
+     * @param cores one core of every cluster to monitor
+     */
+    public CpuSpyApp(int... cores) {
+        _monitor = new CpuStateMonitor(cores);
     }
 
     /**
@@ -50,35 +49,45 @@ public class CpuSpyApp extends Application {
     }
 
     /**
-     * Load the saved string of offsets from preferences and put it into the
-     * state monitor
+     * Load the saved string of offsets of every cluster from preferences and put
+     * it into the state monitor
      */
     public void loadOffsets(Context context) {
-        String prefs = Utils.getString(PREF_OFFSETS, "", context);
-
-        if (prefs.length() < 1) return;
-
-        // split the string by peroids and then the info by commas and load
-        Map<Integer, Long> offsets = new HashMap<>();
-        String[] sOffsets = prefs.split(",");
-        for (String offset : sOffsets) {
-            String[] parts = offset.split(" ");
-            offsets.put(Utils.stringToInt(parts[0]), Utils.stringToLong(parts[1]));
+        for (int cluster = 0; cluster < _monitor.getClusterCount(); cluster++) {
+            String prefs = Utils.getString(PREF_OFFSETS + _monitor.getCore(cluster), "", context);
+
+            if (prefs.length() < 1) continue;
+
+            // split the string by commas and then the info by spaces and load
+            String[] sOffsets = prefs.split(",");
+            int[] freqs = new int[sOffsets.length];
+            long[] offsets = new long[sOffsets.length];
+            for (int i = 0; i < sOffsets.length; i++) {
+                String[] parts = sOffsets[i].split(" ");
+                if (parts.length < 2) continue;
+                freqs[i] = Utils.stringToInt(parts[0]);
+                offsets[i] = Utils.stringToLong(parts[1]);
+            }
+
+            _monitor.setOffsets(cluster, freqs, offsets);
         }
-
-        _monitor.setOffsets(offsets);
     }
 
     /**
-     * Save the state-time offsets as a string e.g. "100 24, 200 251, 500 124
-     * etc
+     * Save the state-time offsets of every cluster as a string e.g. "100 24,
+     * 200 251, 500 124 etc
      */
     public void saveOffsets(Context context) {
-        // build the string by iterating over the freq->duration map
-        String str = "";
-        for (Map.Entry<Integer, Long> entry : _monitor.getOffsets().entrySet())
-            str += entry.getKey() + " " + entry.getValue() + ",";
-
-        Utils.saveString(PREF_OFFSETS, str, context);
+        for (int cluster = 0; cluster < _monitor.getClusterCount(); cluster++) {
+            // build the string by iterating over the states
+            StringBuilder str = new StringBuilder();
+            for (int state = 0; state < _monitor.getStateCount(cluster); state++) {
+                long offset = _monitor.getOffset(cluster, state);
+                if (offset > 0)
+                    str.append(_monitor.getFreq(cluster, state)).append(" ").append(offset).append(",");
+            }
+
+            Utils.saveString(PREF_OFFSETS + _monitor.getCore(cluster), str.toString(), context);
+        }
     }
 }
@@ -8,35 +8,40 @@
 package com.bvalosek.cpuspy;
 
 import android.os.SystemClock;
-import android.support.annotation.NonNull;
 
 import com.grarak.kerneladiutor.utils.Constants;
 import com.grarak.kerneladiutor.utils.Utils;
 import com.grarak.kerneladiutor.utils.kernel.CPU;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * CpuStateMonitor is a class responsible for querying the system and getting
  * the time-in-state information, as well as allowing the user to set/reset
  * offsets to "restart" the state timers
+ * <p/>
+ * One monitor reads the time-in-state files of several clusters. Every cluster keeps
+ * its states in arrays indexed the same way, the highest frequency first and deep
+ * sleep (frequency 0) last. The arrays are only rebuilt if the frequency table changes.
  */
 public class CpuStateMonitor {
 
-    private final int core;
+    private final int[] cores;
+    private final Cluster[] clusters;
 
-    private final List<CpuState> _states = new ArrayList<>();
-    private Map<Integer, Long> _offsets = new HashMap<>();
+    // Lines of the last file read, in file order
+    private byte[] buffer = new byte[1024];
+    private int[] readFreqs = new int[32];
+    private long[] readTimes = new long[32];
+    private int readCount;
 
-    public CpuStateMonitor(int core) {
-        this.core = core;
+    public CpuStateMonitor(int... cores) {
+        this.cores = cores;
+        clusters = new Cluster[cores.length];
+        for (int i = 0; i < clusters.length; i++) clusters[i] = new Cluster();
     }
 
     /**
@@ -53,160 +58,259 @@ public class CpuStateMonitor {
         }
     }
 
-    /**
-     * simple struct for states/time
-     */
-    public class CpuState implements Comparable<CpuState> {
-        /**
-         * init with freq and duration
-         */
-        public CpuState(int a, long b) {
-            freq = a;
-            duration = b;
-        }
+    private static class Cluster {
+        private int[] freqs = new int[0];
+        // times in 10ms as read from the kernel, and when the timers were "restarted"
+        private long[] times = new long[0];
+        private long[] lastTimes = new long[0];
+        private long[] offsets = new long[0];
+        // line of the file -> state
+        private int[] fileOrder = new int[0];
 
-        public int freq = 0;
-        public long duration = 0;
-
-        /**
-         * for sorting, compare the freqs
-         */
-        public int compareTo(@NonNull CpuState state) {
-            Integer a = freq;
-            Integer b = state.freq;
-            return a.compareTo(b);
-        }
+        // Offsets set before the frequency table was known
+        private int[] savedFreqs;
+        private long[] savedOffsets;
     }
 
     /**
-     * @return List of CpuState with the offsets applied
+     * @return number of clusters, in the order of the cores passed to the constructor
      */
-    public List<CpuState> getStates() {
-        List<CpuState> states = new ArrayList<>();
+    public int getClusterCount() {
+        return clusters.length;
+    }
 
-        /*
-         * check for an existing offset, and if it's not too big, subtract it
-         * from the duration, otherwise just add it to the return List
-         */
-        for (CpuState state : _states) {
-            long duration = state.duration;
-            if (_offsets.containsKey(state.freq)) {
-                long offset = _offsets.get(state.freq);
-                if (offset <= duration) {
-                    duration -= offset;
-                } else {
-                    /*
-                     * offset > duration implies our offsets are now invalid, so
-                     * clear and recall this function
-                     */
-                    _offsets.clear();
-                    return getStates();
-                }
-            }
+    public int getCore(int cluster) {
+        return cores[cluster];
+    }
 
-            states.add(new CpuState(state.freq, duration));
-        }
+    /**
+     * @return number of states including deep sleep, 0 if they haven't been read yet
+     */
+    public int getStateCount(int cluster) {
+        return clusters[cluster].freqs.length;
+    }
 
-        return states;
+    /**
+     * @return frequency of the state, 0 for deep sleep
+     */
+    public int getFreq(int cluster, int state) {
+        return clusters[cluster].freqs[state];
     }
 
     /**
-     * @return Sum of all state durations including deep sleep, accounting for
-     * offsets
+     * @return time spent in the state since the offsets were set, in 10ms
      */
-    public long getTotalStateTime() {
-        long sum = 0;
-        long offset = 0;
+    public long getDuration(int cluster, int state) {
+        Cluster c = clusters[cluster];
+        return c.times[state] - c.offsets[state];
+    }
 
-        for (CpuState state : _states) sum += state.duration;
-        for (Map.Entry<Integer, Long> entry : _offsets.entrySet()) offset += entry.getValue();
+    /**
+     * @return time spent in the state between the last two updates, in 10ms
+     */
+    public long getDelta(int cluster, int state) {
+        Cluster c = clusters[cluster];
+        return c.times[state] - c.lastTimes[state];
+    }
 
-        return sum - offset;
+    public long getOffset(int cluster, int state) {
+        return clusters[cluster].offsets[state];
     }
 
     /**
-     * @return Map of freq->duration of all the offsets
+     * @return Sum of all state durations including deep sleep, accounting for
+     * offsets
      */
-    public Map<Integer, Long> getOffsets() {
-        return _offsets;
+    public long getTotalStateTime(int cluster) {
+        long sum = 0;
+        for (int state = 0; state < getStateCount(cluster); state++)
+            sum += getDuration(cluster, state);
+        return sum;
     }
 
     /**
-     * Sets the offset map (freq->duration offset)
+     * Sets the offsets of a cluster (freq -> duration offset), e.g. the ones saved
+     * before. Frequencies which aren't in the table are ignored.
      */
-    public void setOffsets(Map<Integer, Long> offsets) {
-        _offsets = offsets;
+    public void setOffsets(int cluster, int[] freqs, long[] offsets) {
+        Cluster c = clusters[cluster];
+        c.savedFreqs = freqs;
+        c.savedOffsets = offsets;
+        applySavedOffsets(c);
     }
 
     /**
-     * Updates the current time in states and then sets the offset map to the
-     * current duration, effectively "zeroing out" the timers
+     * Updates the current time in states and then sets the offsets to the
+     * current durations, effectively "zeroing out" the timers
      */
     public void setOffsets() throws CpuStateMonitorException {
-        _offsets.clear();
         updateStates();
-
-        for (CpuState state : _states) _offsets.put(state.freq, state.duration);
+        for (Cluster c : clusters) {
+            System.arraycopy(c.times, 0, c.offsets, 0, c.times.length);
+            c.savedFreqs = null;
+            c.savedOffsets = null;
+        }
     }
 
     /**
      * removes state offsets
      */
     public void removeOffsets() {
-        _offsets.clear();
+        for (Cluster c : clusters) {
+            Arrays.fill(c.offsets, 0);
+            c.savedFreqs = null;
+            c.savedOffsets = null;
+        }
     }
 
     /**
-     * list of all the CPU frequency states, which contains both a
-     * frequency and a duration (time spent in that state
+     * Reads the time in states of all clusters
      */
     public void updateStates() throws CpuStateMonitorException {
-        _states.clear();
-        try {
-            String file;
-            if (Utils.existFile(String.format(Constants.CPU_TIME_STATE, core))) {
-                file = String.format(Constants.CPU_TIME_STATE, core);
-            } else {
-                if (core > 0) {
-                    CPU.activateCore(core, true, null);
-                    file = String.format(Constants.CPU_TIME_STATE_2, core);
-                } else file = String.format(Constants.CPU_TIME_STATE_2, 0);
-            }
-            if (file == null)
-                throw new CpuStateMonitorException("Problem opening time-in-states file");
-            FileReader fileReader = new FileReader(file);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
-            readInStates(bufferedReader);
-            fileReader.close();
-            bufferedReader.close();
-        } catch (Exception e) {
-            throw new CpuStateMonitorException("Problem opening time-in-states file");
-        }
-
         /*
          * deep sleep time determined by difference between elapsed (total) boot
          * time and the system uptime (awake)
          */
         long sleepTime = (SystemClock.elapsedRealtime() - SystemClock.uptimeMillis()) / 10;
-        _states.add(new CpuState(0, sleepTime));
 
-        Collections.sort(_states, Collections.reverseOrder());
+        String failed = null;
+        for (int i = 0; i < clusters.length; i++) {
+            try {
+                readFile(getFile(cores[i]));
+            } catch (IOException e) {
+                failed = failed == null ? String.valueOf(cores[i]) : failed + ", " + cores[i];
+                continue;
+            }
+            update(clusters[i], sleepTime);
+        }
+        if (failed != null)
+            throw new CpuStateMonitorException("Problem opening time-in-states file of core " + failed);
     }
 
-    /**
-     * read from a provided BufferedReader the state lines into the States
-     * member field
+    private String getFile(int core) {
+        if (Utils.existFile(String.format(Constants.CPU_TIME_STATE, core)))
+            return String.format(Constants.CPU_TIME_STATE, core);
+        if (core > 0) {
+            CPU.activateCore(core, true, null);
+            return String.format(Constants.CPU_TIME_STATE_2, core);
+        }
+        return String.format(Constants.CPU_TIME_STATE_2, 0);
+    }
+
+    private void update(Cluster c, long sleepTime) {
+        if (!sameTable(c)) buildTable(c);
+
+        System.arraycopy(c.times, 0, c.lastTimes, 0, c.times.length);
+        for (int line = 0; line < readCount; line++) c.times[c.fileOrder[line]] = readTimes[line];
+        c.times[c.times.length - 1] = sleepTime;
+
+        /*
+         * offset > duration implies our offsets are now invalid (we rebooted),
+         * so clear them
+         */
+        for (int state = 0; state < c.times.length; state++)
+            if (c.offsets[state] > c.times[state]) {
+                Arrays.fill(c.offsets, 0);
+                break;
+            }
+    }
+
+    private boolean sameTable(Cluster c) {
+        if (c.freqs.length != readCount + 1) return false;
+        for (int line = 0; line < readCount; line++)
+            if (c.freqs[c.fileOrder[line]] != readFreqs[line]) return false;
+        return true;
+    }
+
+    private void buildTable(Cluster c) {
+        // Keep the offsets of the frequencies which are still there
+        if (c.savedFreqs == null && c.freqs.length > 0) {
+            c.savedFreqs = c.freqs;
+            c.savedOffsets = c.offsets;
+        }
+
+        int states = readCount + 1;
+        c.freqs = new int[states];
+        c.times = new long[states];
+        c.lastTimes = new long[states];
+        c.offsets = new long[states];
+        c.fileOrder = new int[readCount];
+
+        // Sort the lines by frequency, highest first
+        Integer[] lines = new Integer[readCount];
+        for (int line = 0; line < readCount; line++) lines[line] = line;
+        Arrays.sort(lines, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return readFreqs[rhs] < readFreqs[lhs] ? -1 : (readFreqs[rhs] == readFreqs[lhs] ? 0 : 1);
+            }
+        });
+        for (int state = 0; state < readCount; state++) {
+            c.freqs[state] = readFreqs[lines[state]];
+            c.fileOrder[lines[state]] = state;
+        }
+
+        applySavedOffsets(c);
+    }
+
+    private void applySavedOffsets(Cluster c) {
+        if (c.savedFreqs == null || c.freqs.length == 0) return;
+        Arrays.fill(c.offsets, 0);
+        for (int i = 0; i < c.savedFreqs.length; i++)
+            for (int state = 0; state < c.freqs.length; state++)
+                if (c.freqs[state] == c.savedFreqs[i]) {
+                    c.offsets[state] = c.savedOffsets[i];
+                    break;
+                }
+        c.savedFreqs = null;
+        c.savedOffsets = null;
+    }
+
+    /*
+     * Parse the "freq time" lines of a file into readFreqs and readTimes, without
+     * creating a String for every line
      */
-    private void readInStates(BufferedReader bufferedReader) throws CpuStateMonitorException {
+    private void readFile(String file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        int length = 0;
         try {
-            String line;
-            // split open line and convert to Integers
-            while ((line = bufferedReader.readLine()) != null) {
-                String[] nums = line.split(" ");
-                _states.add(new CpuState(Utils.stringToInt(nums[0]), Utils.stringToLong(nums[1])));
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+                if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        } finally {
+            in.close();
+        }
+
+        readCount = 0;
+        int i = 0;
+        while (i < length) {
+            long freq = 0;
+            long time = 0;
+            boolean hasFreq = false;
+            boolean hasTime = false;
+            while (i < length && buffer[i] == ' ') i++;
+            while (i < length && buffer[i] >= '0' && buffer[i] <= '9') {
+                freq = freq * 10 + buffer[i++] - '0';
+                hasFreq = true;
+            }
+            while (i < length && buffer[i] == ' ') i++;
+            while (i < length && buffer[i] >= '0' && buffer[i] <= '9') {
+                time = time * 10 + buffer[i++] - '0';
+                hasTime = true;
+            }
+            while (i < length && buffer[i] != '\n') i++;
+            i++;
+
+            if (!hasFreq || !hasTime) continue;
+            if (readCount == readFreqs.length) {
+                readFreqs = Arrays.copyOf(readFreqs, readCount * 2);
+                readTimes = Arrays.copyOf(readTimes, readCount * 2);
             }
-        } catch (IOException e) {
-            throw new CpuStateMonitorException("Problem processing time-in-states file");
+            readFreqs[readCount] = (int) freq;
+            readTimes[readCount] = time;
+            readCount++;
         }
     }
 
@@ -89,6 +89,7 @@ import com.grarak.kerneladiutor.utils.kernel.Screen;
 import com.grarak.kerneladiutor.utils.kernel.Sound;
 import com.grarak.kerneladiutor.utils.kernel.Thermal;
 import com.grarak.kerneladiutor.utils.kernel.Wake;
+import com.grarak.kerneladiutor.utils.root.Capabilities;
 import com.grarak.kerneladiutor.utils.tools.Backup;
 import com.grarak.kerneladiutor.utils.tools.Buildprop;
 import com.kerneladiutor.library.root.RootUtils;
@@ -400,6 +401,8 @@ public class MainActivity extends BaseActivity implements Constants {
                 for (String file : writePermission)
                     RootUtils.runCommand("chmod 644 " + file);
 
+                // Know which nodes exist before all the has*() checks
+                Capabilities.load(MainActivity.this);
                 setList();
             }
             return null;
@@ -40,6 +40,8 @@ import com.grarak.kerneladiutor.R;
 import com.grarak.kerneladiutor.elements.DAdapter;
 import com.grarak.kerneladiutor.utils.Constants;
 import com.grarak.kerneladiutor.utils.Utils;
+import com.grarak.kerneladiutor.utils.root.Control;
+import com.grarak.kerneladiutor.utils.root.SysfsCache;
 import com.nineoldandroids.view.ViewHelper;
 
 import java.util.ArrayList;
@@ -66,6 +68,17 @@ public class RecyclerViewFragment extends BaseFragment {
     protected View fabView;
     private Handler hand;
     private boolean firstOpening = true;
+    private SysfsCache.Stats sysfsStats;
+    private final RefreshScheduler refreshScheduler = new RefreshScheduler(this);
+
+    public interface OnRefreshListener {
+        /**
+         * Called on the UI thread when a value changed
+         *
+         * @param values values of the nodes, in the same order, empty if they couldn't be read
+         */
+        void onRefresh(String[] values);
+    }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, final Bundle savedInstanceState) {
@@ -425,6 +438,40 @@ public class RecyclerViewFragment extends BaseFragment {
         return false;
     }
 
+    /**
+     * Refresh a card while it is on screen, instead of doing it in {@link #onRefresh()}
+     *
+     * @param view     card
+     * @param rate     milliseconds between two reads
+     * @param listener updates the card
+     * @param paths    nodes the card shows
+     */
+    public void addRefresh(DAdapter.DView view, long rate, OnRefreshListener listener, String... paths) {
+        refreshScheduler.register(view, rate, listener, paths);
+    }
+
+    public void removeRefresh(DAdapter.DView view) {
+        refreshScheduler.unregister(view);
+    }
+
+    /**
+     * @return whether the card is added and at least partly visible
+     */
+    boolean isOnScreen(DAdapter.DView view) {
+        if (adapter == null || layoutManager == null || recyclerView == null
+                || recyclerView.getAdapter() != adapter) return false;
+        int position = adapter.DViews.indexOf(view);
+        if (position < 0) return false;
+
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (int i : layoutManager.findFirstVisibleItemPositions(null))
+            if (i != RecyclerView.NO_POSITION) first = Math.min(first, i);
+        for (int i : layoutManager.findLastVisibleItemPositions(null))
+            last = Math.max(last, i);
+        return position >= first && position <= last;
+    }
+
     private final Runnable run = new Runnable() {
         @Override
         public void run() {
@@ -439,12 +486,18 @@ public class RecyclerViewFragment extends BaseFragment {
     public void onResume() {
         super.onResume();
         if (hand != null) hand.post(run);
+        refreshScheduler.start();
+        sysfsStats = SysfsCache.getStats();
     }
 
     @Override
     public void onPause() {
         super.onPause();
         if (hand != null) hand.removeCallbacks(run);
+        refreshScheduler.stop();
+        if (sysfsStats != null)
+            Log.i(Constants.TAG, getClassName() + " sysfs reads: " + SysfsCache.getStats().since(sysfsStats));
+        Log.i(Constants.TAG, "Settings changes: " + Control.getStats());
     }
 
     @Override
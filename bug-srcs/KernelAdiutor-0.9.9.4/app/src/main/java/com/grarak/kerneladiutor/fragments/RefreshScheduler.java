@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 Willi Ye
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.grarak.kerneladiutor.fragments;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.grarak.kerneladiutor.elements.DAdapter;
+import com.grarak.kerneladiutor.utils.root.SysfsCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps the values of the cards of one {@link RecyclerViewFragment} up to date.
+ * <p/>
+ * Every tick, the nodes of the cards which are on screen and due are read together in
+ * the background. A card is only told about its values when one of them changed.
+ */
+class RefreshScheduler {
+
+    private static final long TICK = 250;
+
+    // Shared by all fragments, so only one batch of reads runs at a time
+    private static final ExecutorService reader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "RefreshScheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static class Entry {
+        private final DAdapter.DView view;
+        private final String[] paths;
+        private final long rate;
+        private final RecyclerViewFragment.OnRefreshListener listener;
+        private String[] values;
+        private long next;
+
+        private Entry(DAdapter.DView view, String[] paths, long rate, RecyclerViewFragment.OnRefreshListener listener) {
+            this.view = view;
+            this.paths = paths;
+            this.rate = rate;
+            this.listener = listener;
+        }
+    }
+
+    private final RecyclerViewFragment fragment;
+    private final Handler hand = new Handler(Looper.getMainLooper());
+    // Only touched on the UI thread
+    private final List<Entry> entries = new ArrayList<>();
+    private boolean running;
+    private boolean reading;
+
+    RefreshScheduler(RecyclerViewFragment fragment) {
+        this.fragment = fragment;
+    }
+
+    void register(DAdapter.DView view, long rate, RecyclerViewFragment.OnRefreshListener listener,
+                  String... paths) {
+        final Entry entry = new Entry(view, paths, rate, listener);
+        hand.post(new Runnable() {
+            @Override
+            public void run() {
+                entries.add(entry);
+                // The ticks stop while there is nothing to refresh
+                if (entries.size() == 1 && running && !reading) start();
+            }
+        });
+    }
+
+    void unregister(final DAdapter.DView view) {
+        hand.post(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = entries.size() - 1; i >= 0; i--)
+                    if (entries.get(i).view == view) entries.remove(i);
+            }
+        });
+    }
+
+    void start() {
+        running = true;
+        hand.removeCallbacks(tick);
+        hand.post(tick);
+    }
+
+    void stop() {
+        running = false;
+        hand.removeCallbacks(tick);
+    }
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            if (!running || reading || entries.isEmpty()) return;
+
+            long now = SystemClock.elapsedRealtime();
+            final List<Entry> due = new ArrayList<>();
+            final Set<String> paths = new LinkedHashSet<>();
+            for (Entry entry : entries)
+                if (entry.next <= now && fragment.isOnScreen(entry.view)) {
+                    due.add(entry);
+                    paths.addAll(Arrays.asList(entry.paths));
+                }
+            if (due.isEmpty()) {
+                hand.postDelayed(tick, TICK);
+                return;
+            }
+
+            reading = true;
+            reader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<String> list = new ArrayList<>(paths);
+                    List<String> values = SysfsCache.readAll(list);
+                    final Map<String, String> read = new HashMap<>();
+                    for (int i = 0; i < list.size(); i++)
+                        read.put(list.get(i), values.get(i) == null ? "" : values.get(i));
+
+                    hand.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            deliver(due, read);
+                        }
+                    });
+                }
+            });
+        }
+    };
+
+    private void deliver(List<Entry> due, Map<String, String> read) {
+        reading = false;
+        if (!running) return;
+
+        long now = SystemClock.elapsedRealtime();
+        for (Entry entry : due) {
+            entry.next = now + entry.rate;
+            String[] values = new String[entry.paths.length];
+            for (int i = 0; i < values.length; i++) values[i] = read.get(entry.paths[i]);
+            if (Arrays.equals(values, entry.values)) continue;
+
+            entry.values = values;
+            if (fragment.isAdded()) entry.listener.onRefresh(values);
+        }
+        hand.postDelayed(tick, TICK);
+    }
+
+}
@@ -54,8 +54,6 @@ public class FrequencyTableFragment extends RecyclerViewFragment implements Cons
     private CardViewItem.DCardView frequencyCard;
     private LinearLayout uiStatesView;
 
-    private CpuSpyApp cpuSpyAppLITTLE;
-
     private CardViewItem.DCardView uptimeCardLITTLE;
     private CardViewItem.DCardView additionalCardLITTLE;
     private CardViewItem.DCardView frequencyCardLITTLE;
@@ -104,7 +102,9 @@ public class FrequencyTableFragment extends RecyclerViewFragment implements Cons
     public void init(Bundle savedInstanceState) {
         super.init(savedInstanceState);
 
-        cpuSpyApp = new CpuSpyApp(CPU.getBigCore());
+        cpuSpyApp = CPU.isBigLITTLE() ? new CpuSpyApp(CPU.getBigCore(), CPU.getLITTLEcore())
+                : new CpuSpyApp(CPU.getBigCore());
+        cpuSpyApp.loadOffsets(getActivity());
 
         if (CPU.isBigLITTLE()) {
             DDivider bigDivider = new DDivider();
@@ -129,8 +129,6 @@ public class FrequencyTableFragment extends RecyclerViewFragment implements Cons
         addView(frequencyCard);
 
         if (CPU.isBigLITTLE()) {
-            cpuSpyAppLITTLE = new CpuSpyApp(CPU.getLITTLEcore());
-
             DDivider LITTLEDivider = new DDivider();
             LITTLEDivider.setText(getString(R.string.little).toUpperCase(Locale.getDefault()));
             addView(LITTLEDivider);
@@ -183,23 +181,10 @@ public class FrequencyTableFragment extends RecyclerViewFragment implements Cons
                     e.printStackTrace();
                 }
                 cpuSpyApp.saveOffsets(getActivity());
-
-                if (cpuSpyAppLITTLE != null) {
-                    try {
-                        cpuSpyAppLITTLE.getCpuStateMonitor().setOffsets();
-                    } catch (CpuStateMonitor.CpuStateMonitorException e) {
-                        e.printStackTrace();
-                    }
-                    cpuSpyAppLITTLE.saveOffsets(getActivity());
-                }
                 break;
             case R.id.menu_restore:
                 cpuSpyApp.getCpuStateMonitor().removeOffsets();
                 cpuSpyApp.saveOffsets(getActivity());
-                if (cpuSpyAppLITTLE != null) {
-                    cpuSpyAppLITTLE.getCpuStateMonitor().removeOffsets();
-                    cpuSpyAppLITTLE.saveOffsets(getActivity());
-                }
                 break;
         }
         updateView();
@@ -209,16 +194,18 @@ public class FrequencyTableFragment extends RecyclerViewFragment implements Cons
     }
 
     private void updateView() {
-        updateView(uiStatesView, cpuSpyApp, frequencyCard, uptimeCard, additionalCard);
-        if (cpuSpyAppLITTLE != null)
-            updateView(uiStatesViewLITTLE, cpuSpyAppLITTLE, frequencyCardLITTLE, uptimeCardLITTLE, additionalCardLITTLE);
+        CpuStateMonitor monitor = cpuSpyApp.getCpuStateMonitor();
+        updateView(uiStatesView, monitor, 0, frequencyCard, uptimeCard, additionalCard);
+        if (monitor.getClusterCount() > 1)
+            updateView(uiStatesViewLITTLE, monitor, 1, frequencyCardLITTLE, uptimeCardLITTLE, additionalCardLITTLE);
     }
 
     /**
      * Generate and update all UI elements
      */
-    private void updateView(LinearLayout uiStatesView, CpuSpyApp cpuSpyApp, CardViewItem.DCardView frequencyCard,
-                            CardViewItem.DCardView uptimeCard, CardViewItem.DCardView additionalCard) {
+    private void updateView(LinearLayout uiStatesView, CpuStateMonitor monitor, int cluster,
+                            CardViewItem.DCardView frequencyCard, CardViewItem.DCardView uptimeCard,
+                            CardViewItem.DCardView additionalCard) {
         if (!isAdded()) return;
         /**
          * Get the CpuStateMonitor from the app, and iterate over all states,
@@ -227,27 +214,30 @@ public class FrequencyTableFragment extends RecyclerViewFragment implements Cons
          */
         uiStatesView.removeAllViews();
         List<String> extraStates = new ArrayList<>();
-        for (CpuStateMonitor.CpuState state : cpuSpyApp.getCpuStateMonitor().getStates()) {
-            if (state.duration > 0) {
+        long total = monitor.getTotalStateTime(cluster);
+        for (int state = 0; state < monitor.getStateCount(cluster); state++) {
+            int freq = monitor.getFreq(cluster, state);
+            long duration = monitor.getDuration(cluster, state);
+            if (duration > 0) {
                 addView(frequencyCard);
                 try {
-                    generateStateRow(state, uiStatesView, cpuSpyApp.getCpuStateMonitor());
+                    generateStateRow(freq, duration, total, uiStatesView);
                 } catch (NullPointerException e) {
                     e.printStackTrace();
                 }
             } else
-                extraStates.add(state.freq == 0 ? getString(R.string.deep_sleep) : state.freq / 1000
+                extraStates.add(freq == 0 ? getString(R.string.deep_sleep) : freq / 1000
                         + getString(R.string.mhz));
         }
 
         // show the red warning label if no states found
-        if (cpuSpyApp.getCpuStateMonitor().getStates().size() == 0) {
+        if (monitor.getStateCount(cluster) == 0) {
             removeView(uptimeCard);
             removeView(frequencyCard);
         }
 
         // update the total state time
-        uptimeCard.setDescription(sToString(cpuSpyApp.getCpuStateMonitor().getTotalStateTime() / 100));
+        uptimeCard.setDescription(sToString(total / 100));
 
         // for all the 0 duration states, add the the Unused State area
         if (extraStates.size() > 0) {
@@ -284,20 +274,20 @@ public class FrequencyTableFragment extends RecyclerViewFragment implements Cons
      * View that corresponds to a CPU freq state row as specified by
      * the state parameter
      */
-    private void generateStateRow(CpuStateMonitor.CpuState state, ViewGroup parent, CpuStateMonitor monitor) {
+    private void generateStateRow(int freq, long duration, long total, ViewGroup parent) {
         // inflate the XML into a view in the parent
         LinearLayout layout = (LinearLayout) LayoutInflater.from(getActivity())
                 .inflate(R.layout.state_row, parent, false);
 
         // what percentage we've got
-        float per = (float) state.duration * 100 / monitor.getTotalStateTime();
+        float per = (float) duration * 100 / total;
         String sPer = (int) per + "%";
 
         // state name
-        String sFreq = state.freq == 0 ? getString(R.string.deep_sleep) : state.freq / 1000 + "MHz";
+        String sFreq = freq == 0 ? getString(R.string.deep_sleep) : freq / 1000 + "MHz";
 
         // duration
-        long tSec = state.duration / 100;
+        long tSec = duration / 100;
         String sDur = sToString(tSec);
 
         // map UI elements to objects
@@ -346,14 +336,7 @@ public class FrequencyTableFragment extends RecyclerViewFragment implements Cons
             try {
                 cpuSpyApp.getCpuStateMonitor().updateStates();
             } catch (CpuStateMonitor.CpuStateMonitorException e) {
-                Log.e(TAG, "FrequencyTable: Problem getting CPU states");
-            }
-            if (cpuSpyAppLITTLE != null) {
-                try {
-                    cpuSpyAppLITTLE.getCpuStateMonitor().updateStates();
-                } catch (CpuStateMonitor.CpuStateMonitorException e) {
-                    Log.e(TAG, "FrequencyTable: Problem getting CPU LITTLE states");
-                }
+                Log.e(TAG, "FrequencyTable: " + e.getMessage());
             }
             return null;
         }
@@ -18,7 +18,6 @@ package com.grarak.kerneladiutor.fragments.kernel;
 
 import android.content.Context;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.v7.widget.AppCompatCheckBox;
 import android.support.v7.widget.AppCompatTextView;
 import android.view.View;
@@ -40,6 +39,7 @@ import com.grarak.kerneladiutor.fragments.ViewPagerFragment;
 import com.grarak.kerneladiutor.utils.Constants;
 import com.grarak.kerneladiutor.utils.Utils;
 import com.grarak.kerneladiutor.utils.kernel.CPU;
+import com.grarak.kerneladiutor.utils.kernel.CPUSampler;
 import com.grarak.kerneladiutor.utils.root.Control;
 import com.kerneladiutor.library.root.RootFile;
 
@@ -642,6 +642,7 @@ public class CPUFragment extends ViewPagerFragment implements Constants {
 
         @Override
         public boolean onRefresh() {
+            CPU.readRefreshValues();
 
             if (mTempCard != null) mTempCard.setDescription(CPU.getTemp());
 
@@ -702,66 +703,54 @@ public class CPUFragment extends ViewPagerFragment implements Constants {
             return true;
         }
 
-        private final Runnable cpuUsage = new Runnable() {
+        private final CPUSampler.OnSampleListener cpuUsage = new CPUSampler.OnSampleListener() {
             @Override
-            public void run() {
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        final float[] usage = CPU.getCpuUsage();
-                        try {
-                            getActivity().runOnUiThread(new Runnable() {
-                                @Override
-                                public void run() {
-                                    if (usage != null) {
-                                        if (mUsageCard != null)
-                                            mUsageCard.setProgress(Math.round(usage[0]));
-
-                                        if (mCoreUsageText != null) {
-                                            List<Integer> cores = CPU.getBigCoreRange();
-                                            for (int i = 0; i < mCoreUsageText.length; i++) {
-                                                String message = Math.round(usage[cores.get(i) + 1]) + "%";
-                                                if (mCoreUsageText[i] != null)
-                                                    mCoreUsageText[i].setText(message);
-                                                if (mCoreProgressBar != null && mCoreProgressBar[i].getProgress() == 0)
-                                                    mCoreUsageText[i].setText("");
-                                            }
-                                        }
-
-                                        if (mCoreUsageTextLITTLE != null) {
-                                            List<Integer> cores = CPU.getLITTLECoreRange();
-                                            for (int i = 0; i < mCoreUsageTextLITTLE.length; i++) {
-                                                String message = Math.round(usage[cores.get(i) + 1]) + "%";
-                                                if (mCoreUsageTextLITTLE[i] != null)
-                                                    mCoreUsageTextLITTLE[i].setText(message);
-                                                if (mCoreProgressBarLITTLE != null && mCoreProgressBarLITTLE[i].getProgress() == 0)
-                                                    mCoreUsageTextLITTLE[i].setText("");
-                                            }
-                                        }
-                                    }
+            public void onSample(final float[] usage) {
+                try {
+                    getActivity().runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mUsageCard != null)
+                                mUsageCard.setProgress(Math.round(usage[0]));
+
+                            if (mCoreUsageText != null) {
+                                List<Integer> cores = CPU.getBigCoreRange();
+                                for (int i = 0; i < mCoreUsageText.length; i++) {
+                                    String message = Math.round(usage[cores.get(i) + 1]) + "%";
+                                    if (mCoreUsageText[i] != null)
+                                        mCoreUsageText[i].setText(message);
+                                    if (mCoreProgressBar != null && mCoreProgressBar[i].getProgress() == 0)
+                                        mCoreUsageText[i].setText("");
                                 }
-                            });
-                        } catch (NullPointerException ignored) {
+                            }
+
+                            if (mCoreUsageTextLITTLE != null) {
+                                List<Integer> cores = CPU.getLITTLECoreRange();
+                                for (int i = 0; i < mCoreUsageTextLITTLE.length; i++) {
+                                    String message = Math.round(usage[cores.get(i) + 1]) + "%";
+                                    if (mCoreUsageTextLITTLE[i] != null)
+                                        mCoreUsageTextLITTLE[i].setText(message);
+                                    if (mCoreProgressBarLITTLE != null && mCoreProgressBarLITTLE[i].getProgress() == 0)
+                                        mCoreUsageTextLITTLE[i].setText("");
+                                }
+                            }
                         }
-                    }
-                }).start();
-
-                getHandler().postDelayed(cpuUsage, 1000);
+                    });
+                } catch (NullPointerException ignored) {
+                }
             }
         };
 
         @Override
         public void onResume() {
             super.onResume();
-            Handler hand;
-            if ((hand = getHandler()) != null) hand.post(cpuUsage);
+            CPUSampler.subscribe(cpuUsage);
         }
 
         @Override
         public void onPause() {
             super.onPause();
-            Handler hand;
-            if ((hand = getHandler()) != null) hand.removeCallbacks(cpuUsage);
+            CPUSampler.unsubscribe(cpuUsage);
         }
 
     }
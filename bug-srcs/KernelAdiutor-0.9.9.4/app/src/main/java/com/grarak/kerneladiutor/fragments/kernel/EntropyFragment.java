@@ -22,6 +22,7 @@ import com.grarak.kerneladiutor.R;
 import com.grarak.kerneladiutor.elements.cards.CardViewItem;
 import com.grarak.kerneladiutor.elements.cards.PopupCardView;
 import com.grarak.kerneladiutor.fragments.RecyclerViewFragment;
+import com.grarak.kerneladiutor.utils.Constants;
 import com.grarak.kerneladiutor.utils.Utils;
 import com.grarak.kerneladiutor.utils.kernel.Entropy;
 
@@ -31,7 +32,8 @@ import java.util.List;
 /**
  * Created by willi on 10.07.15.
  */
-public class EntropyFragment extends RecyclerViewFragment implements PopupCardView.DPopupCard.OnDPopupCardListener {
+public class EntropyFragment extends RecyclerViewFragment implements Constants,
+        PopupCardView.DPopupCard.OnDPopupCardListener {
 
     private CardViewItem.DCardView mAvailableCard;
     private CardViewItem.DCardView mPoolsizeCard;
@@ -51,12 +53,25 @@ public class EntropyFragment extends RecyclerViewFragment implements PopupCardVi
         mAvailableCard.setDescription(getAvailableDescription(Entropy.getAvailable(), poolsize));
 
         addView(mAvailableCard);
+        addRefresh(mAvailableCard, 1000, new OnRefreshListener() {
+            @Override
+            public void onRefresh(String[] values) {
+                mAvailableCard.setDescription(getAvailableDescription(Utils.stringToInt(values[0]),
+                        Utils.stringToInt(values[1])));
+            }
+        }, PROC_RANDOM_ENTROPY_AVAILABLE, PROC_RANDOM_ENTROPY_POOLSIZE);
 
         mPoolsizeCard = new CardViewItem.DCardView();
         mPoolsizeCard.setTitle(getString(R.string.poolsize));
         mPoolsizeCard.setDescription(String.valueOf(poolsize));
 
         addView(mPoolsizeCard);
+        addRefresh(mPoolsizeCard, 1000, new OnRefreshListener() {
+            @Override
+            public void onRefresh(String[] values) {
+                mPoolsizeCard.setDescription(String.valueOf(Utils.stringToInt(values[0])));
+            }
+        }, PROC_RANDOM_ENTROPY_POOLSIZE);
 
         items.clear();
         for (int i = 64; i < poolsize; i *= 2) if (i < poolsize) items.add(String.valueOf(i));
@@ -68,6 +83,12 @@ public class EntropyFragment extends RecyclerViewFragment implements PopupCardVi
         mReadCard.setOnDPopupCardListener(this);
 
         addView(mReadCard);
+        addRefresh(mReadCard, 1000, new OnRefreshListener() {
+            @Override
+            public void onRefresh(String[] values) {
+                mReadCard.setItem(String.valueOf(Utils.stringToInt(values[0])));
+            }
+        }, PROC_RANDOM_ENTROPY_READ);
 
         mWriteCard = new PopupCardView.DPopupCard(items);
         mWriteCard.setDescription(getString(R.string.write));
@@ -75,6 +96,12 @@ public class EntropyFragment extends RecyclerViewFragment implements PopupCardVi
         mWriteCard.setOnDPopupCardListener(this);
 
         addView(mWriteCard);
+        addRefresh(mWriteCard, 1000, new OnRefreshListener() {
+            @Override
+            public void onRefresh(String[] values) {
+                mWriteCard.setItem(String.valueOf(Utils.stringToInt(values[0])));
+            }
+        }, PROC_RANDOM_ENTROPY_WRITE);
     }
 
     @Override
@@ -89,15 +116,4 @@ public class EntropyFragment extends RecyclerViewFragment implements PopupCardVi
         return Utils.round((double) available * 100 / (double) poolsize, 2) + "% (" + available + ")";
     }
 
-    @Override
-    public boolean onRefresh() {
-        int poolsize = Entropy.getPoolsize();
-        if (mAvailableCard != null)
-            mAvailableCard.setDescription(getAvailableDescription(Entropy.getAvailable(), poolsize));
-        if (mPoolsizeCard != null) mPoolsizeCard.setDescription(String.valueOf(poolsize));
-        if (mReadCard != null) mReadCard.setItem(String.valueOf(Entropy.getRead()));
-        if (mWriteCard != null) mWriteCard.setItem(String.valueOf(Entropy.getWrite()));
-        return true;
-    }
-
 }
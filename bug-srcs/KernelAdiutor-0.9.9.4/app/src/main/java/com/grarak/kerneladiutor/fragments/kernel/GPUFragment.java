@@ -25,6 +25,7 @@ import com.grarak.kerneladiutor.elements.cards.PopupCardView;
 import com.grarak.kerneladiutor.elements.cards.SeekBarCardView;
 import com.grarak.kerneladiutor.elements.cards.SwitchCardView;
 import com.grarak.kerneladiutor.fragments.RecyclerViewFragment;
+import com.grarak.kerneladiutor.utils.Utils;
 import com.grarak.kerneladiutor.utils.kernel.GPU;
 
 import java.util.ArrayList;
@@ -69,6 +70,12 @@ public class GPUFragment extends RecyclerViewFragment implements PopupCardView.D
             mCur2dFreqCard.setTitle(getString(R.string.gpu_2d_cur_freq));
 
             addView(mCur2dFreqCard);
+            addRefresh(mCur2dFreqCard, 1000, new OnRefreshListener() {
+                @Override
+                public void onRefresh(String[] values) {
+                    mCur2dFreqCard.setDescription((Utils.stringToInt(values[0]) / 1000000) + getString(R.string.mhz));
+                }
+            }, GPU.getGpu2dCurFreqFile());
         }
 
         if (GPU.hasGpuCurFreq()) {
@@ -76,6 +83,12 @@ public class GPUFragment extends RecyclerViewFragment implements PopupCardView.D
             mCurFreqCard.setTitle(getString(R.string.gpu_cur_freq));
 
             addView(mCurFreqCard);
+            addRefresh(mCurFreqCard, 1000, new OnRefreshListener() {
+                @Override
+                public void onRefresh(String[] values) {
+                    mCurFreqCard.setDescription((Utils.stringToInt(values[0]) / 1000000) + getString(R.string.mhz));
+                }
+            }, GPU.getGpuCurFreqFile());
         }
     }
 
@@ -268,14 +281,4 @@ public class GPUFragment extends RecyclerViewFragment implements PopupCardView.D
         else if (dSeekBarCard == mAdrenoIdlerIdleWorkloadCard)
             GPU.setAdrenoIdlerIdleWorkload(position + 1, getActivity());
     }
-
-    @Override
-    public boolean onRefresh() {
-        if (mCur2dFreqCard != null)
-            mCur2dFreqCard.setDescription((GPU.getGpu2dCurFreq() / 1000000) + getString(R.string.mhz));
-
-        if (mCurFreqCard != null)
-            mCurFreqCard.setDescription((GPU.getGpuCurFreq() / 1000000) + getString(R.string.mhz));
-        return true;
-    }
 }
@@ -57,6 +57,14 @@ public class KSMFragment extends RecyclerViewFragment implements SwitchCardView.
                 mInfos[i].setTitle(titles[i]);
 
                 addView(mInfos[i]);
+
+                final CardViewItem.DCardView info = mInfos[i];
+                addRefresh(info, 1000, new OnRefreshListener() {
+                    @Override
+                    public void onRefresh(String[] values) {
+                        info.setDescription(values[0]);
+                    }
+                }, KSM.getInfoFile(i));
             }
     }
 
@@ -123,11 +131,4 @@ public class KSMFragment extends RecyclerViewFragment implements SwitchCardView.
             KSM.setSleepMilliseconds(position, getActivity());
     }
 
-    @Override
-    public boolean onRefresh() {
-        if (mInfos != null) for (int i = 0; i < mInfos.length; i++)
-            if (mInfos[i] != null) mInfos[i].setDescription(KSM.getInfo(i));
-        return true;
-    }
-
 }
@@ -43,6 +43,7 @@ import com.grarak.kerneladiutor.tasker.AddProfileActivity;
 import com.grarak.kerneladiutor.utils.Constants;
 import com.grarak.kerneladiutor.utils.Utils;
 import com.grarak.kerneladiutor.utils.database.CommandDB;
+import com.grarak.kerneladiutor.utils.database.CommandStore;
 import com.grarak.kerneladiutor.utils.database.ProfileDB;
 import com.grarak.kerneladiutor.utils.root.Control;
 import com.kerneladiutor.library.root.RootUtils;
@@ -100,7 +101,7 @@ public class ProfileFragment extends RecyclerViewFragment {
         fabView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                final List<CommandDB.CommandItem> commandItems = new CommandDB(getActivity()).getAllCommands();
+                final List<CommandDB.CommandItem> commandItems = CommandStore.getInstance(getActivity()).getAllCommands();
 
                 LinearLayout linearLayout = new LinearLayout(getActivity());
                 linearLayout.setOrientation(LinearLayout.VERTICAL);
@@ -23,6 +23,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.util.Log;
@@ -46,7 +47,8 @@ import com.grarak.kerneladiutor.fragments.kernel.VMFragment;
 import com.grarak.kerneladiutor.fragments.kernel.WakeFragment;
 import com.grarak.kerneladiutor.utils.Constants;
 import com.grarak.kerneladiutor.utils.Utils;
-import com.grarak.kerneladiutor.utils.database.CommandDB;
+import com.grarak.kerneladiutor.utils.database.CommandStore;
+import com.grarak.kerneladiutor.utils.root.ApplyEngine;
 import com.kerneladiutor.library.root.RootUtils;
 
 import java.util.ArrayList;
@@ -157,36 +159,26 @@ public class BootService extends Service {
             return;
         }
 
-        RootUtils.SU su = new RootUtils.SU();
+        List<String> commands = new ArrayList<>();
         String[] writePermission = {Constants.LMK_MINFREE};
         for (String file : writePermission)
-            su.runCommand("chmod 644 " + file);
+            commands.add("chmod 644 " + file);
 
-        List<CommandDB.CommandItem> allCommands = new CommandDB(this).getAllCommands();
-        List<String> commands = new ArrayList<>();
-        if (applys.size() > 0)
-            for (CommandDB.CommandItem commandItem : allCommands)
-                for (String sys : applys) {
-                    String path = commandItem.getPath();
-                    if ((sys.contains(path) || path.contains(sys))) {
-                        String command = commandItem.getCommand();
-                        if (commands.indexOf(command) < 0)
-                            commands.add(command);
-                    }
-                }
+        ApplyEngine applyEngine = new ApplyEngine(CommandStore.getInstance(this).getAllCommands());
+        commands.addAll(applyEngine.getCommands(applys, plugins));
+        for (String command : commands) log("run: " + command);
 
-        if (plugins.size() > 0)
-            for (CommandDB.CommandItem commandItem : allCommands)
-                for (String pluginName : plugins)
-                    if (commandItem.getPath().endsWith(pluginName)) {
-                        String command = commandItem.getCommand();
-                        if (commands.indexOf(command) < 0)
-                            commands.add(command);
-                    }
-
-        for (String command : commands) {
-            log("run: " + command);
-            su.runCommand(command);
+        long start = SystemClock.elapsedRealtime();
+        RootUtils.SU su = new RootUtils.SU();
+        su.runCommand(ApplyEngine.getScript(commands));
+        long runTime = SystemClock.elapsedRealtime() - start;
+
+        String timings = commands.size() + " commands, index " + applyEngine.getIndexTime() + "ms, match "
+                + applyEngine.getMatchTime() + "ms, dedupe " + applyEngine.getDedupeTime() + "ms, run " + runTime + "ms";
+        log(timings);
+        if (mNotifyManager != null && Utils.getBoolean("applyonbootnotification", true, this)) {
+            mBuilder.setSubText(timings);
+            mNotifyManager.notify(id, mBuilder.build());
         }
 
         su.close();
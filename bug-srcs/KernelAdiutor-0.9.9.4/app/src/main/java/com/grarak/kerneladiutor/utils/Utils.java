@@ -56,6 +56,8 @@ import com.grarak.kerneladiutor.fragments.kernel.ThermalFragment;
 import com.grarak.kerneladiutor.fragments.kernel.VMFragment;
 import com.grarak.kerneladiutor.fragments.kernel.WakeFragment;
 import com.grarak.kerneladiutor.utils.kernel.CPU;
+import com.grarak.kerneladiutor.utils.root.Capabilities;
+import com.grarak.kerneladiutor.utils.root.SysfsCache;
 import com.kerneladiutor.library.Tools;
 import com.kerneladiutor.library.root.RootUtils;
 import com.squareup.picasso.Picasso;
@@ -497,6 +499,8 @@ public class Utils implements Constants {
     }
 
     public static boolean existFile(String file) {
+        Boolean exists = Capabilities.exists(file);
+        if (exists != null) return exists;
         return Tools.existFile(file, true);
     }
 
@@ -505,6 +509,7 @@ public class Utils implements Constants {
     }
 
     public static String readFile(String file) {
+        if (SysfsCache.isCached(file)) return SysfsCache.read(file);
         return Tools.readFile(file, true);
     }
 
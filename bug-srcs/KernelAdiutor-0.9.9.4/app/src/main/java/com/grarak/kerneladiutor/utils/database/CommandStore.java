@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2015 Willi Ye
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.grarak.kerneladiutor.utils.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.grarak.kerneladiutor.utils.Constants;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The commands which are applied on boot, one per path.
+ * <p/>
+ * Every change is appended to a journal as one JSON line, so saving a setting doesn't
+ * rewrite the whole file. The journal is read once, when the commands are first needed,
+ * and rewritten with only the current commands once it has grown to a few times their
+ * number. Commands saved by older versions in commands.json are moved into the journal.
+ */
+public class CommandStore {
+
+    private static final String JOURNAL = "/commands.journal";
+
+    /**
+     * Rewrite the journal once it has this many lines per command, plus a few
+     */
+    private static final int COMPACT_RATIO = 3;
+    private static final int COMPACT_SLACK = 64;
+
+    private static CommandStore instance;
+
+    private final Context context;
+    private final File journal;
+
+    // path -> command, in the order they were last saved
+    private Map<String, String> commands;
+    private int journalLines;
+    private long journalLength;
+
+    public static synchronized CommandStore getInstance(Context context) {
+        if (instance == null) instance = new CommandStore(context.getApplicationContext());
+        return instance;
+    }
+
+    private CommandStore(Context context) {
+        this.context = context;
+        journal = new File(context.getFilesDir() + JOURNAL);
+    }
+
+    public synchronized void putCommand(String path, String command) {
+        List<String> paths = new ArrayList<>(1);
+        List<String> commands = new ArrayList<>(1);
+        paths.add(path);
+        commands.add(command);
+        putCommands(paths, commands);
+    }
+
+    /**
+     * Save several commands with one write
+     */
+    public synchronized void putCommands(List<String> paths, List<String> commands) {
+        load();
+
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.get(i);
+            // Remove first, so the command moves to the end like it did in CommandDB
+            this.commands.remove(path);
+            this.commands.put(path, commands.get(i));
+            lines.append(toLine(path, commands.get(i)));
+        }
+        append(lines.toString(), paths.size());
+
+        if (journalLines > this.commands.size() * COMPACT_RATIO + COMPACT_SLACK) compact();
+    }
+
+    public synchronized String getCommand(String path) {
+        load();
+        return commands.get(path);
+    }
+
+    /**
+     * @return all commands, the oldest first
+     */
+    public synchronized List<CommandDB.CommandItem> getAllCommands() {
+        load();
+        List<CommandDB.CommandItem> items = new ArrayList<>(commands.size());
+        try {
+            for (Map.Entry<String, String> entry : commands.entrySet()) {
+                JSONObject item = new JSONObject();
+                item.put("path", entry.getKey());
+                item.put("command", entry.getValue());
+                items.add(new CommandDB.CommandItem(item));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return items;
+    }
+
+    public synchronized int size() {
+        load();
+        return commands.size();
+    }
+
+    /*
+     * Read the journal if we haven't yet, or if another process has written it since
+     */
+    private void load() {
+        if (commands != null && journal.length() == journalLength) return;
+
+        commands = new LinkedHashMap<>();
+        journalLines = 0;
+        if (journal.exists()) readJournal();
+        else migrate();
+        journalLength = journal.length();
+    }
+
+    private void readJournal() {
+        StringBuilder content = new StringBuilder();
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(journal), "UTF-8");
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) > 0) content.append(buffer, 0, read);
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to read " + journal);
+        } finally {
+            try {
+                if (reader != null) reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        int start = 0;
+        int end;
+        while ((end = content.indexOf("\n", start)) >= 0) {
+            journalLines++;
+            try {
+                JSONObject item = new JSONObject(content.substring(start, end));
+                String path = item.getString("path");
+                commands.remove(path);
+                commands.put(path, item.getString("command"));
+            } catch (JSONException ignored) {
+            }
+            start = end + 1;
+        }
+
+        // We died in the middle of an append, start over so the next one begins on a new line
+        if (start < content.length()) compact();
+    }
+
+    private void migrate() {
+        CommandDB commandDB = new CommandDB(context);
+        for (CommandDB.CommandItem item : commandDB.getAllCommands()) {
+            String path = item.getPath();
+            String command = item.getCommand();
+            if (path == null || command == null) continue;
+            commands.remove(path);
+            commands.put(path, command);
+        }
+        if (commands.isEmpty()) return;
+
+        if (compact()) {
+            File json = new File(context.getFilesDir() + "/commands.json");
+            if (!json.delete()) Log.e(Constants.TAG, "Failed to delete " + json);
+            Log.i(Constants.TAG, "Moved " + commands.size() + " commands into " + journal);
+        }
+    }
+
+    private void append(String lines, int count) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(journal, true), "UTF-8");
+            writer.write(lines);
+            writer.flush();
+            journalLines += count;
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to write " + journal);
+        } finally {
+            try {
+                if (writer != null) writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            journalLength = journal.length();
+        }
+    }
+
+    /*
+     * Write the current commands to a new journal and swap it in
+     */
+    private boolean compact() {
+        File tmp = new File(journal.getPath() + ".tmp");
+        Writer writer = null;
+        boolean success = false;
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            writer = new OutputStreamWriter(out, "UTF-8");
+            for (Map.Entry<String, String> entry : commands.entrySet())
+                writer.write(toLine(entry.getKey(), entry.getValue()));
+            writer.flush();
+            out.getFD().sync();
+            success = true;
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to write " + tmp);
+        } finally {
+            try {
+                if (writer != null) writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (success && tmp.renameTo(journal)) {
+            journalLines = commands.size();
+            journalLength = journal.length();
+            return true;
+        }
+        return false;
+    }
+
+    private static String toLine(String path, String command) {
+        try {
+            JSONObject item = new JSONObject();
+            item.put("path", path);
+            item.put("command", command);
+            // JSONObject escapes line breaks, so every entry stays on one line
+            return item.toString() + "\n";
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+}
@@ -17,17 +17,14 @@
 package com.grarak.kerneladiutor.utils.kernel;
 
 import android.content.Context;
-import android.util.Log;
 
 import com.grarak.kerneladiutor.R;
 import com.grarak.kerneladiutor.utils.Constants;
 import com.grarak.kerneladiutor.utils.Utils;
 import com.grarak.kerneladiutor.utils.root.Control;
+import com.grarak.kerneladiutor.utils.root.SysfsCache;
 import com.kerneladiutor.library.root.RootUtils;
 
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -451,6 +448,23 @@ public class CPU implements Constants {
         return 0;
     }
 
+    /**
+     * Read the nodes which are shown on every refresh in one go, the getters are then
+     * answered from the cache
+     */
+    public static void readRefreshValues() {
+        List<String> paths = new ArrayList<>();
+        if (TEMP_FILE != null) paths.add(TEMP_FILE);
+        for (int i = 0; i < getCoreCount(); i++) paths.add(String.format(CPU_CUR_FREQ, i));
+        for (int core : new int[]{getBigCore(), getLITTLEcore()}) {
+            paths.add(String.format(CPU_MAX_FREQ_KT, core));
+            paths.add(String.format(CPU_MAX_FREQ, core));
+            paths.add(String.format(CPU_MIN_FREQ, core));
+            paths.add(String.format(CPU_SCALING_GOVERNOR, core));
+        }
+        SysfsCache.readAll(paths);
+    }
+
     public static void onlineAllCores(Context context) {
         for (int i = 1; i < getCoreCount(); i++) activateCore(i, true, context);
     }
@@ -532,85 +546,4 @@ public class CPU implements Constants {
         return TEMP_FILE != null;
     }
 
-    public static float[] getCpuUsage() {
-        try {
-            Usage[] usage1 = getUsages();
-            Thread.sleep(1000);
-            Usage[] usage2 = getUsages();
-
-            if (usage1 != null && usage2 != null) {
-                float[] pers = new float[usage1.length];
-                for (int i = 0; i < usage1.length; i++) {
-                    long idle1 = usage1[i].getIdle();
-                    long up1 = usage1[i].getUptime();
-
-                    long idle2 = usage2[i].getIdle();
-                    long up2 = usage2[i].getUptime();
-
-                    float cpu = -1f;
-                    if (idle1 >= 0 && up1 >= 0 && idle2 >= 0 && up2 >= 0) {
-                        if ((up2 + idle2) > (up1 + idle1) && up2 >= up1) {
-                            cpu = (up2 - up1) / (float) ((up2 + idle2) - (up1 + idle1));
-                            cpu *= 100.0f;
-                        }
-                    }
-
-                    pers[i] = cpu > -1 ? cpu : 0;
-                }
-                return pers;
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        return null;
-    }
-
-    private static Usage[] getUsages() {
-        try {
-            RandomAccessFile reader = new RandomAccessFile("/proc/stat", "r");
-            Usage[] usage = new Usage[getCoreCount() + 1];
-            for (int i = 0; i < usage.length; i++)
-                usage[i] = new Usage(reader.readLine());
-            reader.close();
-            return usage;
-        } catch (FileNotFoundException e) {
-            Log.i(TAG, "/proc/stat does not exist");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
-    private static class Usage {
-
-        private long[] stats;
-
-        public Usage(String stats) {
-            if (stats == null) return;
-
-            String[] values = stats.replace("  ", " ").split(" ");
-            this.stats = new long[values.length - 1];
-            for (int i = 0; i < this.stats.length; i++)
-                this.stats[i] = Utils.stringToLong(values[i + 1]);
-        }
-
-        public long getUptime() {
-            if (stats == null) return -1L;
-            long l = 0L;
-            for (int i = 0; i < stats.length; i++)
-                if (i != 3) l += stats[i];
-            return l;
-        }
-
-        public long getIdle() {
-            try {
-                return stats == null ? -1L : stats[3];
-            } catch (ArrayIndexOutOfBoundsException e) {
-                return -1L;
-            }
-        }
-
-    }
-
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015 Willi Ye
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.grarak.kerneladiutor.utils.kernel;
+
+import android.util.Log;
+
+import com.grarak.kerneladiutor.utils.Constants;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads /proc/stat once a second for everyone who wants to know the cpu load.
+ * <p/>
+ * The busy and total time of every sample are kept in ring buffers, so the last
+ * {@link #HISTORY} loads can be charted. Sampling stops when the last listener is gone.
+ * <p/>
+ * Loads are in percent, index 0 is all cores together and index n is core n - 1, like
+ * the lines of /proc/stat. Offline cores have a load of 0.
+ */
+public class CPUSampler implements Constants {
+
+    private static final long INTERVAL = 1000;
+
+    /**
+     * Number of samples kept per core
+     */
+    public static final int HISTORY = 60;
+
+    public interface OnSampleListener {
+        /**
+         * Called on the sampler thread
+         *
+         * @param usage load of every core, listeners get their own copy
+         */
+        void onSample(float[] usage);
+    }
+
+    private static final List<OnSampleListener> listeners = new CopyOnWriteArrayList<>();
+    private static ScheduledExecutorService executor;
+    private static ScheduledFuture<?> task;
+
+    // Only touched by the sampler thread
+    private static byte[] buffer = new byte[2048];
+    private static long[] readBusy;
+    private static long[] readTotal;
+    private static long[] lastBusy;
+    private static long[] lastTotal;
+    private static boolean hasLast;
+
+    // [cpu][sample], head is the next sample to write
+    private static int[][] busyDeltas;
+    private static int[][] totalDeltas;
+    private static int head;
+    private static int count;
+
+    public static synchronized void subscribe(OnSampleListener listener) {
+        if (listeners.contains(listener)) return;
+        listeners.add(listener);
+        if (task != null) return;
+
+        if (executor == null) executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CPUSampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        task = executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, 0, INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void unsubscribe(OnSampleListener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty() && task != null) {
+            task.cancel(false);
+            task = null;
+            // Don't take the time we were paused as one sample
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    hasLast = false;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return load of every core in the last sample, null if there is none yet
+     */
+    public static synchronized float[] getUsage() {
+        if (count == 0) return null;
+        int last = (head + HISTORY - 1) % HISTORY;
+        float[] usage = new float[busyDeltas.length];
+        for (int cpu = 0; cpu < usage.length; cpu++)
+            usage[cpu] = load(busyDeltas[cpu][last], totalDeltas[cpu][last]);
+        return usage;
+    }
+
+    /**
+     * @param cpu 0 for all cores, n for core n - 1
+     * @return loads of the kept samples, the oldest first
+     */
+    public static synchronized float[] getHistory(int cpu) {
+        if (busyDeltas == null || cpu < 0 || cpu >= busyDeltas.length) return new float[0];
+        float[] history = new float[count];
+        int start = (head + HISTORY - count) % HISTORY;
+        for (int i = 0; i < count; i++) {
+            int sample = (start + i) % HISTORY;
+            history[i] = load(busyDeltas[cpu][sample], totalDeltas[cpu][sample]);
+        }
+        return history;
+    }
+
+    private static void sample() {
+        if (readBusy == null) {
+            int cpus = CPU.getCoreCount() + 1;
+            readBusy = new long[cpus];
+            readTotal = new long[cpus];
+            lastBusy = new long[cpus];
+            lastTotal = new long[cpus];
+            synchronized (CPUSampler.class) {
+                busyDeltas = new int[cpus][HISTORY];
+                totalDeltas = new int[cpus][HISTORY];
+            }
+        }
+        if (!readStat()) return;
+
+        if (hasLast) {
+            float[] usage;
+            synchronized (CPUSampler.class) {
+                for (int cpu = 0; cpu < readBusy.length; cpu++) {
+                    // Counters of cores which went offline start over
+                    long total = readTotal[cpu] - lastTotal[cpu];
+                    long busy = readBusy[cpu] - lastBusy[cpu];
+                    boolean valid = readTotal[cpu] > 0 && lastTotal[cpu] > 0 && total > 0 && busy >= 0;
+                    busyDeltas[cpu][head] = valid ? (int) Math.min(busy, total) : 0;
+                    totalDeltas[cpu][head] = valid ? (int) total : 0;
+                }
+                head = (head + 1) % HISTORY;
+                if (count < HISTORY) count++;
+                usage = getUsage();
+            }
+            for (OnSampleListener listener : listeners)
+                try {
+                    listener.onSample(usage.clone());
+                } catch (RuntimeException e) {
+                    // Don't let one listener stop the sampling for everyone
+                    e.printStackTrace();
+                }
+        }
+
+        long[] tmp = lastBusy;
+        lastBusy = readBusy;
+        readBusy = tmp;
+        tmp = lastTotal;
+        lastTotal = readTotal;
+        readTotal = tmp;
+        hasLast = true;
+    }
+
+    private static float load(int busy, int total) {
+        return total > 0 ? busy * 100f / total : 0;
+    }
+
+    /*
+     * Parse the cpu lines of /proc/stat into readBusy and readTotal, without creating a
+     * String for every line. The lines after them can be long, so we stop reading there.
+     */
+    private static boolean readStat() {
+        for (int cpu = 0; cpu < readBusy.length; cpu++)
+            readBusy[cpu] = readTotal[cpu] = 0;
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream("/proc/stat");
+            int length = 0;
+            int parsed = 0;
+            while (true) {
+                if (length == buffer.length) {
+                    byte[] bigger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, bigger, 0, length);
+                    buffer = bigger;
+                }
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read < 0) break;
+                length += read;
+
+                int end;
+                while ((end = indexOf('\n', parsed, length)) >= 0) {
+                    if (!parseLine(parsed, end)) return true;
+                    parsed = end + 1;
+                }
+            }
+            return true;
+        } catch (FileNotFoundException e) {
+            Log.i(TAG, "/proc/stat does not exist");
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (in != null) in.close();
+            } catch (IOException ignored) {
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (buffer[i] == c) return i;
+        return -1;
+    }
+
+    /*
+     * @return false once the cpu lines are over
+     */
+    private static boolean parseLine(int start, int end) {
+        if (end - start < 4 || buffer[start] != 'c' || buffer[start + 1] != 'p' || buffer[start + 2] != 'u')
+            return false;
+
+        int i = start + 3;
+        int cpu = 0;
+        if (buffer[i] != ' ') {
+            while (i < end && buffer[i] >= '0' && buffer[i] <= '9') cpu = cpu * 10 + buffer[i++] - '0';
+            cpu++;
+        }
+        if (cpu >= readBusy.length) return true;
+
+        long total = 0;
+        long idle = 0;
+        int field = 0;
+        while (i < end) {
+            while (i < end && buffer[i] == ' ') i++;
+            if (i == end) break;
+            long value = 0;
+            while (i < end && buffer[i] >= '0' && buffer[i] <= '9') value = value * 10 + buffer[i++] - '0';
+            while (i < end && buffer[i] != ' ') i++;
+            if (field == 3) idle = value;
+            total += value;
+            field++;
+        }
+        readBusy[cpu] = total - idle;
+        readTotal[cpu] = total;
+        return true;
+    }
+
+}
@@ -190,6 +190,10 @@ public class GPU implements Constants {
         return 0;
     }
 
+    public static String getGpu2dCurFreqFile() {
+        return GPU_2D_CUR_FREQ;
+    }
+
     public static boolean hasGpu2dCurFreq() {
         if (GPU_2D_CUR_FREQ == null) {
             for (String file : GPU_2D_CUR_FREQ_ARRAY)
@@ -305,6 +309,10 @@ public class GPU implements Constants {
         return 0;
     }
 
+    public static String getGpuCurFreqFile() {
+        return GPU_CUR_FREQ;
+    }
+
     public static boolean hasGpuCurFreq() {
         if (GPU_CUR_FREQ == null) {
             for (String file : GPU_CUR_FREQ_ARRAY)
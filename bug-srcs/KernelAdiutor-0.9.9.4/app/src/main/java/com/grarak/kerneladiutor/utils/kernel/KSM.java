@@ -74,7 +74,11 @@ public class KSM implements Constants {
     }
 
     public static String getInfo(int position) {
-        return Utils.readFile(getKsmFile(KSM_INFOS[position]));
+        return Utils.readFile(getInfoFile(position));
+    }
+
+    public static String getInfoFile(int position) {
+        return getKsmFile(KSM_INFOS[position]);
     }
 
     public static boolean hasInfo(int position) {
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 Willi Ye
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.grarak.kerneladiutor.utils.root;
+
+import android.os.SystemClock;
+
+import com.grarak.kerneladiutor.utils.database.CommandDB;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Picks the saved commands which belong to the sections applied on boot and turns them
+ * into one script.
+ * <p/>
+ * A command belongs to a section if its path starts with one of the section's paths (the
+ * file itself, a file with a suffix like "permission644", or a file in a directory), or
+ * the other way round. Instead of comparing every command with every path, the saved
+ * paths are sorted once, so the paths starting with a section path are one binary search
+ * away, and looked up by length for the other direction.
+ */
+public class ApplyEngine {
+
+    private final List<CommandDB.CommandItem> commands;
+    private final String[] paths;
+
+    // Indices into commands, sorted by path
+    private final Integer[] sorted;
+    private final Map<String, List<Integer>> byPath = new HashMap<>();
+    private final int[] pathLengths;
+
+    private long indexTime;
+    private long matchTime;
+    private long dedupeTime;
+
+    public ApplyEngine(List<CommandDB.CommandItem> commands) {
+        long start = SystemClock.elapsedRealtime();
+        this.commands = commands;
+        paths = new String[commands.size()];
+        sorted = new Integer[paths.length];
+        Set<Integer> lengths = new TreeSet<>();
+        for (int i = 0; i < paths.length; i++) {
+            String path = commands.get(i).getPath();
+            paths[i] = path == null ? "" : path;
+            sorted[i] = i;
+
+            List<Integer> list = byPath.get(paths[i]);
+            if (list == null) byPath.put(paths[i], list = new ArrayList<>(1));
+            list.add(i);
+            lengths.add(paths[i].length());
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return paths[lhs].compareTo(paths[rhs]);
+            }
+        });
+
+        pathLengths = new int[lengths.size()];
+        int i = 0;
+        for (int length : lengths) pathLengths[i++] = length;
+        indexTime = SystemClock.elapsedRealtime() - start;
+    }
+
+    /**
+     * @param applys  paths of the sections which are applied on boot
+     * @param plugins names of the plugins which are applied on boot
+     * @return the commands to run, in the order they were saved, each only once
+     */
+    public List<String> getCommands(List<String> applys, List<String> plugins) {
+        long start = SystemClock.elapsedRealtime();
+        BitSet matched = new BitSet(paths.length);
+        for (String apply : applys) {
+            // Saved paths which start with the section path
+            for (int i = lowerBound(apply); i < sorted.length && paths[sorted[i]].startsWith(apply); i++)
+                matched.set(sorted[i]);
+
+            // Saved paths which the section path starts with
+            for (int length : pathLengths) {
+                if (length >= apply.length()) break;
+                List<Integer> list = byPath.get(apply.substring(0, length));
+                if (list != null) for (int i : list) matched.set(i);
+            }
+        }
+        for (String plugin : plugins)
+            for (int i = 0; i < paths.length; i++)
+                if (paths[i].endsWith(plugin)) matched.set(i);
+        matchTime = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        Set<String> unique = new LinkedHashSet<>();
+        for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+            String command = commands.get(i).getCommand();
+            if (command != null) unique.add(command);
+        }
+        dedupeTime = SystemClock.elapsedRealtime() - start;
+        return new ArrayList<>(unique);
+    }
+
+    /**
+     * Join commands into a script which the root shell runs in one go
+     */
+    public static String getScript(List<String> commands) {
+        StringBuilder script = new StringBuilder();
+        for (String command : commands) {
+            if (script.length() > 0) script.append("\n");
+            script.append(command);
+        }
+        return script.toString();
+    }
+
+    public long getIndexTime() {
+        return indexTime;
+    }
+
+    public long getMatchTime() {
+        return matchTime;
+    }
+
+    public long getDedupeTime() {
+        return dedupeTime;
+    }
+
+    /*
+     * First position in sorted whose path isn't smaller than key
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (paths[sorted[mid]].compareTo(key) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+}
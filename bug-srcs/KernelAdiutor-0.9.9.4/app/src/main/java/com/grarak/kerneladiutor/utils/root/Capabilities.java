@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 Willi Ye
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.grarak.kerneladiutor.utils.root;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.grarak.kerneladiutor.utils.Constants;
+import com.kerneladiutor.library.Tools;
+import com.kerneladiutor.library.root.RootUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which of the sysfs and procfs nodes in {@link Constants} this kernel has.
+ * <p/>
+ * The nodes are checked once with a few batched commands in the root shell, and the
+ * result is saved for the current kernel and rom. Until one of them changes, the app
+ * starts with the saved result and {@link com.grarak.kerneladiutor.utils.Utils#existFile(String)}
+ * answers from memory. Paths with a core number and everything else which isn't known
+ * here are still checked in the root shell.
+ */
+public class Capabilities implements Constants {
+
+    private static final String FILE = "/capabilities";
+
+    /**
+     * Paths per command, keeps the commands short
+     */
+    private static final int PROBE_BATCH = 64;
+
+    // path -> exists, null until loaded
+    private static volatile Map<String, Boolean> paths;
+
+    /**
+     * Load the saved nodes, or check them if the kernel or the rom changed
+     */
+    public static synchronized void load(Context context) {
+        long start = SystemClock.elapsedRealtime();
+        File file = new File(context.getFilesDir() + FILE);
+        String fingerprint = getFingerprint();
+
+        Map<String, Boolean> saved = read(file, fingerprint);
+        if (saved != null) {
+            paths = saved;
+            Log.i(TAG, "Capabilities: " + saved.size() + " nodes loaded in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+            return;
+        }
+
+        Map<String, Boolean> probed = probe(getKnownPaths());
+        if (probed == null) return;
+        paths = probed;
+        write(file, fingerprint, probed);
+        Log.i(TAG, "Capabilities: " + probed.size() + " nodes checked in "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    /**
+     * @return whether the node exists, null if it isn't known
+     */
+    public static Boolean exists(String path) {
+        Map<String, Boolean> paths = Capabilities.paths;
+        return paths == null ? null : paths.get(path);
+    }
+
+    /*
+     * Changes whenever a different kernel is booted or the rom is updated
+     */
+    private static String getFingerprint() {
+        String version = Tools.readFile(PROC_VERSION, false);
+        return (Build.FINGERPRINT + " " + (version == null ? System.getProperty("os.version") : version.trim()))
+                .replace("\n", " ");
+    }
+
+    /*
+     * Every path in Constants which doesn't depend on a core
+     */
+    private static Set<String> getKnownPaths() {
+        Set<String> paths = new LinkedHashSet<>();
+        for (Field field : Constants.class.getFields())
+            try {
+                Object value = field.get(null);
+                if (value instanceof String) addPath(paths, (String) value);
+                else if (value instanceof String[])
+                    for (String path : (String[]) value) addPath(paths, path);
+                else if (value instanceof String[][])
+                    for (String[] array : (String[][]) value)
+                        for (String path : array) addPath(paths, path);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        return paths;
+    }
+
+    private static void addPath(Set<String> paths, String path) {
+        if (path != null && (path.startsWith("/sys/") || path.startsWith("/proc/"))
+                && !path.contains("%") && !path.contains("'"))
+            paths.add(path);
+    }
+
+    private static Map<String, Boolean> probe(Set<String> known) {
+        List<String> list = new ArrayList<>(known);
+        String[] commands = new String[(list.size() + PROBE_BATCH - 1) / PROBE_BATCH];
+        for (int i = 0; i < commands.length; i++) {
+            StringBuilder command = new StringBuilder("for f in");
+            for (int j = i * PROBE_BATCH; j < Math.min(list.size(), (i + 1) * PROBE_BATCH); j++)
+                command.append(" '").append(list.get(j)).append("'");
+            commands[i] = command.append("; do [ -e \"$f\" ] && echo 1 || echo 0; done").toString();
+        }
+
+        String[] outputs = RootUtils.runCommands(commands);
+        Map<String, Boolean> paths = new HashMap<>();
+        for (int i = 0; i < outputs.length; i++) {
+            String output = outputs[i] == null ? "" : outputs[i].replaceAll("\\s", "");
+            int from = i * PROBE_BATCH;
+            int count = Math.min(list.size(), from + PROBE_BATCH) - from;
+            if (output.length() != count) {
+                Log.e(TAG, "Capabilities: Failed to check nodes");
+                return null;
+            }
+            for (int j = 0; j < count; j++)
+                paths.put(list.get(from + j), output.charAt(j) == '1');
+        }
+        return paths;
+    }
+
+    /*
+     * The first line is the fingerprint, then one "1 path" or "0 path" line per node
+     */
+    private static Map<String, Boolean> read(File file, String fingerprint) {
+        if (!file.exists()) return null;
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            if (!fingerprint.equals(reader.readLine())) return null;
+
+            Map<String, Boolean> paths = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (line.length() > 2) paths.put(line.substring(2), line.charAt(0) == '1');
+            return paths;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + file);
+        } finally {
+            try {
+                if (reader != null) reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    private static void write(File file, String fingerprint, Map<String, Boolean> paths) {
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer writer = null;
+        boolean success = false;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            writer.write(fingerprint + "\n");
+            for (Map.Entry<String, Boolean> entry : paths.entrySet())
+                writer.write((entry.getValue() ? "1 " : "0 ") + entry.getKey() + "\n");
+            success = true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + tmp);
+        } finally {
+            try {
+                if (writer != null) writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (success && !tmp.renameTo(file)) Log.e(TAG, "Failed to write " + file);
+    }
+
+}
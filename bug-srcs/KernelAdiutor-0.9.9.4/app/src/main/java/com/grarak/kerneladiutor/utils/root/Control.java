@@ -17,17 +17,20 @@
 package com.grarak.kerneladiutor.utils.root;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.grarak.kerneladiutor.utils.Constants;
 import com.grarak.kerneladiutor.utils.Utils;
-import com.grarak.kerneladiutor.utils.database.CommandDB;
+import com.grarak.kerneladiutor.utils.database.CommandStore;
 import com.grarak.kerneladiutor.utils.kernel.CPU;
 import com.grarak.kerneladiutor.utils.kernel.CPUHotplug;
 import com.kerneladiutor.library.root.RootUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by willi on 14.12.14.
@@ -39,17 +42,7 @@ public class Control implements Constants {
     }
 
     public static void commandSaver(final Context context, final String path, final String command) {
-        CommandDB commandDB = new CommandDB(context);
-
-        List<CommandDB.CommandItem> commandItems = commandDB.getAllCommands();
-        for (int i = 0; i < commandItems.size(); i++) {
-            String p = commandItems.get(i).getPath();
-            if (p != null && p.equals(path))
-                commandDB.delete(i);
-        }
-
-        commandDB.putCommand(path, command);
-        commandDB.commit();
+        CommandStore.getInstance(context).putCommand(path, command);
     }
 
     private static void run(String command, String path, Context context) {
@@ -62,19 +55,21 @@ public class Control implements Constants {
         return 255 & (Integer.MAX_VALUE ^ (arg1 & 255) + (arg2 & 255));
     }
 
-    private static void setPermission(String file, int permission, Context context) {
-        run("chmod " + permission + " " + file, file + "permission" + permission, context);
+    private static void setPermission(Batch batch, String file, int permission, Context context) {
+        batch.add("chmod " + permission + " " + file, file + "permission" + permission, context);
     }
 
-    private static void runGeneric(String file, String value, String id, Context context) {
-        run("echo " + value + " > " + file, id != null ? file + id : file, context);
+    private static void runGeneric(Batch batch, String file, String value, String id, Context context) {
+        batch.add("echo " + value + " > " + file, id != null ? file + id : file, context);
+        batch.written(file);
     }
 
-    private static void runFauxGeneric(String file, String value, Context context) {
+    private static void runFauxGeneric(Batch batch, String file, String value, Context context) {
         String command = value.contains(" ") ? value + " " + getChecksum(Utils.stringToInt(value.split(" ")[0]),
                 Utils.stringToInt(value.split(" ")[1])) : value + " " + getChecksum(Utils.stringToInt(value), 0);
-        run("echo " + value + " > " + file, file + "nochecksum", context);
-        run("echo " + command + " > " + file, file, context);
+        batch.add("echo " + value + " > " + file, file + "nochecksum", context);
+        batch.add("echo " + command + " > " + file, file, context);
+        batch.written(file);
     }
 
     public static void setProp(String key, String value, Context context) {
@@ -93,61 +88,179 @@ public class Control implements Constants {
         if (context != null) commandSaver(context, service, "stop " + service);
     }
 
-    private static final List<Thread> tasks = new ArrayList<>();
+    /**
+     * Shell commands of one or more settings changes, run with a single round trip to the root shell
+     */
+    private static class Batch {
 
-    public static void runCommand(final String value, final String file, final CommandType command, final String id,
-                                  final Context context) {
-        final Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                if (command == CommandType.CPU || command == CommandType.CPU_LITTLE) {
-                    boolean mpd = false;
-                    if (CPUHotplug.hasMpdecision() && CPUHotplug.isMpdecisionActive()) {
-                        mpd = true;
-                        stopService(HOTPLUG_MPDEC, null);
-                    }
-
-                    List<Integer> range = command == CommandType.CPU ? CPU.getBigCoreRange() : CPU.getLITTLECoreRange();
-                    for (int i = 0; i < range.size(); i++) {
-                        if (i != 0)
-                            Control.run(String.format("echo 1 > " + CPU_CORE_ONLINE, i),
-                                    String.format(CPU_CORE_ONLINE, i) + "cpuonline", context);
-                        setPermission(String.format(file, range.get(i)), 644, context);
-                        runGeneric(String.format(file, range.get(i)), value, id, context);
-                        setPermission(String.format(file, range.get(i)), 444, context);
-                    }
-
-                    if (mpd) startService(HOTPLUG_MPDEC, null);
-                } else if (command == CommandType.GENERIC) {
-                    runGeneric(file, value, id, context);
-                } else if (command == CommandType.FAUX_GENERIC) {
-                    runFauxGeneric(file, value, context);
-                } else if (command == CommandType.CUSTOM) {
-                    Control.run(value, id == null ? file : file + id, context);
+        private final List<String> commands = new ArrayList<>();
+        private final List<String> paths = new ArrayList<>();
+        private final List<Context> contexts = new ArrayList<>();
+        private final List<String> files = new ArrayList<>();
+
+        /**
+         * @param path key the command is saved as for apply on boot, null = don't save it
+         */
+        private void add(String command, String path, Context context) {
+            commands.add(command);
+            paths.add(path);
+            contexts.add(context);
+        }
+
+        private void written(String file) {
+            files.add(file);
+        }
+
+        private void run() {
+            if (commands.isEmpty()) return;
+            RootUtils.runCommands(commands.toArray(new String[commands.size()]));
+            for (String file : files) SysfsCache.invalidate(file);
+
+            Context context = null;
+            List<String> savePaths = new ArrayList<>();
+            List<String> saveCommands = new ArrayList<>();
+            for (int i = 0; i < commands.size(); i++) {
+                if (paths.get(i) != null && contexts.get(i) != null) {
+                    context = contexts.get(i);
+                    savePaths.add(paths.get(i));
+                    saveCommands.add(commands.get(i));
                 }
+                Log.i(TAG, "Run command: " + commands.get(i));
             }
-        });
-
-        tasks.add(thread);
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                while (true) if (tasks.get(0) == thread) {
-                    thread.start();
-                    try {
-                        thread.join();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    tasks.remove(thread);
-                    break;
+            if (context != null) CommandStore.getInstance(context).putCommands(savePaths, saveCommands);
+        }
+
+    }
+
+    /**
+     * A settings change waiting for its turn
+     */
+    private static class Task {
+
+        private final String value;
+        private final String file;
+        private final CommandType command;
+        private final String id;
+        private final Context context;
+        private final long queued;
+
+        private Task(String value, String file, CommandType command, String id, Context context) {
+            this.value = value;
+            this.file = file;
+            this.command = command;
+            this.id = id;
+            this.context = context;
+            queued = SystemClock.elapsedRealtime();
+        }
+
+        private void addTo(Batch batch) {
+            if (command == CommandType.CPU || command == CommandType.CPU_LITTLE) {
+                boolean mpd = false;
+                if (CPUHotplug.hasMpdecision() && CPUHotplug.isMpdecisionActive()) {
+                    mpd = true;
+                    batch.add("stop " + HOTPLUG_MPDEC, null, null);
+                }
+
+                List<Integer> range = command == CommandType.CPU ? CPU.getBigCoreRange() : CPU.getLITTLECoreRange();
+                for (int i = 0; i < range.size(); i++) {
+                    if (i != 0)
+                        batch.add(String.format("echo 1 > " + CPU_CORE_ONLINE, i),
+                                String.format(CPU_CORE_ONLINE, i) + "cpuonline", context);
+                    setPermission(batch, String.format(file, range.get(i)), 644, context);
+                    runGeneric(batch, String.format(file, range.get(i)), value, id, context);
+                    setPermission(batch, String.format(file, range.get(i)), 444, context);
                 }
+
+                if (mpd) batch.add("start " + HOTPLUG_MPDEC, null, null);
+            } else if (command == CommandType.GENERIC) {
+                runGeneric(batch, file, value, id, context);
+            } else if (command == CommandType.FAUX_GENERIC) {
+                runFauxGeneric(batch, file, value, context);
+            } else if (command == CommandType.CUSTOM) {
+                batch.add(value, id == null ? file : file + id, context);
+                batch.written(file);
             }
-        }).start();
+        }
+
+    }
+
+    /**
+     * Changes which haven't run yet. A newer value for the setting changed last replaces the
+     * older one, so dragging a seekbar only writes the values which the shell could keep up
+     * with.
+     */
+    private static final WriteQueue<Task> pending = new WriteQueue<>();
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private static boolean scheduled;
+
+    private static long ranCount;
+    private static long coalescedCount;
+    private static long batchCount;
+    private static long totalLatency;
+    private static long maxLatency;
+
+    private static final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            List<Task> tasks;
+            synchronized (pending) {
+                tasks = pending.drain();
+                scheduled = false;
+            }
+
+            Batch batch = new Batch();
+            for (Task task : tasks) task.addTo(batch);
+            batch.run();
+
+            long now = SystemClock.elapsedRealtime();
+            synchronized (pending) {
+                batchCount++;
+                for (Task task : tasks) {
+                    long latency = now - task.queued;
+                    ranCount++;
+                    totalLatency += latency;
+                    if (latency > maxLatency) maxLatency = latency;
+                }
+            }
+        }
+    };
+
+    public static void runCommand(final String value, final String file, final CommandType command, final String id,
+                                  final Context context) {
+        Task task = new Task(value, file, command, id, context);
+        synchronized (pending) {
+            // Custom commands are arbitrary shell code, all of them have to run
+            String key = command == CommandType.CUSTOM ? null : command + file + id;
+            if (pending.add(key, task)) coalescedCount++;
+            if (!scheduled) {
+                scheduled = true;
+                writer.execute(drain);
+            }
+        }
     }
 
     public static void runCommand(final String value, final String file, final CommandType command, final Context context) {
         runCommand(value, file, command, null, context);
     }
 
+    /**
+     * @return settings changes waiting to be written
+     */
+    public static int getQueueDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return counts and latencies of the settings changes so far, for logging
+     */
+    public static String getStats() {
+        synchronized (pending) {
+            return ranCount + " written in " + batchCount + " batches, " + coalescedCount + " replaced by newer values, "
+                    + pending.size() + " queued, latency " + (ranCount == 0 ? 0 : totalLatency / ranCount)
+                    + "ms average, " + maxLatency + "ms max";
+        }
+    }
+
 }
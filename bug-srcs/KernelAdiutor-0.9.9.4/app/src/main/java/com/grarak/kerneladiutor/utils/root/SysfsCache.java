@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 Willi Ye
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.grarak.kerneladiutor.utils.root;
+
+import android.os.SystemClock;
+
+import com.grarak.kerneladiutor.utils.Constants;
+import com.kerneladiutor.library.root.RootUtils;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short lived cache of sysfs values, so a refresh which asks for the same node several
+ * times only reads it once.
+ * <p/>
+ * Nodes which the app may read itself are read directly, everything else goes through the
+ * root shell, several nodes at once with {@link #readAll(List)}. {@link Control} drops a
+ * node from the cache once it has written it.
+ */
+public class SysfsCache implements Constants {
+
+    /**
+     * Shorter than the refresh interval of the fragments, so every refresh sees new values
+     */
+    private static final long DEFAULT_TTL = 500;
+
+    /**
+     * Lists of what the kernel supports only change when a module is loaded
+     */
+    private static final long AVAILABLE_TTL = 60000;
+
+    private static final Map<String, Entry> cache = new HashMap<>();
+    private static final Map<String, Long> ttls = new HashMap<>();
+    // Bumped by every invalidation, so a read which raced with a write isn't cached
+    private static long generation;
+
+    private static final AtomicLong cacheReads = new AtomicLong();
+    private static final AtomicLong directReads = new AtomicLong();
+    private static final AtomicLong rootReads = new AtomicLong();
+
+    private static class Entry {
+        private final String value;
+        private final long expires;
+
+        private Entry(String value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * How often the cache has been asked for a node and how often it had to ask the kernel
+     */
+    public static class Stats {
+        public final long cacheReads;
+        public final long directReads;
+        public final long rootReads;
+
+        private Stats(long cacheReads, long directReads, long rootReads) {
+            this.cacheReads = cacheReads;
+            this.directReads = directReads;
+            this.rootReads = rootReads;
+        }
+
+        public Stats since(Stats start) {
+            return new Stats(cacheReads - start.cacheReads, directReads - start.directReads,
+                    rootReads - start.rootReads);
+        }
+
+        @Override
+        public String toString() {
+            return cacheReads + " from cache, " + directReads + " direct, " + rootReads + " as root";
+        }
+    }
+
+    /**
+     * Paths outside of /sys aren't cached
+     */
+    public static boolean isCached(String path) {
+        return path != null && path.startsWith("/sys/");
+    }
+
+    /**
+     * Override how long a node stays cached
+     *
+     * @param path node
+     * @param ttl  milliseconds, 0 = always read
+     */
+    public static synchronized void setTtl(String path, long ttl) {
+        ttls.put(path, ttl);
+        cache.remove(path);
+    }
+
+    public static String read(String path) {
+        List<String> paths = new ArrayList<>(1);
+        paths.add(path);
+        return readAll(paths).get(0);
+    }
+
+    /**
+     * Read several nodes, with at most one round trip to the root shell
+     *
+     * @param paths nodes
+     * @return their values, in the same order
+     */
+    public static List<String> readAll(List<String> paths) {
+        List<String> values = new ArrayList<>(paths.size());
+        List<Integer> missing = new ArrayList<>();
+        long now = SystemClock.elapsedRealtime();
+        long startGeneration;
+        synchronized (SysfsCache.class) {
+            startGeneration = generation;
+            for (int i = 0; i < paths.size(); i++) {
+                Entry entry = isCached(paths.get(i)) ? cache.get(paths.get(i)) : null;
+                if (entry != null && entry.expires > now) {
+                    values.add(entry.value);
+                    cacheReads.incrementAndGet();
+                } else {
+                    values.add(null);
+                    missing.add(i);
+                }
+            }
+        }
+        if (missing.isEmpty()) return values;
+
+        List<Integer> asRoot = new ArrayList<>();
+        for (int i : missing) {
+            String value = readDirect(paths.get(i));
+            if (value != null) {
+                values.set(i, value);
+                directReads.incrementAndGet();
+            } else asRoot.add(i);
+        }
+
+        if (!asRoot.isEmpty()) {
+            String[] commands = new String[asRoot.size()];
+            for (int i = 0; i < commands.length; i++)
+                commands[i] = "cat '" + paths.get(asRoot.get(i)) + "'";
+            String[] outputs = RootUtils.runCommands(commands);
+            for (int i = 0; i < outputs.length; i++)
+                values.set(asRoot.get(i), outputs[i]);
+            rootReads.addAndGet(outputs.length);
+        }
+
+        now = SystemClock.elapsedRealtime();
+        synchronized (SysfsCache.class) {
+            if (generation != startGeneration) return values;
+            for (int i : missing) {
+                String path = paths.get(i);
+                String value = values.get(i);
+                if (value == null || !isCached(path)) continue;
+                long ttl = getTtl(path);
+                if (ttl > 0) cache.put(path, new Entry(value, now + ttl));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Forget a node, call this after writing it
+     */
+    public static synchronized void invalidate(String path) {
+        cache.remove(path);
+        generation++;
+    }
+
+    public static synchronized void clear() {
+        cache.clear();
+        generation++;
+    }
+
+    public static Stats getStats() {
+        return new Stats(cacheReads.get(), directReads.get(), rootReads.get());
+    }
+
+    private static long getTtl(String path) {
+        Long ttl = ttls.get(path);
+        if (ttl != null) return ttl;
+        return path.substring(path.lastIndexOf('/') + 1).contains("available") ? AVAILABLE_TTL : DEFAULT_TTL;
+    }
+
+    /*
+     * Null if we aren't allowed to, then the root shell has to do it
+     */
+    private static String readDirect(String path) {
+        File file = new File(path);
+        if (!file.canRead()) return null;
+
+        FileReader reader = null;
+        try {
+            reader = new FileReader(file);
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[1024];
+            int read;
+            while ((read = reader.read(buffer)) > 0) sb.append(buffer, 0, read);
+            return sb.toString().trim();
+        } catch (IOException ignored) {
+            return null;
+        } finally {
+            try {
+                if (reader != null) reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+}
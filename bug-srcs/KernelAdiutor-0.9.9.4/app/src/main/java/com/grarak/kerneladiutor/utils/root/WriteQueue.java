@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 Willi Ye
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.grarak.kerneladiutor.utils.root;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes waiting for their turn, in the order they were made.
+ * <p/>
+ * A newer write for the same key only replaces the newest pending write. Replacing one
+ * further back would move the newer value in front of writes queued after the old one,
+ * e.g. a governor tunable would then be written after the governor was changed again.
+ */
+class WriteQueue<T> {
+
+    private final List<String> keys = new ArrayList<>();
+    private final List<T> items = new ArrayList<>();
+
+    /**
+     * @param key writes with the same key replace each other, null = never replaced
+     * @return true if the item replaced the newest pending one
+     */
+    boolean add(String key, T item) {
+        int last = keys.size() - 1;
+        if (key != null && last >= 0 && key.equals(keys.get(last))) {
+            items.set(last, item);
+            return true;
+        }
+        keys.add(key);
+        items.add(item);
+        return false;
+    }
+
+    /**
+     * @return all pending items in order, the queue is empty afterwards
+     */
+    List<T> drain() {
+        List<T> drained = new ArrayList<>(items);
+        keys.clear();
+        items.clear();
+        return drained;
+    }
+
+    int size() {
+        return items.size();
+    }
+
+}
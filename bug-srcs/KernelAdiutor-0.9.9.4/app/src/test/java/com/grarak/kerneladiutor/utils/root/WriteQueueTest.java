@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Willi Ye
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.grarak.kerneladiutor.utils.root;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WriteQueueTest {
+
+    private static final String GOVERNOR = "governor";
+    private static final String TUNABLE = "interactive/hispeed_freq";
+
+    @Test
+    public void consecutiveWritesCoalesce() {
+        WriteQueue<String> queue = new WriteQueue<>();
+        assertFalse(queue.add(TUNABLE, "1000"));
+        assertTrue(queue.add(TUNABLE, "1100"));
+        assertTrue(queue.add(TUNABLE, "1200"));
+        assertEquals(1, queue.size());
+        assertEquals(Arrays.asList("1200"), queue.drain());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void interleavedWritesKeepTheirOrder() {
+        WriteQueue<String> queue = new WriteQueue<>();
+        queue.add(GOVERNOR, "interactive");
+        queue.add(TUNABLE, "1000");
+        // Must not take the place of the first governor, or the tunable would be written
+        // after the governor it belongs to was changed again
+        assertFalse(queue.add(GOVERNOR, "ondemand"));
+        assertEquals(Arrays.asList("interactive", "1000", "ondemand"), queue.drain());
+    }
+
+    @Test
+    public void writesWithoutKeyNeverCoalesce() {
+        WriteQueue<String> queue = new WriteQueue<>();
+        assertFalse(queue.add(null, "start mpdecision"));
+        assertFalse(queue.add(null, "start mpdecision"));
+        assertEquals(Arrays.asList("start mpdecision", "start mpdecision"), queue.drain());
+    }
+
+}
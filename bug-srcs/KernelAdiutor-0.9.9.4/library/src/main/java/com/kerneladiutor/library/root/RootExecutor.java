@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2015 Willi Ye
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kerneladiutor.library.root;
+
+import android.util.Log;
+
+import com.kerneladiutor.library.Tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs commands in long lived root (or normal) shells without waiting for
+ * one command to finish before sending the next.
+ * <p/>
+ * Every command is followed by an echo of a marker which is unique to that
+ * command, so one read loop per shell can tell where each output ends. A
+ * batch of commands goes to the shell in a single write, so reading dozens
+ * of files costs one round trip instead of dozens, and callers on different
+ * threads don't wait for each other's commands to finish.
+ */
+public class RootExecutor {
+
+    private static final String CALLBACK = "/shellCallback/";
+
+    private final boolean root;
+    private final Shell[] shells;
+    private final String token;
+    private final AtomicLong nextId = new AtomicLong();
+    private boolean closed;
+    private boolean denied;
+
+    public RootExecutor() {
+        this(1, true);
+    }
+
+    /**
+     * @param shellCount how many shells to run commands in at most, more are only started
+     *                   while the others are busy
+     * @param root       true = su, false = sh
+     */
+    public RootExecutor(int shellCount, boolean root) {
+        this.root = root;
+        shells = new Shell[Math.max(1, shellCount)];
+        token = Long.toHexString(new Random().nextLong()) + "/";
+    }
+
+    /**
+     * Queue a command
+     *
+     * @param command shell command
+     * @return its trimmed output
+     */
+    public Future<String> submit(String command) {
+        return submit(Arrays.asList(command)).get(0);
+    }
+
+    /**
+     * Queue commands, they run one after another in the same shell
+     *
+     * @param commands shell commands
+     * @return their trimmed outputs, in the same order
+     */
+    public List<Future<String>> submit(List<String> commands) {
+        List<Request> requests = new ArrayList<>(commands.size());
+        for (String command : commands)
+            requests.add(new Request(command, CALLBACK + token + nextId.incrementAndGet()));
+
+        Shell shell = getShell();
+        if (shell == null) for (Request request : requests)
+            request.fail(new IOException(root ? "Failed to run shell as su" : "Failed to run shell as sh"));
+        else shell.send(requests);
+        return new ArrayList<Future<String>>(requests);
+    }
+
+    /**
+     * Run commands and wait for all of them
+     *
+     * @param commands shell commands
+     * @return their trimmed outputs, null for commands which failed
+     */
+    public String[] runCommands(String... commands) {
+        List<Future<String>> futures = submit(Arrays.asList(commands));
+        String[] outputs = new String[commands.length];
+        for (int i = 0; i < outputs.length; i++)
+            try {
+                outputs[i] = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ignored) {
+            }
+        return outputs;
+    }
+
+    public String runCommand(String command) {
+        return runCommands(command)[0];
+    }
+
+    /**
+     * @return true if a shell could not be started or exited before answering anything
+     */
+    public synchronized boolean isDenied() {
+        return denied;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Exit all shells once they are done with the commands already queued
+     */
+    public void close() {
+        Shell[] running;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            running = shells.clone();
+        }
+        for (Shell shell : running)
+            if (shell != null && !shell.isDead()) shell.close();
+    }
+
+    /*
+     * Prefer an idle shell, then a new one if the pool isn't full, then the least busy one
+     */
+    private synchronized Shell getShell() {
+        if (closed) return null;
+
+        Shell best = null;
+        int free = -1;
+        for (int i = 0; i < shells.length; i++) {
+            Shell shell = shells[i];
+            if (shell == null || shell.isDead()) {
+                if (free < 0) free = i;
+                continue;
+            }
+            int load = shell.getLoad();
+            if (load == 0) return shell;
+            if (best == null || load < best.getLoad()) best = shell;
+        }
+        if (free < 0) return best;
+
+        try {
+            shells[free] = new Shell();
+            return shells[free];
+        } catch (IOException e) {
+            Log.e(Tools.TAG, root ? "Failed to run shell as su" : "Failed to run shell as sh");
+            denied = true;
+            return best;
+        }
+    }
+
+    private synchronized void onShellDied(boolean answered) {
+        if (!answered) denied = true;
+    }
+
+    private static class Request extends FutureTask<String> {
+
+        private static final Callable<String> NOTHING = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return null;
+            }
+        };
+
+        private final String command;
+        private final String marker;
+
+        private Request(String command, String marker) {
+            super(NOTHING);
+            this.command = command;
+            this.marker = marker;
+        }
+
+        private void succeed(String output) {
+            set(output);
+        }
+
+        private void fail(Throwable throwable) {
+            setException(throwable);
+        }
+
+    }
+
+    private class Shell implements Runnable {
+
+        private final Process process;
+        private final BufferedWriter bufferedWriter;
+        private final BufferedReader bufferedReader;
+        private final Object writeLock = new Object();
+        private final LinkedList<Request> pending = new LinkedList<>();
+        private boolean dead;
+        private boolean answered;
+
+        private Shell() throws IOException {
+            Log.i(Tools.TAG, root ? "SU initialized" : "SH initialized");
+            process = Runtime.getRuntime().exec(root ? "su" : "sh");
+            bufferedWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+            bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+
+            Thread thread = new Thread(this, "RootExecutor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private int getLoad() {
+            synchronized (pending) {
+                return pending.size();
+            }
+        }
+
+        private boolean isDead() {
+            synchronized (pending) {
+                return dead;
+            }
+        }
+
+        private void send(List<Request> requests) {
+            StringBuilder sb = new StringBuilder();
+            for (Request request : requests)
+                sb.append(request.command).append("\necho ").append(request.marker).append("\n");
+
+            // The write lock keeps the queue in the same order as the shell sees the commands
+            synchronized (writeLock) {
+                synchronized (pending) {
+                    if (dead) {
+                        for (Request request : requests)
+                            request.fail(new IOException("Shell closed"));
+                        return;
+                    }
+                    pending.addAll(requests);
+                }
+                try {
+                    bufferedWriter.write(sb.toString());
+                    bufferedWriter.flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    process.destroy();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            StringBuilder output = new StringBuilder();
+            try {
+                String line;
+                while ((line = bufferedReader.readLine()) != null) {
+                    Request request;
+                    synchronized (pending) {
+                        request = pending.peek();
+                    }
+                    // Commands without a trailing newline leave their last line in front of the marker
+                    if (request != null && line.endsWith(request.marker)) {
+                        output.append(line, 0, line.length() - request.marker.length());
+                        synchronized (pending) {
+                            pending.poll();
+                            answered = true;
+                        }
+                        request.succeed(output.toString().trim());
+                        output.setLength(0);
+                    } else {
+                        output.append(line).append("\n");
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            List<Request> failed;
+            synchronized (pending) {
+                dead = true;
+                failed = new ArrayList<>(pending);
+                pending.clear();
+            }
+            // Before the waiting callers wake up, so they see whether we were denied
+            onShellDied(answered);
+            for (Request request : failed)
+                request.fail(new IOException("Shell closed"));
+        }
+
+        private void close() {
+            try {
+                synchronized (writeLock) {
+                    bufferedWriter.write("exit\n");
+                    bufferedWriter.flush();
+                }
+                process.waitFor();
+                Log.i(Tools.TAG, root ? "SU closed: " + process.exitValue() : "SH closed: " + process.exitValue());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+    }
+
+}
@@ -26,6 +26,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Created by willi on 14.12.14.
@@ -37,16 +39,16 @@ import java.io.OutputStreamWriter;
  */
 public class RootUtils {
 
-    private static SU su;
+    private static RootExecutor executor;
 
     public static boolean rooted() {
         return existBinary("su");
     }
 
     public static boolean rootAccess() {
-        SU su = getSU();
-        su.runCommand("echo /testRoot/");
-        return !su.denied;
+        RootExecutor executor = getExecutor();
+        executor.runCommand("echo /testRoot/");
+        return !executor.isDenied();
     }
 
     public static boolean busyboxInstalled() {
@@ -71,19 +73,43 @@ public class RootUtils {
                 "mount -o remount,ro " + mountpoint + " " + mountpoint);
     }
 
-    public static void closeSU() {
-        if (su != null) su.close();
-        su = null;
+    public static synchronized void closeSU() {
+        if (executor != null) executor.close();
+        executor = null;
     }
 
     public static String runCommand(String command) {
-        return getSU().runCommand(command);
+        return getExecutor().runCommand(command);
     }
 
-    private static SU getSU() {
-        if (su == null) su = new SU();
-        else if (su.closed || su.denied) su = new SU();
-        return su;
+    /**
+     * Run several commands with one round trip to the root shell
+     *
+     * @param commands shell commands
+     * @return their outputs, null for commands which failed
+     */
+    public static String[] runCommands(String... commands) {
+        return getExecutor().runCommands(commands);
+    }
+
+    /**
+     * Queue commands without waiting for them
+     *
+     * @param commands shell commands
+     * @return their outputs, in the same order
+     */
+    public static List<Future<String>> submitCommands(List<String> commands) {
+        return getExecutor().submit(commands);
+    }
+
+    /**
+     * The root shell shared by all of the functions above. Commands from different threads
+     * don't queue behind each other.
+     */
+    public static synchronized RootExecutor getExecutor() {
+        if (executor == null || executor.isClosed() || executor.isDenied())
+            executor = new RootExecutor();
+        return executor;
     }
 
     /*
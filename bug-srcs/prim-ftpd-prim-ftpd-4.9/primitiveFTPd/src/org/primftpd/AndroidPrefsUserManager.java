@@ -66,7 +66,8 @@ public class AndroidPrefsUserManager implements UserManager {
 		logger.debug("rootDir: {}", rootDir);
 		user.setHomeDirectory(rootDir);
 
-		user.setMaxIdleTime(60);
+		int idleTimeout = prefsBean.getConnectionTuning().getIdleTimeout();
+		user.setMaxIdleTime(idleTimeout > 0 ? idleTimeout : 60);
 		user.setName(username);
 		if(password != null) {
 			user.setPassword(prefsBean.getPassword());
@@ -1,5 +1,6 @@
 package org.primftpd;
 
+import org.primftpd.prefs.ConnectionTuning;
 import org.primftpd.prefs.ServerToStart;
 
 import java.io.File;
@@ -22,6 +23,7 @@ public class PrefsBean implements Serializable
 	private final boolean pubKeyAuth;
 	private final ServerToStart serverToStart;
 	private final String ftpPassivePorts;
+	private final ConnectionTuning connectionTuning;
 
 	public PrefsBean(
 		String userName,
@@ -34,7 +36,8 @@ public class PrefsBean implements Serializable
 		boolean pubKeyAuth,
 		int port,
 		ServerToStart serverToStart,
-		String ftpPassivePorts)
+		String ftpPassivePorts,
+		ConnectionTuning connectionTuning)
 	{
 		super();
 		this.userName = userName;
@@ -50,6 +53,7 @@ public class PrefsBean implements Serializable
 		this.pubKeyAuth = pubKeyAuth;
 		this.serverToStart = serverToStart;
 		this.ftpPassivePorts = ftpPassivePorts;
+		this.connectionTuning = connectionTuning;
 	}
 
 	public String getUserName() {
@@ -106,4 +110,8 @@ public class PrefsBean implements Serializable
 	public String getFtpPassivePorts() {
 		return ftpPassivePorts;
 	}
+
+	public ConnectionTuning getConnectionTuning() {
+		return connectionTuning;
+	}
 }
@@ -19,6 +19,7 @@ import android.net.ConnectivityManager;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -32,6 +33,8 @@ import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 import org.primftpd.log.PrimFtpdLoggerBinder;
+import org.primftpd.metrics.MetricsFormatter;
+import org.primftpd.metrics.ServerMetrics;
 import org.primftpd.prefs.AboutActivity;
 import org.primftpd.prefs.FtpPrefsActivityThemeDark;
 import org.primftpd.prefs.FtpPrefsActivityThemeLight;
@@ -102,6 +105,16 @@ public class PrimitiveFtpdActivity extends Activity {
 	private String fingerprintSha256 = " - ";
 	private long timestampOfLastEvent = 0;
 
+	private static final long METRICS_REFRESH_INTERVAL = 1000;
+	private final Handler metricsHandler = new Handler();
+	private final Runnable metricsRefresher = new Runnable() {
+		@Override
+		public void run() {
+			showMetrics();
+			metricsHandler.postDelayed(this, METRICS_REFRESH_INTERVAL);
+		}
+	};
+
 	/** Called when the activity is first created. */
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
@@ -178,6 +191,9 @@ public class PrimitiveFtpdActivity extends Activity {
 
 		// e.g. necessary when ports preferences have been changed
 		displayServersState();
+
+		// sessions and transfers
+		metricsHandler.post(metricsRefresher);
 	}
 
 	@Override
@@ -188,6 +204,8 @@ public class PrimitiveFtpdActivity extends Activity {
 
 		// unregister broadcast receiver
 		this.unregisterReceiver(this.networkStateReceiver);
+
+		metricsHandler.removeCallbacks(metricsRefresher);
 	}
 
 	protected FileInputStream buildPublickeyInStream() throws IOException {
@@ -324,6 +342,19 @@ public class PrimitiveFtpdActivity extends Activity {
 								: R.string.serverStopped));
 	}
 
+	protected void showMetrics() {
+		boolean running = serversRunning != null && serversRunning.atLeastOneRunning();
+		int visibility = running ? View.VISIBLE : View.GONE;
+		findViewById(R.id.metricsLabel).setVisibility(visibility);
+		TextView metricsView = (TextView)findViewById(R.id.metricsTextView);
+		metricsView.setVisibility(visibility);
+		if (running) {
+			metricsView.setText(MetricsFormatter.details(
+				this,
+				ServerMetrics.getSingleton().snapshot()));
+		}
+	}
+
 	protected void showUsername() {
 		TextView usernameView = (TextView)findViewById(R.id.usernameTextView);
 		usernameView.setText(prefsBean.getUserName());
@@ -1,17 +1,18 @@
 package org.primftpd.filesystem;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.primftpd.metrics.MeteredInputStream;
+import org.primftpd.metrics.MeteredOutputStream;
+import org.primftpd.metrics.SessionMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,13 +21,52 @@ public abstract class AndroidFile<T> {
 	protected final Logger logger = LoggerFactory.getLogger(getClass());
 
 	protected final File file;
-
-	public AndroidFile(File file) {
+	protected final ExistenceCache existence;
+	protected final SessionMetrics metrics;
+
+	/**
+	 * Files of a directory listing have their attributes read only once,
+	 * see {@link #stat()}.
+	 */
+	private final boolean listed;
+	private FileStat stat;
+
+	public AndroidFile(
+		File file,
+		boolean listed,
+		ExistenceCache existence,
+		SessionMetrics metrics)
+	{
 		super();
 		this.file = file;
+		this.listed = listed;
+		this.existence = existence;
+		this.metrics = metrics;
 	}
 
-	protected abstract T createFile(File file);
+	protected abstract T createFile(File file, boolean listed);
+
+	/**
+	 * @return attributes of a listed file, or null if the file system is to
+	 * be queried directly
+	 */
+	private FileStat stat() {
+		if (!listed) {
+			return null;
+		}
+		if (stat == null) {
+			stat = new FileStat(file);
+		}
+		return stat;
+	}
+
+	/**
+	 * To be called after changing the file.
+	 */
+	protected void invalidate() {
+		stat = null;
+		existence.invalidate(file);
+	}
 
 	public String getAbsolutePath() {
 		logger.trace("getAbsolutePath()");
@@ -44,66 +84,60 @@ public abstract class AndroidFile<T> {
 	}
 
 	public boolean isDirectory() {
-		boolean isDirectory = file.isDirectory();
-		logger.trace(
-			"isDirectory(), ({}): {}",
-			file.getAbsolutePath(),
-			Boolean.valueOf(isDirectory));
+		FileStat stat = stat();
+		boolean isDirectory = stat != null ? stat.directory : file.isDirectory();
+		if (logger.isTraceEnabled()) {
+			logger.trace(
+				"isDirectory(), ({}): {}",
+				file.getAbsolutePath(),
+				Boolean.valueOf(isDirectory));
+		}
 		return isDirectory;
 	}
 
 	public boolean isFile() {
-		boolean isFile = file.isFile();
-		logger.trace(
-			"isFile(), ({}): {}",
-			file.getAbsolutePath(),
-			Boolean.valueOf(isFile));
+		FileStat stat = stat();
+		boolean isFile = stat != null ? stat.file : file.isFile();
+		if (logger.isTraceEnabled()) {
+			logger.trace(
+				"isFile(), ({}): {}",
+				file.getAbsolutePath(),
+				Boolean.valueOf(isFile));
+		}
 		return isFile;
 	}
 
 	public boolean doesExist() {
-		boolean exists = file.exists();
-		boolean existsChecked = exists;
-		if (!exists) {
-			// exists may be false when we don't have read permission
-			// try to figure out if it really does not exist
-			File parentFile = file.getParentFile();
-			File[] children = parentFile.listFiles();
-			for (File child : children) {
-				if (file.equals(child)) {
-					existsChecked = true;
-					break;
-				}
-			}
-		}
-		logger.trace(
-			"doesExist(), ({}): orig val: {}, checked val: {}",
-			new Object[]{
+		FileStat stat = stat();
+		boolean exists = (stat != null && stat.exists) || existence.exists(file);
+		if (logger.isTraceEnabled()) {
+			logger.trace(
+				"doesExist(), ({}): {}",
 				file.getAbsolutePath(),
-				Boolean.valueOf(exists),
-				Boolean.valueOf(existsChecked)
-			});
-		return existsChecked;
+				Boolean.valueOf(exists));
+		}
+		return exists;
 	}
 
 	public boolean isReadable() {
-		boolean canRead = file.canRead();
-		logger.trace(
-			"isReadable(), ({}): {}",
-			file.getAbsolutePath(),
-			Boolean.valueOf(canRead));
+		FileStat stat = stat();
+		boolean canRead = stat != null ? stat.readable : file.canRead();
+		if (logger.isTraceEnabled()) {
+			logger.trace(
+				"isReadable(), ({}): {}",
+				file.getAbsolutePath(),
+				Boolean.valueOf(canRead));
+		}
 		return canRead;
 	}
 
 	public boolean isWritable() {
-		logger.trace(
-			"writable: {}, exists: {}, file: '{}'",
-			new Object[]{
-				file.canWrite(),
-				file.exists(),
-				file.getName()
-			});
+		logger.trace("isWritable()");
 
+		FileStat stat = stat();
+		if (stat != null && stat.exists) {
+			return stat.writable;
+		}
 		if (file.exists()) {
 			return file.canWrite();
 		}
@@ -121,9 +155,16 @@ public abstract class AndroidFile<T> {
 		return false;
 	}
 
+	public boolean isExecutable() {
+		logger.trace("isExecutable()");
+		FileStat stat = stat();
+		return stat != null ? stat.executable : file.canExecute();
+	}
+
 	public boolean isRemovable() {
 		logger.trace("isRemovable()");
-		return file.canWrite();
+		FileStat stat = stat();
+		return stat != null ? stat.writable : file.canWrite();
 	}
 
 	public int getLinkCount() {
@@ -132,35 +173,53 @@ public abstract class AndroidFile<T> {
 	}
 
 	public long getLastModified() {
-		long lastModified = file.lastModified();
-		logger.trace("getLastModified() -> {}", Long.valueOf(lastModified));
+		FileStat stat = stat();
+		long lastModified = stat != null ? stat.lastModified : file.lastModified();
+		if (logger.isTraceEnabled()) {
+			logger.trace("getLastModified() -> {}", Long.valueOf(lastModified));
+		}
 		return lastModified;
 	}
 
 	public boolean setLastModified(long time) {
-		logger.trace("setLastModified({})", Long.valueOf(time));
-		return file.setLastModified(time);
+		if (logger.isTraceEnabled()) {
+			logger.trace("setLastModified({})", Long.valueOf(time));
+		}
+		boolean changed = file.setLastModified(time);
+		invalidate();
+		return changed;
 	}
 
 	public long getSize() {
-		long size = file.length();
-		logger.trace("getSize() -> {}", Long.valueOf(size));
+		FileStat stat = stat();
+		long size = stat != null ? stat.size : file.length();
+		if (logger.isTraceEnabled()) {
+			logger.trace("getSize() -> {}", Long.valueOf(size));
+		}
 		return size;
 	}
 
 	public boolean mkdir() {
 		logger.trace("mkdir()");
-		return file.mkdir();
+		boolean created = file.mkdir();
+		invalidate();
+		return created;
 	}
 
 	public boolean delete() {
 		logger.trace("delete()");
-		return file.delete();
+		boolean deleted = file.delete();
+		invalidate();
+		return deleted;
 	}
 
 	public boolean move(AndroidFile<T> destination) {
-		logger.trace("move({})", destination.getAbsolutePath());
+		if (logger.isTraceEnabled()) {
+			logger.trace("move({})", destination.getAbsolutePath());
+		}
 		file.renameTo(new File(destination.getAbsolutePath()));
+		invalidate();
+		destination.invalidate();
 		return true;
 	}
 
@@ -170,7 +229,7 @@ public abstract class AndroidFile<T> {
 		if (filesArray != null) {
 			List<T> files = new ArrayList<T>(filesArray.length);
 			for (File file : filesArray) {
-				files.add(createFile(file));
+				files.add(createFile(file, true));
 			}
 			return files;
 		}
@@ -178,10 +237,16 @@ public abstract class AndroidFile<T> {
 		return new ArrayList<T>(0);
 	}
 
-	public static final int BUFFER_SIZE = 1024 * 1024;
+	/**
+	 * @return whether a stream created at an offset should cut the file off
+	 * after the last written byte, see {@link ChannelOutputStream}
+	 */
+	protected abstract boolean truncateAfterWrite();
 
 	public OutputStream createOutputStream(long offset) throws IOException {
-		logger.trace("createOutputStream({})", offset);
+		if (logger.isTraceEnabled()) {
+			logger.trace("createOutputStream({})", Long.valueOf(offset));
+		}
 
 		// may be necessary to create dirs
 		// see isWritable()
@@ -191,36 +256,28 @@ public abstract class AndroidFile<T> {
 		}
 
 		// now create out stream
-		OutputStream os = null;
+		// positional channel writes with a pooled buffer, see ChannelOutputStream
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
 		if (offset == 0) {
-			os = new FileOutputStream(file);
-		} else if (offset == this.file.length()) {
-			os = new FileOutputStream(file, true);
-		} else {
-			final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
-			raf.seek(offset);
-			os = new OutputStream() {
-				@Override
-				public void write(int oneByte) throws IOException {
-					raf.write(oneByte);
-				}
-				@Override
-				public void close() throws IOException {
-					raf.close();
-				}
-			};
-		}
-
-		BufferedOutputStream bos = new BufferedOutputStream(os, BUFFER_SIZE);
-		return bos;
+			channel.truncate(0);
+		}
+		invalidate();
+		return new MeteredOutputStream(
+			new ChannelOutputStream(channel, offset, truncateAfterWrite()),
+			metrics);
 	}
 
 	public InputStream createInputStream(long offset) throws IOException {
-		logger.trace("createInputStream(), offset: {}, file: {}", offset, file.getAbsolutePath());
+		if (logger.isTraceEnabled()) {
+			logger.trace("createInputStream(), offset: {}, file: {}",
+				Long.valueOf(offset),
+				file.getAbsolutePath());
+		}
+		// positional channel reads with a pooled buffer, see ChannelInputStream
 		FileInputStream fis = new FileInputStream(file);
-		fis.skip(offset);
-		BufferedInputStream bis = new BufferedInputStream(fis, BUFFER_SIZE);
-		return bis;
+		return new MeteredInputStream(
+			new ChannelInputStream(fis.getChannel(), offset),
+			metrics);
 	}
 
 	public File getFile() {
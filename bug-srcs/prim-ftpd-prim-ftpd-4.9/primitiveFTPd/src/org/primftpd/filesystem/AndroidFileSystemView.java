@@ -1,6 +1,8 @@
 package org.primftpd.filesystem;
 
 import org.apache.ftpserver.ftplet.FtpException;
+import org.primftpd.metrics.ServerMetrics;
+import org.primftpd.metrics.SessionMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,10 +13,13 @@ public abstract class AndroidFileSystemView<T extends AndroidFile<X>, X> {
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	private final File homeDir;
+	protected final ExistenceCache existence = new ExistenceCache();
+	protected final SessionMetrics metrics;
 	private T workingDir;
 
-	public AndroidFileSystemView(File homeDir) {
+	public AndroidFileSystemView(File homeDir, String protocol) {
 		this.homeDir = homeDir;
+		this.metrics = ServerMetrics.getSingleton().createSession(protocol);
 		workingDir = createHomeDirObj();
 	}
 
@@ -94,6 +99,10 @@ public abstract class AndroidFileSystemView<T extends AndroidFile<X>, X> {
 		return createFile(new File(file));
 	}
 
+	public SessionMetrics getMetrics() {
+		return metrics;
+	}
+
 	public boolean isRandomAccessible() throws FtpException {
 		logger.trace("isRandomAccessible()");
 		return true;
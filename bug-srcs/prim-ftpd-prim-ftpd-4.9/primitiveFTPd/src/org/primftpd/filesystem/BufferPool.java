@@ -0,0 +1,44 @@
+package org.primftpd.filesystem;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers for file transfers, so concurrent transfers
+ * share a few buffers instead of allocating one on the heap each.
+ */
+public final class BufferPool {
+	private BufferPool(){}
+
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Direct buffers are never freed, so keep only a few of them.
+	 * Transfers beyond that get heap buffers which are left to gc.
+	 */
+	private static final int MAX_DIRECT_BUFFERS = 16;
+
+	private static final ConcurrentLinkedQueue<ByteBuffer> POOL =
+		new ConcurrentLinkedQueue<ByteBuffer>();
+	private static final AtomicInteger DIRECT_BUFFERS = new AtomicInteger();
+
+	public static ByteBuffer acquire() {
+		ByteBuffer buffer = POOL.poll();
+		if (buffer != null) {
+			buffer.clear();
+			return buffer;
+		}
+		if (DIRECT_BUFFERS.incrementAndGet() <= MAX_DIRECT_BUFFERS) {
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+		DIRECT_BUFFERS.decrementAndGet();
+		return ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+	public static void release(ByteBuffer buffer) {
+		if (buffer != null && buffer.isDirect()) {
+			POOL.offer(buffer);
+		}
+	}
+}
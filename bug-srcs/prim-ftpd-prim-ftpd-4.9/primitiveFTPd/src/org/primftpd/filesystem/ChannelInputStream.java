@@ -0,0 +1,155 @@
+package org.primftpd.filesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads a file with positional {@link FileChannel} reads.
+ *
+ * Small reads are served from a pooled direct buffer, reads of at least
+ * a buffer's size go straight into the caller's array. The buffer is
+ * returned to the pool on close.
+ */
+public class ChannelInputStream extends InputStream {
+
+	private final FileChannel channel;
+	private long position;
+	private ByteBuffer buffer;
+	private boolean closed;
+
+	public ChannelInputStream(FileChannel channel, long position) {
+		this.channel = channel;
+		this.position = position;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (len == 0) {
+			return 0;
+		}
+
+		if (buffer != null && buffer.hasRemaining()) {
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+
+		if (len >= BufferPool.BUFFER_SIZE) {
+			int count = channel.read(ByteBuffer.wrap(b, off, len), position);
+			if (count > 0) {
+				position += count;
+			}
+			return count;
+		}
+
+		if (!fill()) {
+			return -1;
+		}
+		int count = Math.min(len, buffer.remaining());
+		buffer.get(b, off, count);
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		if (n <= 0) {
+			return 0;
+		}
+		long skipped = 0;
+		if (buffer != null && buffer.hasRemaining()) {
+			int count = (int) Math.min(n, buffer.remaining());
+			buffer.position(buffer.position() + count);
+			skipped = count;
+		}
+		long count = Math.min(n - skipped, Math.max(0, channel.size() - position));
+		position += count;
+		return skipped + count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		ensureOpen();
+		long buffered = buffer != null ? buffer.remaining() : 0;
+		long left = buffered + Math.max(0, channel.size() - position);
+		return (int) Math.min(Integer.MAX_VALUE, left);
+	}
+
+	/**
+	 * Sends the rest of the file to the given channel, using
+	 * {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+	 * so the kernel can copy it without going through user space.
+	 *
+	 * @return number of bytes sent
+	 */
+	public long transferTo(WritableByteChannel target) throws IOException {
+		ensureOpen();
+		long sent = 0;
+		if (buffer != null) {
+			while (buffer.hasRemaining()) {
+				sent += target.write(buffer);
+			}
+		}
+		long size = channel.size();
+		while (position < size) {
+			long count = channel.transferTo(position, size - position, target);
+			if (count <= 0) {
+				break;
+			}
+			position += count;
+			sent += count;
+		}
+		return sent;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		BufferPool.release(buffer);
+		buffer = null;
+		channel.close();
+	}
+
+	/**
+	 * @return false at end of file
+	 */
+	private boolean fill() throws IOException {
+		ensureOpen();
+		if (buffer == null) {
+			buffer = BufferPool.acquire();
+			buffer.limit(0);
+		}
+		if (buffer.hasRemaining()) {
+			return true;
+		}
+		buffer.clear();
+		int count = channel.read(buffer, position);
+		buffer.flip();
+		if (count <= 0) {
+			return false;
+		}
+		position += count;
+		return true;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package org.primftpd.filesystem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a file at a given position with positional {@link FileChannel}
+ * writes.
+ *
+ * Small writes are collected in a pooled buffer, writes of at least a
+ * buffer's size go to the channel directly. Written data is synced to
+ * storage every {@link #SYNC_INTERVAL} bytes, so a large upload doesn't
+ * pile up dirty pages to be written all at once. Closing doesn't sync,
+ * the rest is written back by the kernel as for any other file.
+ */
+public class ChannelOutputStream extends OutputStream {
+
+	public static final long SYNC_INTERVAL = 16 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final boolean truncate;
+	private long position;
+	private long unsynced;
+	private ByteBuffer buffer;
+	private boolean closed;
+
+	/**
+	 * @param channel channel to write to, is closed with this stream
+	 * @param position where to start writing
+	 * @param truncate whether to cut the file off after the last written
+	 * byte on close, as a resumed FTP upload replaces the rest of the file
+	 */
+	public ChannelOutputStream(FileChannel channel, long position, boolean truncate) {
+		this.channel = channel;
+		this.position = position;
+		this.truncate = truncate;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (buffer == null) {
+			buffer = BufferPool.acquire();
+		}
+		if (!buffer.hasRemaining()) {
+			flushBuffer();
+		}
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (len >= BufferPool.BUFFER_SIZE) {
+			flushBuffer();
+			writeFully(ByteBuffer.wrap(b, off, len));
+			return;
+		}
+
+		if (buffer == null) {
+			buffer = BufferPool.acquire();
+		}
+		if (len > buffer.remaining()) {
+			flushBuffer();
+		}
+		buffer.put(b, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		flushBuffer();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			flushBuffer();
+			if (truncate && channel.size() > position) {
+				channel.truncate(position);
+			}
+		} finally {
+			closed = true;
+			BufferPool.release(buffer);
+			buffer = null;
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return position the next byte will be written to
+	 */
+	public long getPosition() {
+		return position + (buffer != null ? buffer.position() : 0);
+	}
+
+	private void flushBuffer() throws IOException {
+		if (buffer == null || buffer.position() == 0) {
+			return;
+		}
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	private void writeFully(ByteBuffer src) throws IOException {
+		while (src.hasRemaining()) {
+			int count = channel.write(src, position);
+			position += count;
+			unsynced += count;
+		}
+		if (unsynced >= SYNC_INTERVAL) {
+			channel.force(false);
+			unsynced = 0;
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
+		}
+	}
+}
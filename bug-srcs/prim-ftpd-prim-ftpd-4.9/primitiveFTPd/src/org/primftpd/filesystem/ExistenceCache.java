@@ -0,0 +1,107 @@
+package org.primftpd.filesystem;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers for a short while which files of a session don't exist.
+ *
+ * {@link File#exists()} may be false when we don't have read permission,
+ * so a missing file is looked up in the listing of its parent. Clients
+ * check lots of missing files in a row, e.g. when uploading a folder, so
+ * both the results and the parent listings are kept for {@link #TTL} ms.
+ * Changes made through the session invalidate them right away, changes
+ * made by others are seen after at most {@link #TTL} ms.
+ */
+public class ExistenceCache {
+
+	public static final long TTL = 2000;
+
+	private static final int MAX_MISSING = 256;
+	private static final int MAX_LISTINGS = 8;
+
+	private static class Listing {
+		private final Set<String> names;
+		private final long until;
+
+		private Listing(Set<String> names, long until) {
+			this.names = names;
+			this.until = until;
+		}
+	}
+
+	private final Map<String, Long> missing = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > MAX_MISSING;
+		}
+	};
+
+	private final Map<String, Listing> listings = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+			return size() > MAX_LISTINGS;
+		}
+	};
+
+	public synchronized boolean exists(File file) {
+		String path = file.getAbsolutePath();
+		long now = now();
+		Long until = missing.get(path);
+		if (until != null) {
+			if (until.longValue() > now) {
+				return false;
+			}
+			missing.remove(path);
+		}
+
+		if (file.exists()) {
+			return true;
+		}
+
+		// exists may be false when we don't have read permission
+		// try to figure out if it really does not exist
+		File parent = file.getParentFile();
+		boolean listed = parent != null && childNames(parent, now).contains(file.getName());
+		if (!listed) {
+			missing.put(path, Long.valueOf(now + TTL));
+		}
+		return listed;
+	}
+
+	/**
+	 * To be called when a file was created, removed or changed.
+	 */
+	public synchronized void invalidate(File file) {
+		String path = file.getAbsolutePath();
+		missing.remove(path);
+		listings.remove(path);
+		File parent = file.getParentFile();
+		if (parent != null) {
+			listings.remove(parent.getAbsolutePath());
+		}
+	}
+
+	private Set<String> childNames(File dir, long now) {
+		String path = dir.getAbsolutePath();
+		Listing listing = listings.get(path);
+		if (listing == null || listing.until <= now) {
+			String[] names = dir.list();
+			Set<String> set = names != null
+				? new HashSet<String>(Arrays.asList(names))
+				: Collections.<String>emptySet();
+			listing = new Listing(set, now + TTL);
+			listings.put(path, listing);
+		}
+		return listing.names;
+	}
+
+	private static long now() {
+		return System.nanoTime() / 1000000;
+	}
+}
@@ -0,0 +1,40 @@
+package org.primftpd.filesystem;
+
+import java.io.File;
+
+/**
+ * Attributes of a file, queried once.
+ *
+ * Used for files of a directory listing, which have all of their
+ * attributes read while the listing is formatted.
+ */
+final class FileStat {
+
+	final boolean exists;
+	final boolean directory;
+	final boolean file;
+	final long size;
+	final long lastModified;
+	final boolean readable;
+	final boolean writable;
+	final boolean executable;
+
+	FileStat(File f) {
+		directory = f.isDirectory();
+		file = !directory && f.isFile();
+		exists = directory || file || f.exists();
+		if (exists) {
+			size = f.length();
+			lastModified = f.lastModified();
+			readable = f.canRead();
+			writable = f.canWrite();
+			executable = f.canExecute();
+		} else {
+			size = 0;
+			lastModified = 0;
+			readable = false;
+			writable = false;
+			executable = false;
+		}
+	}
+}
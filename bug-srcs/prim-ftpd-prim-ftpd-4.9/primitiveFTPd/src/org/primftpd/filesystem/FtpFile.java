@@ -3,22 +3,35 @@ package org.primftpd.filesystem;
 import java.io.File;
 
 import org.apache.ftpserver.ftplet.User;
+import org.primftpd.metrics.SessionMetrics;
 
 public class FtpFile extends AndroidFile<org.apache.ftpserver.ftplet.FtpFile>
 	implements org.apache.ftpserver.ftplet.FtpFile
 {
 	private final User user;
 
-	public FtpFile(File file, User user)
+	public FtpFile(
+		File file,
+		boolean listed,
+		ExistenceCache existence,
+		SessionMetrics metrics,
+		User user)
 	{
-		super(file);
+		super(file, listed, existence, metrics);
 		this.user = user;
 	}
 
 	@Override
-	protected org.apache.ftpserver.ftplet.FtpFile createFile(File file)
+	protected org.apache.ftpserver.ftplet.FtpFile createFile(File file, boolean listed)
 	{
-		return new FtpFile(file, user);
+		return new FtpFile(file, listed, existence, metrics, user);
+	}
+
+	@Override
+	protected boolean truncateAfterWrite()
+	{
+		// REST + STOR replaces everything after the restart offset
+		return true;
 	}
 
 	@Override
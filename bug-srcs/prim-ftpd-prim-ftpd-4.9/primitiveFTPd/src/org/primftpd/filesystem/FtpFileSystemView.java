@@ -12,13 +12,14 @@ public class FtpFileSystemView
 	private final User user;
 
 	public FtpFileSystemView(File homeDir, User user) {
-		super(homeDir);
+		super(homeDir, "ftp");
 		this.user = user;
+		metrics.setUser(user.getName());
 	}
 
 	@Override
 	protected FtpFile createFile(File file)
 	{
-		return new FtpFile(file, user);
+		return new FtpFile(file, false, existence, metrics, user);
 	}
 }
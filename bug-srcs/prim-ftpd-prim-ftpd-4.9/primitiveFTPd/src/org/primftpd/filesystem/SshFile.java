@@ -1,9 +1,11 @@
 package org.primftpd.filesystem;
 
 import org.apache.sshd.common.Session;
+import org.primftpd.metrics.SessionMetrics;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,23 +18,37 @@ public class SshFile extends AndroidFile<org.apache.sshd.common.file.SshFile>
 {
 	private final Session session;
 
-	public SshFile(File file, Session session)
+	public SshFile(
+		File file,
+		boolean listed,
+		ExistenceCache existence,
+		SessionMetrics metrics,
+		Session session)
 	{
-		super(file);
+		super(file, listed, existence, metrics);
 		this.session = session;
 	}
 
 	@Override
-	protected org.apache.sshd.common.file.SshFile createFile(File file)
+	protected org.apache.sshd.common.file.SshFile createFile(File file, boolean listed)
 	{
-		return new SshFile(file, session);
+		return new SshFile(file, listed, existence, metrics, session);
+	}
+
+	@Override
+	protected boolean truncateAfterWrite()
+	{
+		// sftp writes blocks at offsets, possibly out of order
+		return false;
 	}
 
 	@Override
 	public boolean create() throws IOException
 	{
 		logger.trace("create()");
-		return file.createNewFile();
+		boolean created = file.createNewFile();
+		invalidate();
+		return created;
 	}
 
 	@Override
@@ -130,7 +146,7 @@ public class SshFile extends AndroidFile<org.apache.sshd.common.file.SshFile>
 	public org.apache.sshd.common.file.SshFile getParentFile()
 	{
 		logger.trace("getParentFile()");
-		return new SshFile(file.getParentFile(), session);
+		return new SshFile(file.getParentFile(), false, existence, metrics, session);
 	}
 
 	@Override
@@ -140,13 +156,6 @@ public class SshFile extends AndroidFile<org.apache.sshd.common.file.SshFile>
 		logger.trace("handleClose()");
 	}
 
-	@Override
-	public boolean isExecutable()
-	{
-		logger.trace("isExecutable()");
-		return file.canExecute();
-	}
-
 	@Override
 	public List<org.apache.sshd.common.file.SshFile> listSshFiles()
 	{
@@ -163,8 +172,10 @@ public class SshFile extends AndroidFile<org.apache.sshd.common.file.SshFile>
 	public String readSymbolicLink() throws IOException
 	{
 		logger.trace("readSymbolicLink()");
-		logger.trace("sym link abs path: {}", file.getAbsolutePath());
-		logger.trace("sym link can path: {}", file.getCanonicalPath());
+		if (logger.isTraceEnabled()) {
+			logger.trace("sym link abs path: {}", file.getAbsolutePath());
+			logger.trace("sym link can path: {}", file.getCanonicalPath());
+		}
 		return file.getCanonicalPath();
 	}
 
@@ -185,7 +196,13 @@ public class SshFile extends AndroidFile<org.apache.sshd.common.file.SshFile>
 	@Override
 	public void truncate() throws IOException
 	{
-		// TODO ssh truncate
 		logger.trace("truncate()");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+		} finally {
+			raf.close();
+		}
+		invalidate();
 	}
 }
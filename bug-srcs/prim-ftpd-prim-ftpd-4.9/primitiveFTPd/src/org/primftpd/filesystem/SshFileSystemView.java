@@ -12,14 +12,16 @@ public class SshFileSystemView
 	private final Session session;
 
 	public SshFileSystemView(File homeDir, Session session) {
-		super(homeDir);
+		super(homeDir, "sftp");
 		this.session = session;
+		metrics.setUser(session.getUsername());
+		metrics.setClient(String.valueOf(session.getIoSession().getRemoteAddress()));
 	}
 
 	@Override
 	protected SshFile createFile(File file)
 	{
-		return new SshFile(file, session);
+		return new SshFile(file, false, existence, metrics, session);
 	}
 
 	@Override
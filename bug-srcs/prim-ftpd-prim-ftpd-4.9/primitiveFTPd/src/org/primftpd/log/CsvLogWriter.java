@@ -0,0 +1,287 @@
+package org.primftpd.log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import org.primftpd.log.CsvLogger.LogLevel;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * Writes log lines of all {@link CsvLogger}s to one file in the background.
+ *
+ * Loggers put their unformatted messages into pre-allocated records, the
+ * writer thread formats them and appends them in batches. There are two
+ * arrays of records: loggers fill one while the writer drains the other.
+ * When loggers are faster than the writer, messages are dropped and
+ * counted, a line with the count is written once the writer catches up.
+ */
+public class CsvLogWriter implements Runnable
+{
+	static final int CAPACITY = 1024;
+
+	/**
+	 * How long the writer waits for more lines before writing a batch.
+	 */
+	private static final long LINGER_MS = 200;
+
+	private static final int MAX_MSG_LEN = 100;
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	private static class Record {
+		private long time;
+		private LogLevel level;
+		private String name;
+		private String format;
+		private boolean formatArgs;
+		private Object arg1;
+		private Object arg2;
+		private Object[] args;
+		private Throwable t;
+
+		private void clear() {
+			name = null;
+			format = null;
+			arg1 = null;
+			arg2 = null;
+			args = null;
+			t = null;
+		}
+	}
+
+	private final Writer out;
+
+	// written by the writer thread only
+	private final DateFormat dateFormat =
+		new SimpleDateFormat("yyyy-MM-dd hh:mm:ss.", Locale.GERMAN);
+	private final Date date = new Date();
+	private long dateSecond = -1;
+	private String dateString;
+	private final StringBuilder sb = new StringBuilder();
+
+	// guarded by this
+	private Record[] filling = newRecords();
+	private Record[] draining = newRecords();
+	private int count;
+	private int dropped;
+	private long droppedTotal;
+
+	public CsvLogWriter(OutputStream out) {
+		this.out = new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE);
+		Thread thread = new Thread(this, "CsvLogWriter");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	private static Record[] newRecords() {
+		Record[] records = new Record[CAPACITY];
+		for (int i = 0; i < CAPACITY; i++) {
+			records[i] = new Record();
+		}
+		return records;
+	}
+
+	synchronized void log(LogLevel level, String name, String msg, Throwable t) {
+		Record record = next();
+		if (record == null) {
+			return;
+		}
+		record.level = level;
+		record.name = name;
+		record.format = msg;
+		record.formatArgs = false;
+		record.t = t;
+	}
+
+	/**
+	 * Queues a message to be formatted later on the writer thread, so
+	 * arguments should not be changed afterwards.
+	 */
+	synchronized void log(
+		LogLevel level,
+		String name,
+		String format,
+		Object arg1,
+		Object arg2,
+		Object[] args)
+	{
+		Record record = next();
+		if (record == null) {
+			return;
+		}
+		record.level = level;
+		record.name = name;
+		record.format = format;
+		record.formatArgs = true;
+		record.arg1 = arg1;
+		record.arg2 = arg2;
+		record.args = args;
+	}
+
+	/**
+	 * @return record to fill, null if the message is to be dropped
+	 */
+	private Record next() {
+		if (count == CAPACITY) {
+			dropped++;
+			return null;
+		}
+		Record record = filling[count++];
+		record.time = System.currentTimeMillis();
+
+		// wake writer when there is something to write and when it should
+		// not wait any longer for more
+		if (count == 1 || count == CAPACITY / 2) {
+			notify();
+		}
+		return record;
+	}
+
+	/**
+	 * @return number of messages dropped because the writer fell behind
+	 */
+	public synchronized long getDroppedCount() {
+		return droppedTotal;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			Record[] batch;
+			int batchCount;
+			int batchDropped;
+			try {
+				synchronized (this) {
+					while (count == 0 && dropped == 0) {
+						wait();
+					}
+					if (count < CAPACITY / 2) {
+						wait(LINGER_MS);
+					}
+					batch = filling;
+					batchCount = count;
+					batchDropped = dropped;
+					filling = draining;
+					draining = batch;
+					count = 0;
+					dropped = 0;
+					droppedTotal += batchDropped;
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			try {
+				for (int i = 0; i < batchCount; i++) {
+					writeLine(batch[i]);
+				}
+				if (batchDropped > 0) {
+					writeDropped(batchDropped);
+				}
+				out.flush();
+			} catch (IOException e) {
+				// nowhere to report to, keep going with the next batch
+			} finally {
+				for (int i = 0; i < batchCount; i++) {
+					batch[i].clear();
+				}
+			}
+		}
+	}
+
+	private void writeLine(Record record) throws IOException {
+		String msg;
+		if (record.formatArgs && record.args != null) {
+			msg = MessageFormatter.arrayFormat(record.format, record.args).getMessage();
+		} else if (record.formatArgs) {
+			msg = MessageFormatter.format(record.format, record.arg1, record.arg2).getMessage();
+		} else {
+			msg = record.format;
+		}
+		writeLine(record.time, record.level, record.name, msg, record.t);
+	}
+
+	private void writeDropped(int dropped) throws IOException {
+		writeLine(
+			System.currentTimeMillis(),
+			LogLevel.WARN,
+			CsvLogWriter.class.getName(),
+			"dropped " + dropped + " messages",
+			null);
+	}
+
+	private void writeLine(long time, LogLevel logLevel, String name, String msg, Throwable t)
+		throws IOException
+	{
+		// formatting dates is slow, only do it once per second
+		long second = time / 1000;
+		if (second != dateSecond) {
+			date.setTime(second * 1000);
+			dateString = dateFormat.format(date);
+			dateSecond = second;
+		}
+		sb.setLength(0);
+		sb.append("\"");
+		sb.append(dateString);
+		sb.append(time % 1000);
+		sb.append("\"");
+		sb.append(";");
+		sb.append("\"");
+		sb.append(logLevel);
+		sb.append("\"");
+		sb.append(";");
+		sb.append("\"");
+		sb.append(name);
+		sb.append("\"");
+		sb.append(";");
+		sb.append("\"");
+		if (msg == null) {
+			sb.append(msg);
+		} else if (msg.length() > MAX_MSG_LEN) {
+			sb.append(msg, 0, MAX_MSG_LEN - 3);
+			sb.append("...");
+		} else {
+			sb.append(msg);
+		}
+		sb.append("\"");
+		sb.append(";");
+		sb.append("\"");
+		if (t != null) {
+			printThrowable(sb, t);
+		}
+		sb.append("\"");
+		sb.append(";");
+		sb.append(LINE_SEPARATOR);
+		out.append(sb);
+	}
+
+	private void printThrowable(StringBuilder sb, Throwable t) {
+		sb.append(t.getClass().getName());
+		sb.append(": ");
+		sb.append(t.getMessage());
+		StackTraceElement[] stackTrace = t.getStackTrace();
+		for (StackTraceElement elem : stackTrace) {
+			sb.append("\n\t");
+			sb.append(elem.getClassName());
+			sb.append(".");
+			sb.append(elem.getMethodName());
+			sb.append("() line: ");
+			sb.append(elem.getLineNumber());
+		}
+		Throwable cause = t.getCause();
+		if (cause != null) {
+			sb.append("\n");
+			sb.append("Caused by:");
+			sb.append(" ");
+			printThrowable(sb, cause);
+		}
+	}
+}
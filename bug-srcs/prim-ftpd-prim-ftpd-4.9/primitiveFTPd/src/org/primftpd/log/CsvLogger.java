@@ -1,86 +1,30 @@
 package org.primftpd.log;
 
-import java.io.PrintStream;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-
 import org.slf4j.helpers.MarkerIgnoringBase;
-import org.slf4j.helpers.MessageFormatter;
 
 public class CsvLogger extends MarkerIgnoringBase
 {
 	private static final long serialVersionUID = 3245106428450758061L;
 
-	private static final int MAX_MSG_LEN = 100;
-
-	private static final DateFormat DATE_FORMAT =
-		new SimpleDateFormat("yyyy-MM-dd hh:mm:ss.S", Locale.GERMAN);
-
 	private final String name;
-	private final PrintStream file;
+	private final CsvLogWriter writer;
 
-	public CsvLogger(String name, PrintStream file) {
+	public CsvLogger(String name, CsvLogWriter writer) {
 		this.name = name;
-		this.file = file;
+		this.writer = writer;
 	}
 
 	private void writeLine(LogLevel logLevel, String msg) {
-		writeLine(logLevel, msg, null);
+		writer.log(logLevel, name, msg, null);
 	}
 	private void writeLine(LogLevel logLevel, String msg, Throwable t) {
-		StringBuilder sb = new StringBuilder();
-		sb.append("\"");
-		sb.append(DATE_FORMAT.format(new Date()));
-		sb.append("\"");
-		sb.append(";");
-		sb.append("\"");
-		sb.append(logLevel);
-		sb.append("\"");
-		sb.append(";");
-		sb.append("\"");
-		sb.append(name);
-		sb.append("\"");
-		sb.append(";");
-		sb.append("\"");
-		if (msg.length() > MAX_MSG_LEN) {
-			sb.append(msg, 0, MAX_MSG_LEN - 3);
-			sb.append("...");
-		} else {
-			sb.append(msg);
-		}
-		sb.append("\"");
-		sb.append(";");
-		sb.append("\"");
-		if (t != null) {
-			printThrowable(sb, t);
-		}
-		sb.append("\"");
-		sb.append(";");
-		file.println(sb.toString());
-	}
-
-	private void printThrowable(StringBuilder sb, Throwable t) {
-		sb.append(t.getClass().getName());
-		sb.append(": ");
-		sb.append(t.getMessage());
-		StackTraceElement[] stackTrace = t.getStackTrace();
-		for (StackTraceElement elem : stackTrace) {
-			sb.append("\n\t");
-			sb.append(elem.getClassName());
-			sb.append(".");
-			sb.append(elem.getMethodName());
-			sb.append("() line: ");
-			sb.append(elem.getLineNumber());
-		}
-		Throwable cause = t.getCause();
-        if (cause != null) {
-        	sb.append("\n");
-        	sb.append("Caused by:");
-        	sb.append(" ");
-        	printThrowable(sb, cause);
-        }
+		writer.log(logLevel, name, msg, t);
+	}
+	private void writeLine(LogLevel logLevel, String format, Object arg1, Object arg2) {
+		writer.log(logLevel, name, format, arg1, arg2, null);
+	}
+	private void writeLine(LogLevel logLevel, String format, Object[] args) {
+		writer.log(logLevel, name, format, null, null, args);
 	}
 
 	@Override
@@ -98,19 +42,19 @@ public class CsvLogger extends MarkerIgnoringBase
 	@Override
 	public void trace(String format, Object arg)
 	{
-		trace(format(format, arg, null));
+		writeLine(LogLevel.TRACE, format, arg, null);
 	}
 
 	@Override
 	public void trace(String format, Object arg1, Object arg2)
 	{
-		trace(format(format, arg1, arg2));
+		writeLine(LogLevel.TRACE, format, arg1, arg2);
 	}
 
 	@Override
 	public void trace(String format, Object[] argArray)
 	{
-		trace(format(format, argArray));
+		writeLine(LogLevel.TRACE, format, argArray);
 	}
 
 	@Override
@@ -134,19 +78,19 @@ public class CsvLogger extends MarkerIgnoringBase
 	@Override
 	public void debug(String format, Object arg)
 	{
-		debug(format(format, arg, null));
+		writeLine(LogLevel.DEBUG, format, arg, null);
 	}
 
 	@Override
 	public void debug(String format, Object arg1, Object arg2)
 	{
-		debug(format(format, arg1, arg2));
+		writeLine(LogLevel.DEBUG, format, arg1, arg2);
 	}
 
 	@Override
 	public void debug(String format, Object[] argArray)
 	{
-		debug(format(format, argArray));
+		writeLine(LogLevel.DEBUG, format, argArray);
 	}
 
 	@Override
@@ -170,19 +114,19 @@ public class CsvLogger extends MarkerIgnoringBase
 	@Override
 	public void info(String format, Object arg)
 	{
-		info(format(format, arg, null));
+		writeLine(LogLevel.INFO, format, arg, null);
 	}
 
 	@Override
 	public void info(String format, Object arg1, Object arg2)
 	{
-		info(format(format, arg1, arg2));
+		writeLine(LogLevel.INFO, format, arg1, arg2);
 	}
 
 	@Override
 	public void info(String format, Object[] argArray)
 	{
-		info(format(format, argArray));
+		writeLine(LogLevel.INFO, format, argArray);
 	}
 
 	@Override
@@ -206,19 +150,19 @@ public class CsvLogger extends MarkerIgnoringBase
 	@Override
 	public void warn(String format, Object arg)
 	{
-		warn(format(format, arg, null));
+		writeLine(LogLevel.WARN, format, arg, null);
 	}
 
 	@Override
 	public void warn(String format, Object[] argArray)
 	{
-		warn(format(format, argArray));
+		writeLine(LogLevel.WARN, format, argArray);
 	}
 
 	@Override
 	public void warn(String format, Object arg1, Object arg2)
 	{
-		warn(format(format, arg1, arg2));
+		writeLine(LogLevel.WARN, format, arg1, arg2);
 	}
 
 	@Override
@@ -242,19 +186,19 @@ public class CsvLogger extends MarkerIgnoringBase
 	@Override
 	public void error(String format, Object arg)
 	{
-		error(format(format, arg, null));
+		writeLine(LogLevel.ERROR, format, arg, null);
 	}
 
 	@Override
 	public void error(String format, Object arg1, Object arg2)
 	{
-		error(format(format, arg1, arg2));
+		writeLine(LogLevel.ERROR, format, arg1, arg2);
 	}
 
 	@Override
 	public void error(String format, Object[] argArray)
 	{
-		error(format(format, argArray));
+		writeLine(LogLevel.ERROR, format, argArray);
 	}
 
 	@Override
@@ -263,17 +207,7 @@ public class CsvLogger extends MarkerIgnoringBase
 		writeLine(LogLevel.ERROR, msg, t);
 	}
 
-	private String format(final String format, final Object arg1, final Object arg2)
-	{
-		return MessageFormatter.format(format, arg1, arg2).getMessage();
-	}
-
-	private String format(final String format, final Object[] args)
-	{
-		return MessageFormatter.arrayFormat(format, args).getMessage();
-	}
-
-	private static enum LogLevel {
+	static enum LogLevel {
 		TRACE,
 		DEBUG,
 		INFO,
@@ -3,7 +3,6 @@ package org.primftpd.log;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,7 +17,7 @@ public class CsvLoggerFactory implements ILoggerFactory
 
 	private final ILoggerFactory nopLoggerFactory;
 
-	private PrintStream file;
+	private CsvLogWriter writer;
 
 	public CsvLoggerFactory(ILoggerFactory nopLoggerFactory) {
 		this.nopLoggerFactory = nopLoggerFactory;
@@ -35,11 +34,11 @@ public class CsvLoggerFactory implements ILoggerFactory
 				logger = loggerMap.get(name);
 				if (logger == null)
 				{
-					if (file == null) {
-						file = openFile();
+					if (writer == null) {
+						writer = new CsvLogWriter(openFile());
 					}
 
-					logger = new CsvLogger(name, file);
+					logger = new CsvLogger(name, writer);
 					loggerMap.put(name, logger);
 				}
 			}
@@ -49,10 +48,10 @@ public class CsvLoggerFactory implements ILoggerFactory
 		return logger;
 	}
 
-	private PrintStream openFile() throws FileNotFoundException {
+	private FileOutputStream openFile() throws FileNotFoundException {
 		File dir = Environment.getExternalStorageDirectory();
 		File file = new File(dir, "prim-ftpd-log.csv");
 		// note: this is never closed
-		return new PrintStream(new FileOutputStream(file, true));
+		return new FileOutputStream(file, true);
 	}
 }
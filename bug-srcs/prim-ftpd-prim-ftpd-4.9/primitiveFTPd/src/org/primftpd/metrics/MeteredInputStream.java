@@ -0,0 +1,50 @@
+package org.primftpd.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts bytes read from a file as sent to the client.
+ */
+public class MeteredInputStream extends FilterInputStream
+{
+	private final SessionMetrics metrics;
+	private boolean closed;
+
+	public MeteredInputStream(InputStream in, SessionMetrics metrics) {
+		super(in);
+		this.metrics = metrics;
+		metrics.fileOpened();
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b != -1) {
+			metrics.addBytesOut(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int count = in.read(b, off, len);
+		if (count > 0) {
+			metrics.addBytesOut(count);
+		}
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			if (!closed) {
+				closed = true;
+				metrics.fileClosed();
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package org.primftpd.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts bytes written to a file as received from the client.
+ */
+public class MeteredOutputStream extends FilterOutputStream
+{
+	private final SessionMetrics metrics;
+	private boolean closed;
+
+	public MeteredOutputStream(OutputStream out, SessionMetrics metrics) {
+		super(out);
+		this.metrics = metrics;
+		metrics.fileOpened();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		metrics.addBytesIn(1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		// FilterOutputStream would write byte by byte
+		out.write(b, off, len);
+		metrics.addBytesIn(len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			out.close();
+		} finally {
+			if (!closed) {
+				closed = true;
+				metrics.fileClosed();
+			}
+		}
+	}
+}
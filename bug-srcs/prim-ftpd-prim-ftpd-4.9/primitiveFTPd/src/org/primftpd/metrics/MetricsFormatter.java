@@ -0,0 +1,53 @@
+package org.primftpd.metrics;
+
+import android.content.Context;
+import android.text.format.Formatter;
+
+import org.primftpd.R;
+
+/**
+ * Formats {@link MetricsSnapshot}s for display.
+ */
+public class MetricsFormatter
+{
+	/**
+	 * @return one line for the notification
+	 */
+	public static String summary(Context context, MetricsSnapshot snapshot) {
+		return context.getString(
+			R.string.metricsSummary,
+			Integer.valueOf(snapshot.sessions.size()),
+			Formatter.formatShortFileSize(context, snapshot.bytesInPerSecond),
+			Formatter.formatShortFileSize(context, snapshot.bytesOutPerSecond));
+	}
+
+	/**
+	 * @return totals, rates and one line per session
+	 */
+	public static String details(Context context, MetricsSnapshot snapshot) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(context.getString(
+			R.string.metricsDetails,
+			Integer.valueOf(snapshot.sessions.size()),
+			Integer.valueOf(snapshot.openFiles),
+			Formatter.formatShortFileSize(context, snapshot.bytesInPerSecond),
+			Formatter.formatShortFileSize(context, snapshot.bytesIn),
+			Formatter.formatShortFileSize(context, snapshot.bytesOutPerSecond),
+			Formatter.formatShortFileSize(context, snapshot.bytesOut),
+			Float.valueOf(snapshot.commandsPerSecond),
+			Float.valueOf(snapshot.latencyP50Millis),
+			Float.valueOf(snapshot.latencyP99Millis)));
+		for (SessionMetrics session : snapshot.sessions) {
+			sb.append("\n");
+			sb.append(context.getString(
+				R.string.metricsSession,
+				session.getProtocol(),
+				session.getUser(),
+				session.getClient(),
+				Formatter.formatShortFileSize(context, session.getBytesIn()),
+				Formatter.formatShortFileSize(context, session.getBytesOut()),
+				Integer.valueOf(session.getOpenFiles())));
+		}
+		return sb.toString();
+	}
+}
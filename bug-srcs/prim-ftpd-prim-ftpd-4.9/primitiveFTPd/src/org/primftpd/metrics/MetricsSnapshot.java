@@ -0,0 +1,25 @@
+package org.primftpd.metrics;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Values of {@link ServerMetrics} at one point in time.
+ */
+public class MetricsSnapshot
+{
+	public long bytesIn;
+	public long bytesOut;
+	public long commands;
+	public int openFiles;
+	public long bytesInPerSecond;
+	public long bytesOutPerSecond;
+	public float commandsPerSecond;
+	public float latencyP50Millis;
+	public float latencyP99Millis;
+	public List<SessionMetrics> sessions = Collections.emptyList();
+
+	public boolean isTransferring() {
+		return openFiles > 0;
+	}
+}
@@ -0,0 +1,140 @@
+package org.primftpd.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts bytes, open files and commands of all sessions of all servers.
+ *
+ * Sessions count into it through their {@link SessionMetrics}, UI reads it
+ * through {@link #snapshot()}.
+ */
+public class ServerMetrics
+{
+	/**
+	 * Rates are calculated over at least this many ms.
+	 */
+	private static final long RATE_INTERVAL = 1000;
+
+	/**
+	 * Number of recent command latencies percentiles are calculated of.
+	 */
+	private static final int LATENCY_SAMPLES = 1024;
+
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+	private final AtomicLong commands = new AtomicLong();
+	private final AtomicInteger openFiles = new AtomicInteger();
+	private final List<SessionMetrics> sessions = new CopyOnWriteArrayList<SessionMetrics>();
+
+	// guarded by latencies
+	private final int[] latencies = new int[LATENCY_SAMPLES];
+	private int latencyCount;
+	private int latencyIndex;
+
+	// guarded by this
+	private long rateTime;
+	private long rateBytesIn;
+	private long rateBytesOut;
+	private long rateCommands;
+	private long bytesInPerSecond;
+	private long bytesOutPerSecond;
+	private float commandsPerSecond;
+
+	public SessionMetrics createSession(String protocol) {
+		return new SessionMetrics(this, protocol);
+	}
+
+	/**
+	 * Lists session as active, to be called when client connects.
+	 */
+	public void register(SessionMetrics session) {
+		if (!sessions.contains(session)) {
+			sessions.add(session);
+		}
+	}
+
+	public void unregister(SessionMetrics session) {
+		sessions.remove(session);
+	}
+
+	void addBytesIn(long count) {
+		bytesIn.addAndGet(count);
+	}
+
+	void addBytesOut(long count) {
+		bytesOut.addAndGet(count);
+	}
+
+	void fileOpened() {
+		openFiles.incrementAndGet();
+	}
+
+	void fileClosed() {
+		openFiles.decrementAndGet();
+	}
+
+	void commandDone(long nanos) {
+		commands.incrementAndGet();
+		int micros = (int) Math.min(Integer.MAX_VALUE, nanos / 1000);
+		synchronized (latencies) {
+			latencies[latencyIndex] = micros;
+			latencyIndex = (latencyIndex + 1) % LATENCY_SAMPLES;
+			if (latencyCount < LATENCY_SAMPLES) {
+				latencyCount++;
+			}
+		}
+	}
+
+	public synchronized MetricsSnapshot snapshot() {
+		long now = System.currentTimeMillis();
+		long in = bytesIn.get();
+		long out = bytesOut.get();
+		long cmds = commands.get();
+
+		long elapsed = now - rateTime;
+		if (elapsed >= RATE_INTERVAL) {
+			if (rateTime > 0) {
+				bytesInPerSecond = (in - rateBytesIn) * 1000 / elapsed;
+				bytesOutPerSecond = (out - rateBytesOut) * 1000 / elapsed;
+				commandsPerSecond = (cmds - rateCommands) * 1000f / elapsed;
+			}
+			rateTime = now;
+			rateBytesIn = in;
+			rateBytesOut = out;
+			rateCommands = cmds;
+		}
+
+		MetricsSnapshot snapshot = new MetricsSnapshot();
+		snapshot.bytesIn = in;
+		snapshot.bytesOut = out;
+		snapshot.commands = cmds;
+		snapshot.openFiles = openFiles.get();
+		snapshot.bytesInPerSecond = bytesInPerSecond;
+		snapshot.bytesOutPerSecond = bytesOutPerSecond;
+		snapshot.commandsPerSecond = commandsPerSecond;
+		snapshot.sessions = new ArrayList<SessionMetrics>(sessions);
+
+		int[] sorted;
+		synchronized (latencies) {
+			sorted = Arrays.copyOf(latencies, latencyCount);
+		}
+		if (sorted.length > 0) {
+			Arrays.sort(sorted);
+			snapshot.latencyP50Millis = sorted[(sorted.length - 1) / 2] / 1000f;
+			snapshot.latencyP99Millis = sorted[(sorted.length - 1) * 99 / 100] / 1000f;
+		}
+		return snapshot;
+	}
+
+	private static final ServerMetrics SINGLETON = new ServerMetrics();
+
+	public static ServerMetrics getSingleton()
+	{
+		return SINGLETON;
+	}
+}
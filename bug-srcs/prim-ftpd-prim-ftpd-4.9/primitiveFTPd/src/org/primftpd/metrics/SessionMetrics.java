@@ -0,0 +1,93 @@
+package org.primftpd.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts bytes, open files and commands of one client session, and adds
+ * them to the totals of {@link ServerMetrics}.
+ */
+public class SessionMetrics
+{
+	private final ServerMetrics server;
+	private final String protocol;
+	private final long started = System.currentTimeMillis();
+
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+	private final AtomicLong commands = new AtomicLong();
+	private final AtomicInteger openFiles = new AtomicInteger();
+
+	private volatile String client;
+	private volatile String user;
+
+	SessionMetrics(ServerMetrics server, String protocol) {
+		this.server = server;
+		this.protocol = protocol;
+	}
+
+	public void addBytesIn(long count) {
+		bytesIn.addAndGet(count);
+		server.addBytesIn(count);
+	}
+
+	public void addBytesOut(long count) {
+		bytesOut.addAndGet(count);
+		server.addBytesOut(count);
+	}
+
+	public void fileOpened() {
+		openFiles.incrementAndGet();
+		server.fileOpened();
+	}
+
+	public void fileClosed() {
+		openFiles.decrementAndGet();
+		server.fileClosed();
+	}
+
+	public void commandDone(long nanos) {
+		commands.incrementAndGet();
+		server.commandDone(nanos);
+	}
+
+	public String getProtocol() {
+		return protocol;
+	}
+
+	public long getStarted() {
+		return started;
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	public long getCommands() {
+		return commands.get();
+	}
+
+	public int getOpenFiles() {
+		return openFiles.get();
+	}
+
+	public String getClient() {
+		return client;
+	}
+
+	public void setClient(String client) {
+		this.client = client;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public void setUser(String user) {
+		this.user = user;
+	}
+}
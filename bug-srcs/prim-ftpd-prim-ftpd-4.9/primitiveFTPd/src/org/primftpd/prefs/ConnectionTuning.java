@@ -0,0 +1,84 @@
+package org.primftpd.prefs;
+
+import java.io.Serializable;
+
+/**
+ * Connection limits and worker sizing, applied to both servers.
+ *
+ * A value of 0 means no limit, or for idle timeout and workers, the
+ * default of the server.
+ */
+public class ConnectionTuning implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	public static final int MAX_CONNECTIONS_DEFAULT = 20;
+	public static final int MAX_CONNECTIONS_PER_ADDRESS_DEFAULT = 8;
+	public static final int MAX_ANONYMOUS_LOGINS_DEFAULT = 10;
+	public static final int IDLE_TIMEOUT_DEFAULT = 0;
+	public static final int IO_WORKERS_DEFAULT = 0;
+
+	private final int maxConnections;
+	private final int maxConnectionsPerAddress;
+	private final int maxAnonymousLogins;
+	private final int idleTimeout;
+	private final int ioWorkers;
+
+	public ConnectionTuning(
+		int maxConnections,
+		int maxConnectionsPerAddress,
+		int maxAnonymousLogins,
+		int idleTimeout,
+		int ioWorkers)
+	{
+		this.maxConnections = maxConnections;
+		this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+		this.maxAnonymousLogins = maxAnonymousLogins;
+		this.idleTimeout = idleTimeout;
+		this.ioWorkers = ioWorkers;
+	}
+
+	/**
+	 * @return max number of connections to both servers together
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * @return max number of connections from one client address, keeps one
+	 * client from taking all connections
+	 */
+	public int getMaxConnectionsPerAddress() {
+		return maxConnectionsPerAddress;
+	}
+
+	public int getMaxAnonymousLogins() {
+		return maxAnonymousLogins;
+	}
+
+	/**
+	 * @return seconds
+	 */
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * @return number of threads serving connections
+	 */
+	public int getIoWorkers() {
+		return ioWorkers;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionTuning{" +
+			"maxConnections=" + maxConnections +
+			", maxConnectionsPerAddress=" + maxConnectionsPerAddress +
+			", maxAnonymousLogins=" + maxAnonymousLogins +
+			", idleTimeout=" + idleTimeout +
+			", ioWorkers=" + ioWorkers +
+			'}';
+	}
+}
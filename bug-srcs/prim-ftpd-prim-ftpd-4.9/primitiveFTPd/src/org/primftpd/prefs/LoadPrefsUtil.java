@@ -26,6 +26,11 @@ public class LoadPrefsUtil
 	public static final String PREF_KEY_THEME = "themePref";
 	public static final String PREF_KEY_LOGGING = "loggingPref";
 	public static final String PREF_KEY_FTP_PASSIVE_PORTS = "ftpPassivePortsPref";
+	public static final String PREF_KEY_MAX_CONNECTIONS = "maxConnectionsPref";
+	public static final String PREF_KEY_MAX_CONNECTIONS_PER_ADDRESS = "maxConnectionsPerAddressPref";
+	public static final String PREF_KEY_MAX_ANONYMOUS_LOGINS = "maxAnonymousLoginsPref";
+	public static final String PREF_KEY_IDLE_TIMEOUT = "idleTimeoutPref";
+	public static final String PREF_KEY_IO_WORKERS = "ioWorkersPref";
 
 	public static final int PORT_DEFAULT_VAL = 12345;
 	static final String PORT_DEFAULT_VAL_STR = String.valueOf(PORT_DEFAULT_VAL);
@@ -155,6 +160,45 @@ public class LoadPrefsUtil
 		return port;
 	}
 
+	public static ConnectionTuning loadConnectionTuning(
+		Logger logger,
+		SharedPreferences prefs)
+	{
+		return new ConnectionTuning(
+			loadNonNegativeInt(logger, prefs, PREF_KEY_MAX_CONNECTIONS,
+				ConnectionTuning.MAX_CONNECTIONS_DEFAULT),
+			loadNonNegativeInt(logger, prefs, PREF_KEY_MAX_CONNECTIONS_PER_ADDRESS,
+				ConnectionTuning.MAX_CONNECTIONS_PER_ADDRESS_DEFAULT),
+			loadNonNegativeInt(logger, prefs, PREF_KEY_MAX_ANONYMOUS_LOGINS,
+				ConnectionTuning.MAX_ANONYMOUS_LOGINS_DEFAULT),
+			loadNonNegativeInt(logger, prefs, PREF_KEY_IDLE_TIMEOUT,
+				ConnectionTuning.IDLE_TIMEOUT_DEFAULT),
+			loadNonNegativeInt(logger, prefs, PREF_KEY_IO_WORKERS,
+				ConnectionTuning.IO_WORKERS_DEFAULT));
+	}
+
+	static int loadNonNegativeInt(
+		Logger logger,
+		SharedPreferences prefs,
+		String prefsKey,
+		int defaultVal)
+	{
+		String str = prefs.getString(prefsKey, null);
+		if (str == null || str.trim().length() == 0) {
+			return defaultVal;
+		}
+		try {
+			int val = Integer.parseInt(str.trim());
+			if (val >= 0) {
+				return val;
+			}
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		logger.info("invalid value '{}' for key '{}', using default", str, prefsKey);
+		return defaultVal;
+	}
+
 	/**
 	 * @param port Port to validate
 	 * @return True if port is valid, false if invalid.
@@ -197,6 +241,9 @@ public class LoadPrefsUtil
 		int securePort = loadPortSecure(logger, prefs);
 		logger.debug("got 'secure port': {}", Integer.valueOf(securePort));
 
+		ConnectionTuning connectionTuning = loadConnectionTuning(logger, prefs);
+		logger.debug("got connectionTuning: {}", connectionTuning);
+
 		// create prefsBean
 		return new PrefsBean(
 				userName,
@@ -209,6 +256,7 @@ public class LoadPrefsUtil
 				pubKeyAuth,
 				port,
 				serverToStart,
-				ftpPassivePorts);
+				ftpPassivePorts,
+				connectionTuning);
 	}
 }
@@ -6,7 +6,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 public enum TaskerCondition {
-    IS_SERVER_RUNNING(R.string.isServerRunning, "server running?");
+    IS_SERVER_RUNNING(R.string.isServerRunning, "server running?"),
+    IS_TRANSFERRING(R.string.isTransferring, "transfer running?");
 
     final private int stringId;
     final private String blurb;
@@ -9,6 +9,7 @@ import android.os.Bundle;
 
 import org.primftpd.PrefsBean;
 import org.primftpd.prefs.LoadPrefsUtil;
+import org.primftpd.util.MetricsNotifier;
 import org.primftpd.util.ServersRunningBean;
 import org.primftpd.util.ServicesStartStopUtil;
 import org.slf4j.Logger;
@@ -68,16 +69,20 @@ public class TaskerReceiver extends BroadcastReceiver {
         } else if (ACTION_QUERY_CONDITION.equals(intent.getAction())) {
             TaskerCondition condition = TaskerCondition.byBlurb(blurb);
             if (condition != null) {
-                ServersRunningBean runningBean = ServicesStartStopUtil.checkServicesRunning(context);
-                boolean running = runningBean.atLeastOneRunning();
+                boolean satisfied = false;
                 switch (condition) {
                     case IS_SERVER_RUNNING:
-                        int conditionResult = running ? RESULT_CONDITION_SATISFIED : RESULT_CONDITION_UNSATISFIED;
-                        logger.debug("got query condition with blurb: {}, setting result: {}",
-                                blurb, Boolean.valueOf(running));
-                        setResultCode(conditionResult);
+                        ServersRunningBean runningBean = ServicesStartStopUtil.checkServicesRunning(context);
+                        satisfied = runningBean.atLeastOneRunning();
+                        break;
+                    case IS_TRANSFERRING:
+                        satisfied = MetricsNotifier.isTransferring(context);
                         break;
                 }
+                int conditionResult = satisfied ? RESULT_CONDITION_SATISFIED : RESULT_CONDITION_UNSATISFIED;
+                logger.debug("got query condition with blurb: {}, setting result: {}",
+                        blurb, Boolean.valueOf(satisfied));
+                setResultCode(conditionResult);
             }
         }
     }
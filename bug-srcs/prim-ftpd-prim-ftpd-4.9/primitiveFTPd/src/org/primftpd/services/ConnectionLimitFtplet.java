@@ -0,0 +1,36 @@
+package org.primftpd.services;
+
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+
+import java.io.IOException;
+
+/**
+ * Refuses ftp connections beyond the limits of {@link ConnectionLimiter}.
+ */
+public class ConnectionLimitFtplet extends DefaultFtplet
+{
+	@Override
+	public FtpletResult onConnect(FtpSession session)
+		throws FtpException, IOException
+	{
+		if (!ConnectionLimiter.getSingleton().acquire(
+			session.getSessionId(),
+			session.getClientAddress()))
+		{
+			// closed before greeting, ftplets cannot write replies
+			return FtpletResult.DISCONNECT;
+		}
+		return super.onConnect(session);
+	}
+
+	@Override
+	public FtpletResult onDisconnect(FtpSession session)
+		throws FtpException, IOException
+	{
+		ConnectionLimiter.getSingleton().release(session.getSessionId());
+		return super.onDisconnect(session);
+	}
+}
@@ -0,0 +1,32 @@
+package org.primftpd.services;
+
+import org.apache.sshd.common.Session;
+import org.apache.sshd.common.SessionListener;
+
+/**
+ * Closes ssh sessions beyond the limits of {@link ConnectionLimiter}.
+ */
+public class ConnectionLimitSessionListener implements SessionListener
+{
+	@Override
+	public void sessionCreated(Session session)
+	{
+		if (!ConnectionLimiter.getSingleton().acquire(
+			session,
+			session.getIoSession().getRemoteAddress()))
+		{
+			session.close(true);
+		}
+	}
+
+	@Override
+	public void sessionEvent(Session session, Event event)
+	{
+	}
+
+	@Override
+	public void sessionClosed(Session session)
+	{
+		ConnectionLimiter.getSingleton().release(session);
+	}
+}
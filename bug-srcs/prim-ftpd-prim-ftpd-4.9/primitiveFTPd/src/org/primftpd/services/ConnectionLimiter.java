@@ -0,0 +1,91 @@
+package org.primftpd.services;
+
+import org.primftpd.prefs.ConnectionTuning;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits connections to both servers together, in total and per client
+ * address, so one client cannot take all connections from others.
+ */
+public class ConnectionLimiter
+{
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	// guarded by this
+	private int maxConnections;
+	private int maxConnectionsPerAddress;
+	private final Map<Object, InetAddress> connections = new HashMap<>();
+	private final Map<InetAddress, Integer> perAddress = new HashMap<>();
+
+	/**
+	 * Sets limits, connections already accepted are kept.
+	 */
+	public synchronized void configure(ConnectionTuning tuning)
+	{
+		maxConnections = tuning.getMaxConnections();
+		maxConnectionsPerAddress = tuning.getMaxConnectionsPerAddress();
+	}
+
+	/**
+	 * @param key identifies the connection, to be passed to {@link #release(Object)}
+	 * @param remoteAddress address of client
+	 * @return false if limit is reached, connection must be closed then
+	 */
+	public synchronized boolean acquire(Object key, SocketAddress remoteAddress)
+	{
+		if (connections.containsKey(key)) {
+			return true;
+		}
+		InetAddress address = remoteAddress instanceof InetSocketAddress
+			? ((InetSocketAddress) remoteAddress).getAddress()
+			: null;
+
+		if (maxConnections > 0 && connections.size() >= maxConnections) {
+			logger.info("refusing connection from {}, {} connections open",
+				remoteAddress, Integer.valueOf(connections.size()));
+			return false;
+		}
+		Integer count = perAddress.get(address);
+		int countVal = count != null ? count.intValue() : 0;
+		if (maxConnectionsPerAddress > 0 && countVal >= maxConnectionsPerAddress) {
+			logger.info("refusing connection from {}, {} connections open from that address",
+				remoteAddress, Integer.valueOf(countVal));
+			return false;
+		}
+
+		connections.put(key, address);
+		perAddress.put(address, Integer.valueOf(countVal + 1));
+		return true;
+	}
+
+	/**
+	 * Releases connection, does nothing if it was not acquired.
+	 */
+	public synchronized void release(Object key)
+	{
+		if (!connections.containsKey(key)) {
+			return;
+		}
+		InetAddress address = connections.remove(key);
+		int count = perAddress.get(address).intValue() - 1;
+		if (count > 0) {
+			perAddress.put(address, Integer.valueOf(count));
+		} else {
+			perAddress.remove(address);
+		}
+	}
+
+	private static final ConnectionLimiter SINGLETON = new ConnectionLimiter();
+
+	public static ConnectionLimiter getSingleton()
+	{
+		return SINGLETON;
+	}
+}
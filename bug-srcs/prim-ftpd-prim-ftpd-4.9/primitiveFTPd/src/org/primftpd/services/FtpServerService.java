@@ -9,12 +9,17 @@ import org.apache.ftpserver.FtpServerFactory;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.Ftplet;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.listener.ListenerFactory;
 import org.primftpd.AndroidPrefsUserManager;
 import org.primftpd.filesystem.FtpFileSystemView;
+import org.primftpd.prefs.ConnectionTuning;
 import org.primftpd.util.StringUtils;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Implements a FTP server.
  */
@@ -60,6 +65,11 @@ public class FtpServerService extends AbstractServerService
 		ListenerFactory listenerFactory = new ListenerFactory();
 		listenerFactory.setPort(prefsBean.getPort());
 
+		ConnectionTuning tuning = prefsBean.getConnectionTuning();
+		if (tuning.getIdleTimeout() > 0) {
+			listenerFactory.setIdleTimeout(tuning.getIdleTimeout());
+		}
+
 		DataConnectionConfigurationFactory dataConConfigFactory = new DataConnectionConfigurationFactory();
 		String passivePorts = prefsBean.getFtpPassivePorts();
 		if (StringUtils.isNotBlank(passivePorts)){
@@ -84,8 +94,22 @@ public class FtpServerService extends AbstractServerService
 		conCfg.setAnonymousLoginEnabled(prefsBean.isAnonymousLogin());
 		conCfg.setMaxLoginFailures(5);
 		conCfg.setLoginFailureDelay(2000);
+		conCfg.setMaxLogins(tuning.getMaxConnections());
+		conCfg.setMaxAnonymousLogins(tuning.getMaxAnonymousLogins());
+		if (tuning.getIoWorkers() > 0) {
+			conCfg.setMaxThreads(tuning.getIoWorkers());
+		}
 		serverFactory.setConnectionConfig(conCfg.createConnectionConfig());
 
+		// limits shared with ssh server, checked first
+		ConnectionLimiter.getSingleton().configure(tuning);
+		Map<String, Ftplet> ftplets = new LinkedHashMap<>();
+		ftplets.put("connectionLimit", new ConnectionLimitFtplet());
+
+		// sessions, transfers and command latency, see ServerMetrics
+		ftplets.put("metrics", new MetricsFtplet());
+		serverFactory.setFtplets(ftplets);
+
 		// do start server
 		ftpServer = serverFactory.createServer();
 		try {
@@ -0,0 +1,84 @@
+package org.primftpd.services;
+
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.primftpd.filesystem.AndroidFileSystemView;
+import org.primftpd.metrics.ServerMetrics;
+import org.primftpd.metrics.SessionMetrics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lists logged in ftp sessions in {@link ServerMetrics} and measures how
+ * long commands take.
+ */
+public class MetricsFtplet extends DefaultFtplet
+{
+	private static final String ATTR_METRICS = "primftpd.metrics";
+	private static final String ATTR_COMMAND_START = "primftpd.metrics.commandStart";
+
+	/**
+	 * Commands lasting as long as a transfer, they would hide the latency
+	 * of all others.
+	 */
+	private static final Set<String> TRANSFER_COMMANDS = new HashSet<String>(
+		Arrays.asList("RETR", "STOR", "STOU", "APPE"));
+
+	@Override
+	public FtpletResult beforeCommand(FtpSession session, FtpRequest request)
+		throws FtpException, IOException
+	{
+		session.setAttribute(ATTR_COMMAND_START, Long.valueOf(System.nanoTime()));
+		return super.beforeCommand(session, request);
+	}
+
+	@Override
+	public FtpletResult afterCommand(FtpSession session, FtpRequest request, FtpReply reply)
+		throws FtpException, IOException
+	{
+		FtpletResult result = super.afterCommand(session, request, reply);
+
+		SessionMetrics metrics = (SessionMetrics) session.getAttribute(ATTR_METRICS);
+		Long start = (Long) session.getAttribute(ATTR_COMMAND_START);
+		if (metrics != null
+			&& start != null
+			&& !TRANSFER_COMMANDS.contains(request.getCommand()))
+		{
+			metrics.commandDone(System.nanoTime() - start.longValue());
+		}
+		return result;
+	}
+
+	@Override
+	public FtpletResult onLogin(FtpSession session, FtpRequest request)
+		throws FtpException, IOException
+	{
+		FileSystemView view = session.getFileSystemView();
+		if (view instanceof AndroidFileSystemView) {
+			SessionMetrics metrics = ((AndroidFileSystemView<?, ?>) view).getMetrics();
+			metrics.setClient(String.valueOf(session.getClientAddress()));
+			session.setAttribute(ATTR_METRICS, metrics);
+			ServerMetrics.getSingleton().register(metrics);
+		}
+		return super.onLogin(session, request);
+	}
+
+	@Override
+	public FtpletResult onDisconnect(FtpSession session)
+		throws FtpException, IOException
+	{
+		SessionMetrics metrics = (SessionMetrics) session.getAttribute(ATTR_METRICS);
+		if (metrics != null) {
+			ServerMetrics.getSingleton().unregister(metrics);
+		}
+		return super.onDisconnect(session);
+	}
+}
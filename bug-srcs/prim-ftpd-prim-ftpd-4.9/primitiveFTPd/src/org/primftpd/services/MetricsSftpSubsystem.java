@@ -0,0 +1,77 @@
+package org.primftpd.services;
+
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.file.FileSystemView;
+import org.apache.sshd.common.util.Buffer;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.sftp.SftpSubsystem;
+import org.primftpd.filesystem.AndroidFileSystemView;
+import org.primftpd.metrics.ServerMetrics;
+import org.primftpd.metrics.SessionMetrics;
+
+import java.io.IOException;
+
+/**
+ * Lists sftp sessions in {@link ServerMetrics} and measures how long
+ * requests take.
+ */
+public class MetricsSftpSubsystem extends SftpSubsystem
+{
+	public static class Factory implements NamedFactory<Command>
+	{
+		@Override
+		public Command create()
+		{
+			return new MetricsSftpSubsystem();
+		}
+
+		@Override
+		public String getName()
+		{
+			return "sftp";
+		}
+	}
+
+	private SessionMetrics metrics;
+
+	@Override
+	public void setFileSystemView(FileSystemView view)
+	{
+		super.setFileSystemView(view);
+		if (view instanceof AndroidFileSystemView) {
+			metrics = ((AndroidFileSystemView<?, ?>) view).getMetrics();
+		}
+	}
+
+	@Override
+	public void start(Environment env) throws IOException
+	{
+		if (metrics != null) {
+			ServerMetrics.getSingleton().register(metrics);
+		}
+		super.start(env);
+	}
+
+	@Override
+	protected void process(Buffer buffer) throws IOException
+	{
+		long start = System.nanoTime();
+		try {
+			super.process(buffer);
+		} finally {
+			if (metrics != null) {
+				metrics.commandDone(System.nanoTime() - start);
+			}
+		}
+	}
+
+	@Override
+	public void destroy()
+	{
+		if (metrics != null) {
+			ServerMetrics.getSingleton().unregister(metrics);
+		}
+		super.destroy();
+	}
+}
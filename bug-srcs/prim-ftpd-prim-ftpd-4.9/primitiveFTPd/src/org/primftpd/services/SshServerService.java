@@ -9,6 +9,7 @@ import org.apache.ftpserver.usermanager.AnonymousAuthentication;
 import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
 import org.apache.ftpserver.util.IoUtils;
 import org.apache.sshd.SshServer;
+import org.apache.sshd.common.FactoryManager;
 import org.apache.sshd.common.NamedFactory;
 import org.apache.sshd.common.Session;
 import org.apache.sshd.common.file.FileSystemFactory;
@@ -17,13 +18,15 @@ import org.apache.sshd.common.io.mina.MinaServiceFactoryFactory;
 import org.apache.sshd.common.keyprovider.AbstractKeyPairProvider;
 import org.apache.sshd.server.Command;
 import org.apache.sshd.server.PasswordAuthenticator;
+import org.apache.sshd.server.ServerFactoryManager;
 import org.apache.sshd.server.command.ScpCommandFactory;
 import org.apache.sshd.server.session.ServerSession;
-import org.apache.sshd.server.sftp.SftpSubsystem;
+import org.apache.sshd.server.session.SessionFactory;
 import org.primftpd.AndroidPrefsUserManager;
 import org.primftpd.PrimitiveFtpdActivity;
 import org.primftpd.R;
 import org.primftpd.filesystem.SshFileSystemView;
+import org.primftpd.prefs.ConnectionTuning;
 import org.primftpd.util.Defaults;
 import org.primftpd.util.KeyInfoProvider;
 import org.primftpd.util.StringUtils;
@@ -89,10 +92,28 @@ public class SshServerService extends AbstractServerService
 		// causes exception when not set
 		sshServer.setIoServiceFactoryFactory(new MinaServiceFactoryFactory());
 
+		// limits shared with ftp server
+		ConnectionTuning tuning = prefsBean.getConnectionTuning();
+		ConnectionLimiter.getSingleton().configure(tuning);
+		SessionFactory sessionFactory = new SessionFactory();
+		sessionFactory.addListener(new ConnectionLimitSessionListener());
+		sshServer.setSessionFactory(sessionFactory);
+		if (tuning.getIdleTimeout() > 0) {
+			sshServer.getProperties().put(
+				ServerFactoryManager.IDLE_TIMEOUT,
+				String.valueOf(tuning.getIdleTimeout() * 1000L));
+		}
+		if (tuning.getIoWorkers() > 0) {
+			// size of mina processor pool
+			sshServer.getProperties().put(
+				FactoryManager.NIO_WORKERS,
+				String.valueOf(tuning.getIoWorkers()));
+		}
+
 		// enable scp and sftp
 		sshServer.setCommandFactory(new ScpCommandFactory());
 		List<NamedFactory<Command>> factoryList = new ArrayList<>(1);
-		factoryList.add(new SftpSubsystem.Factory());
+		factoryList.add(new MetricsSftpSubsystem.Factory());
 		sshServer.setSubsystemFactories(factoryList);
 
 		// PasswordAuthenticator based on android preferences
@@ -0,0 +1,119 @@
+package org.primftpd.util;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.primftpd.R;
+import org.primftpd.metrics.MetricsFormatter;
+import org.primftpd.metrics.MetricsSnapshot;
+import org.primftpd.metrics.ServerMetrics;
+import org.primftpd.remotecontrol.TaskerReceiver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Shows {@link ServerMetrics} in the statusbar notification while servers
+ * are running and tells tasker when transfers start or end.
+ */
+public class MetricsNotifier
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetricsNotifier.class);
+
+	private static final long REFRESH_INTERVAL = 2000;
+
+	/**
+	 * Exists while files are transferred. The tasker receiver runs in
+	 * another process and can't ask {@link ServerMetrics} itself.
+	 */
+	private static final String TRANSFERRING_FILENAME = "transferring";
+
+	private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+	private static Refresher refresher;
+
+	public static boolean isTransferring(Context context) {
+		return context.getFileStreamPath(TRANSFERRING_FILENAME).exists();
+	}
+
+	/**
+	 * @param builder of the notification just shown, is updated from now on
+	 */
+	static synchronized void start(Context context, Notification.Builder builder) {
+		if (refresher != null) {
+			HANDLER.removeCallbacks(refresher);
+		}
+		refresher = new Refresher(context.getApplicationContext(), builder);
+		HANDLER.postDelayed(refresher, REFRESH_INTERVAL);
+	}
+
+	static synchronized void stop(Context context) {
+		if (refresher != null) {
+			HANDLER.removeCallbacks(refresher);
+			refresher = null;
+		}
+		setTransferring(context, false);
+	}
+
+	private static void setTransferring(Context context, boolean transferring) {
+		File file = context.getFileStreamPath(TRANSFERRING_FILENAME);
+		try {
+			if (transferring) {
+				file.createNewFile();
+			} else {
+				file.delete();
+			}
+		} catch (IOException e) {
+			LOGGER.debug("could not update transferring flag", e);
+		}
+	}
+
+	private static class Refresher implements Runnable
+	{
+		private final Context context;
+		private final Notification.Builder builder;
+		private String lastText;
+		private boolean lastTransferring;
+
+		private Refresher(Context context, Notification.Builder builder) {
+			this.context = context;
+			this.builder = builder;
+		}
+
+		@Override
+		public void run() {
+			synchronized (MetricsNotifier.class) {
+				if (refresher != this) {
+					return;
+				}
+			}
+
+			MetricsSnapshot snapshot = ServerMetrics.getSingleton().snapshot();
+
+			// keep plain running text as long as nobody is connected
+			String text = snapshot.sessions.isEmpty()
+				? null
+				: MetricsFormatter.summary(context, snapshot);
+			if (text != null ? !text.equals(lastText) : lastText != null) {
+				lastText = text;
+				builder.setContentText(text != null
+					? text
+					: context.getText(R.string.serverRunning));
+				ServicesStartStopUtil.showStatusbarNotification(context, builder);
+			}
+
+			boolean transferring = snapshot.isTransferring();
+			if (transferring != lastTransferring) {
+				lastTransferring = transferring;
+				setTransferring(context, transferring);
+				TaskerReceiver.sendRequestQueryCondition(context);
+			}
+
+			HANDLER.postDelayed(this, REFRESH_INTERVAL);
+		}
+	}
+}
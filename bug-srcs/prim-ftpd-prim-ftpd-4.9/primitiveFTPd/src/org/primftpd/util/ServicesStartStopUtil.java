@@ -131,8 +131,13 @@ public class ServicesStartStopUtil {
         return serversRunning;
     }
 
-    private static void createStatusbarNotification(Context ctxt) {
-        LOGGER.debug("createStatusbarNotification()");
+    /**
+     * Builds the running notification. {@link MetricsNotifier} keeps the
+     * builder and only changes its content text, so the icon is decoded
+     * and the intents are created once per server start.
+     */
+    private static Notification.Builder createNotificationBuilder(Context ctxt) {
+        LOGGER.debug("createNotificationBuilder()");
 
         // create pending intent
         Intent notificationIntent = new Intent(ctxt, PrimitiveFtpdActivity.class);
@@ -161,7 +166,8 @@ public class ServicesStartStopUtil {
                 .setSmallIcon(icon)
                 .setLargeIcon(largeIcon)
                 .setContentIntent(contentIntent)
-                .setWhen(when);
+                .setWhen(when)
+                .setOnlyAlertOnce(true);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             // TODO check icon for android 7
             Notification.Action stopAction = new Notification.Action.Builder(
@@ -175,6 +181,11 @@ public class ServicesStartStopUtil {
                     ctxt.getString(R.string.stopService),
                     pendingStopIntent);
         }
+        return builder;
+    }
+
+    static void showStatusbarNotification(Context ctxt, Notification.Builder builder) {
+        LOGGER.debug("showStatusbarNotification()");
         Notification notification = null;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
             notification = builder.build();
@@ -222,8 +233,11 @@ public class ServicesStartStopUtil {
     public static void updateNonActivityUI(Context ctxt, boolean serverRunning) {
         updateWidget(ctxt, serverRunning);
         if (serverRunning) {
-            createStatusbarNotification(ctxt);
+            Notification.Builder builder = createNotificationBuilder(ctxt);
+            showStatusbarNotification(ctxt, builder);
+            MetricsNotifier.start(ctxt, builder);
         } else {
+            MetricsNotifier.stop(ctxt);
             LOGGER.debug("removeStatusbarNotification()");
             NotificationUtil.removeStatusbarNotification(ctxt);
         }
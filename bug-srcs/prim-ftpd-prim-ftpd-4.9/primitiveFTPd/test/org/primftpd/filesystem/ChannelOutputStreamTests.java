@@ -0,0 +1,209 @@
+package org.primftpd.filesystem;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ChannelOutputStreamTests {
+
+    private static final int FILE_SIZE = 1024 * 1024;
+    private static final int CHUNK_SIZE = 32 * 1024;
+    private static final int BENCHMARK_RUNS = 3;
+    private static final double MIN_SPEEDUP = 2.0;
+
+    private File file;
+    private byte[] original;
+    private byte[] upload;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("upload", ".bin");
+        Random random = new Random(42);
+        original = new byte[FILE_SIZE];
+        random.nextBytes(original);
+        upload = new byte[FILE_SIZE / 4];
+        random.nextBytes(upload);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void writeAtOffsetKeepsTail() throws Exception {
+        writeOriginal();
+        long offset = FILE_SIZE / 4;
+
+        OutputStream os = new ChannelOutputStream(channel(), offset, false);
+        writeChunked(os, Arrays.copyOf(upload, 1000));
+        os.close();
+
+        byte[] expected = original.clone();
+        System.arraycopy(upload, 0, expected, (int) offset, 1000);
+        Assert.assertArrayEquals(expected, readFile());
+    }
+
+    @Test
+    public void writeAtOffsetTruncates() throws Exception {
+        writeOriginal();
+        long offset = FILE_SIZE / 4;
+
+        OutputStream os = new ChannelOutputStream(channel(), offset, true);
+        writeChunked(os, upload);
+        os.close();
+
+        byte[] expected = Arrays.copyOf(original, (int) offset + upload.length);
+        System.arraycopy(upload, 0, expected, (int) offset, upload.length);
+        Assert.assertArrayEquals(expected, readFile());
+    }
+
+    @Test
+    public void singleBytesAndLargeWrites() throws Exception {
+        OutputStream os = new ChannelOutputStream(channel(), 0, true);
+        for (int i = 0; i < 10; i++) {
+            os.write(original[i]);
+        }
+        os.write(original, 10, BufferPool.BUFFER_SIZE * 3);
+        os.write(original, 10 + BufferPool.BUFFER_SIZE * 3, 5);
+        os.close();
+
+        Assert.assertArrayEquals(
+                Arrays.copyOf(original, 15 + BufferPool.BUFFER_SIZE * 3),
+                readFile());
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterClose() throws Exception {
+        OutputStream os = new ChannelOutputStream(channel(), 0, false);
+        os.close();
+        os.write(1);
+    }
+
+    /**
+     * Compares the former stream for resumed uploads, which wrote every
+     * byte to a {@link RandomAccessFile} on its own, with
+     * {@link ChannelOutputStream}.
+     */
+    @Test
+    public void resumedUploadMatchesFormerStream() throws Exception {
+        long offset = FILE_SIZE / 4;
+
+        writeOriginal();
+        OutputStream legacy = new BufferedOutputStream(legacyStream(offset), 1024 * 1024);
+        writeChunked(legacy, upload);
+        legacy.close();
+        byte[] legacyResult = readFile();
+
+        writeOriginal();
+        OutputStream channel = new ChannelOutputStream(channel(), offset, false);
+        writeChunked(channel, upload);
+        channel.close();
+
+        Assert.assertArrayEquals(legacyResult, readFile());
+    }
+
+    /**
+     * Times a resumed upload at an offset with the former stream and with
+     * {@link ChannelOutputStream}. The former stream issues one write per
+     * byte, so the channel one has to be clearly faster. Each stream gets
+     * a warm-up run and the best of {@link #BENCHMARK_RUNS} is compared.
+     */
+    @Test
+    public void resumedUploadThroughput() throws Exception {
+        long offset = FILE_SIZE / 4;
+        long legacyNanos = Long.MAX_VALUE;
+        long channelNanos = Long.MAX_VALUE;
+
+        for (int run = 0; run <= BENCHMARK_RUNS; run++) {
+            writeOriginal();
+            long start = System.nanoTime();
+            OutputStream legacy = new BufferedOutputStream(legacyStream(offset), 1024 * 1024);
+            writeChunked(legacy, upload);
+            legacy.close();
+            long legacyRun = System.nanoTime() - start;
+
+            writeOriginal();
+            start = System.nanoTime();
+            OutputStream channel = new ChannelOutputStream(channel(), offset, false);
+            writeChunked(channel, upload);
+            channel.close();
+            long channelRun = System.nanoTime() - start;
+
+            // first run only warms up
+            if (run > 0) {
+                legacyNanos = Math.min(legacyNanos, legacyRun);
+                channelNanos = Math.min(channelNanos, channelRun);
+            }
+        }
+
+        double ratio = (double) legacyNanos / channelNanos;
+        Assert.assertTrue(String.format(
+                "resumed upload of %d KiB: RandomAccessFile %.1f MiB/s, FileChannel %.1f MiB/s (%.1fx)",
+                upload.length / 1024,
+                throughput(legacyNanos),
+                throughput(channelNanos),
+                ratio),
+                ratio >= MIN_SPEEDUP);
+    }
+
+    private double throughput(long nanos) {
+        return (upload.length / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+
+    private OutputStream legacyStream(long offset) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(offset);
+        return new OutputStream() {
+            @Override
+            public void write(int oneByte) throws IOException {
+                raf.write(oneByte);
+            }
+            @Override
+            public void close() throws IOException {
+                raf.close();
+            }
+        };
+    }
+
+    private FileChannel channel() throws IOException {
+        return new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    private void writeChunked(OutputStream os, byte[] data) throws IOException {
+        for (int off = 0; off < data.length; off += CHUNK_SIZE) {
+            os.write(data, off, Math.min(CHUNK_SIZE, data.length - off));
+        }
+    }
+
+    private void writeOriginal() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.write(original);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private byte[] readFile() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+}